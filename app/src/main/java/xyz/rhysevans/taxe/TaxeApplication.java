@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe;
+
+import android.app.Application;
+
+import xyz.rhysevans.taxe.data.BookingStore;
+import xyz.rhysevans.taxe.network.NetworkUtil;
+import xyz.rhysevans.taxe.network.OfflineWriteQueue;
+import xyz.rhysevans.taxe.util.AppForegroundTracker;
+import xyz.rhysevans.taxe.util.StartupTimer;
+
+/**
+ * TaxeApplication.java
+ *
+ * The app's Application class, initializes any app-wide singletons before
+ * the first activity is created.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class TaxeApplication extends Application {
+
+    /**
+     * Called when the app process is started
+     */
+    @Override
+    public void onCreate(){
+        super.onCreate();
+
+        // Start measuring the cold start, up to the first frame
+        StartupTimer.onProcessStart();
+
+        // Track whether the app is visible, so polling can pause in the background
+        registerActivityLifecycleCallbacks(new AppForegroundTracker());
+
+        // Initialize the shared network client with the session's token source
+        NetworkUtil.init(this);
+
+        // Open the local copy of the user's bookings
+        BookingStore.init(this);
+
+        // Read back any booking writes that were queued while offline, and send them when possible
+        OfflineWriteQueue.init(this);
+
+        // Connect to the API in the background so the first request doesn't pay for the setup
+        NetworkUtil.warmUp();
+    }
+}
@@ -0,0 +1,683 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.model.User;
+import xyz.rhysevans.taxe.util.BookingStatus;
+
+import static xyz.rhysevans.taxe.data.TaxeDatabase.*;
+
+/**
+ * BookingStore.java
+ *
+ * Local copy of the bookings received from the API, kept in the app's database, so screens can
+ * show the last known bookings straight away (or while offline) before the API answers.
+ *
+ * Writes are applied in order on the store's own thread and return straight away. Reads block,
+ * so they must be made off the main thread. A read only sees the writes already applied, call
+ * flush() first to read back what was just written.
+ *
+ * Every clear() starts a new generation of the store. Requests write through a Writer taken
+ * when they are made, so a response that arrives after the store was cleared (e.g. after
+ * logout) is dropped rather than written back.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingStore {
+
+    private static final String TAG = BookingStore.class.getSimpleName();
+
+    /**
+     * Statuses of the bookings that are still active (not cancelled or finished)
+     */
+    private static final String ACTIVE_STATUSES = "('" + BookingStatus.Pending.name() + "', '"
+            + BookingStatus.In_Progress.name() + "', '" + BookingStatus.Arrived.name() + "')";
+
+    /**
+     * Bookings joined with their customer and driver, if they are stored
+     */
+    private static final String SELECT_BOOKINGS = "SELECT "
+            + "b." + BOOKING_ID + ", b." + BOOKING_PICKUP_LOCATION + ", b." + BOOKING_DESTINATION + ", "
+            + "b." + BOOKING_TIME + ", b." + BOOKING_NO_PASSENGERS + ", b." + BOOKING_STATUS + ", "
+            + "b." + BOOKING_COMPANY + ", b." + BOOKING_CREATED_AT + ", b." + BOOKING_UPDATED_AT + ", "
+            + "b." + BOOKING_CUSTOMER_ID + ", c." + USER_NAME + ", c." + USER_EMAIL + ", c." + USER_ROLE + ", "
+            + "c." + USER_COMPANY + ", c." + USER_AVAILABLE + ", c." + USER_CREATED_AT + ", "
+            + "b." + BOOKING_DRIVER_ID + ", d." + USER_NAME + ", d." + USER_EMAIL + ", d." + USER_ROLE + ", "
+            + "d." + USER_COMPANY + ", d." + USER_AVAILABLE + ", d." + USER_CREATED_AT
+            + " FROM " + TABLE_BOOKINGS + " b"
+            + " LEFT JOIN " + TABLE_USERS + " c ON c." + USER_ID + " = b." + BOOKING_CUSTOMER_ID
+            + " LEFT JOIN " + TABLE_USERS + " d ON d." + USER_ID + " = b." + BOOKING_DRIVER_ID;
+
+    // Position of the first customer and driver column in SELECT_BOOKINGS
+    private static final int CUSTOMER_COLUMNS = 9;
+    private static final int DRIVER_COLUMNS = 16;
+
+    private static BookingStore INSTANCE = null;
+
+    private final TaxeDatabase database;
+
+    /**
+     * Writes are applied one at a time, in order, on their own thread
+     */
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Incremented by every clear()
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /**
+     * Private constructor to enforce singleton
+     * @param database
+     */
+    private BookingStore(TaxeDatabase database){
+        this.database = database;
+    }
+
+    /**
+     * Constructor for stand-in stores that override every read and write, e.g. an in-memory
+     * store in tests
+     */
+    @VisibleForTesting
+    protected BookingStore(){
+        this(null);
+    }
+
+    /**
+     * Initialize the store, must be called once when the app starts
+     * @param context
+     */
+    public static synchronized void init(Context context){
+        if(INSTANCE == null){
+            INSTANCE = new BookingStore(new TaxeDatabase(context.getApplicationContext()));
+        }
+    }
+
+    /**
+     * Replace the instance of the store, e.g. with an in-memory one in tests
+     * @param store
+     */
+    @VisibleForTesting
+    public static synchronized void setInstance(BookingStore store){
+        INSTANCE = store;
+    }
+
+    /**
+     * Returns the instance of the store
+     * @return
+     */
+    public static BookingStore getInstance(){
+        BookingStore store = INSTANCE;
+        if(store == null){
+            throw new IllegalStateException("BookingStore.init() must be called before getInstance()");
+        }
+
+        return store;
+    }
+
+    /**
+     * Get a writer for the store's current generation, taken when a request is made so its
+     * response isn't written if the store is cleared in the meantime
+     * @return
+     */
+    public Writer writer(){
+        return new Writer(generation.get());
+    }
+
+    /**
+     * Store a booking received from the API, replacing the stored copy
+     * @param booking
+     */
+    public void put(Booking booking){
+        if(booking != null){
+            putAll(Collections.singletonList(booking));
+        }
+    }
+
+    /**
+     * Store bookings received from the API, replacing the stored copies
+     * @param bookings
+     */
+    public void putAll(List<Booking> bookings){
+        putAll(generation.get(), bookings);
+    }
+
+    /**
+     * Store a user's full list of active bookings received from the API. Their stored bookings
+     * that are no longer in the list are removed, as they were cancelled, finished or released
+     * since they were stored
+     * @param userId
+     * @param active
+     */
+    public void putActiveBookings(String userId, List<Booking> active){
+        putActiveBookings(generation.get(), userId, active);
+    }
+
+    /**
+     * Change the status of a stored booking, e.g. once an edit has been accepted by the API
+     * @param bookingId
+     * @param status
+     */
+    public void putStatus(String bookingId, BookingStatus status){
+        if(bookingId == null || status == null){
+            return;
+        }
+
+        write(db -> {
+            ContentValues values = new ContentValues();
+            values.put(BOOKING_STATUS, status.name());
+            db.update(TABLE_BOOKINGS, values, BOOKING_ID + " = ?", new String[]{bookingId});
+        });
+    }
+
+    /**
+     * Store a user received from the API, e.g. the logged in user
+     * @param user
+     */
+    public void putUser(User user){
+        putUser(generation.get(), user);
+    }
+
+    /**
+     * Remove a stored booking
+     * @param bookingId
+     */
+    public void delete(String bookingId){
+        write(db -> deleteBooking(db, bookingId));
+    }
+
+    /**
+     * Remove everything from the store, e.g. on logout. Writers taken before are dropped
+     */
+    public void clear(){
+        nextGeneration();
+        write(db -> {
+            db.delete(TABLE_BOOKINGS, null, null);
+            db.delete(TABLE_USERS, null, null);
+            db.delete(TABLE_NOTES, null, null);
+        });
+    }
+
+    /**
+     * Store bookings for a generation of the store, unless it has been cleared since
+     * @param writeGeneration
+     * @param bookings
+     */
+    protected void putAll(int writeGeneration, List<Booking> bookings){
+        if(bookings == null || bookings.isEmpty()){
+            return;
+        }
+
+        write(writeGeneration, db -> putBookings(db, bookings));
+    }
+
+    /**
+     * Store a user's active bookings for a generation of the store, unless it has been
+     * cleared since (see putActiveBookings(String, List))
+     * @param writeGeneration
+     * @param userId
+     * @param active
+     */
+    protected void putActiveBookings(int writeGeneration, String userId, List<Booking> active){
+        if(userId == null || active == null){
+            return;
+        }
+
+        write(writeGeneration, db -> {
+            Set<String> activeIds = new HashSet<>();
+            for(Booking booking : active){
+                activeIds.add(booking.getId());
+            }
+
+            List<String> stale = new ArrayList<>();
+            try(Cursor cursor = db.rawQuery("SELECT " + BOOKING_ID + " FROM " + TABLE_BOOKINGS
+                    + " WHERE (" + BOOKING_CUSTOMER_ID + " = ? OR " + BOOKING_DRIVER_ID + " = ?)"
+                    + " AND " + BOOKING_STATUS + " IN " + ACTIVE_STATUSES, new String[]{userId, userId})){
+                while(cursor.moveToNext()){
+                    if(!activeIds.contains(cursor.getString(0))){
+                        stale.add(cursor.getString(0));
+                    }
+                }
+            }
+
+            for(String bookingId : stale){
+                deleteBooking(db, bookingId);
+            }
+            putBookings(db, active);
+        });
+    }
+
+    /**
+     * Store a user for a generation of the store, unless it has been cleared since
+     * @param writeGeneration
+     * @param user
+     */
+    protected void putUser(int writeGeneration, User user){
+        write(writeGeneration, db -> putUser(db, user));
+    }
+
+    /**
+     * Start a new generation of the store, dropping the writes of earlier ones
+     */
+    protected final void nextGeneration(){
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Check if a generation is the store's current one
+     * @param writeGeneration
+     * @return
+     */
+    protected final boolean isGeneration(int writeGeneration){
+        return generation.get() == writeGeneration;
+    }
+
+    /**
+     * Block until every write made so far has been applied, so a read made after it sees them.
+     * Must not be called from the main thread
+     */
+    public void flush(){
+        try{
+            // Writes run in order, so once this has run every earlier write has too
+            writeExecutor.submit(() -> {}).get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException e){
+            Log.w(TAG, "Failed to flush the booking store", e);
+        }
+    }
+
+    /**
+     * Get a stored booking
+     * @param bookingId
+     * @return the booking, or null if it isn't stored
+     */
+    public Booking getBooking(String bookingId){
+        ArrayList<Booking> bookings = query(SELECT_BOOKINGS + " WHERE b." + BOOKING_ID + " = ?", bookingId);
+        return bookings.isEmpty() ? null : bookings.get(0);
+    }
+
+    /**
+     * Get a stored user
+     * @param userId
+     * @return the user, or null if they aren't stored
+     */
+    public User getUser(String userId){
+        try(Cursor cursor = database.getReadableDatabase().rawQuery("SELECT " + USER_ID + ", " + USER_NAME + ", "
+                + USER_EMAIL + ", " + USER_ROLE + ", " + USER_COMPANY + ", " + USER_AVAILABLE + ", " + USER_CREATED_AT
+                + " FROM " + TABLE_USERS + " WHERE " + USER_ID + " = ?", new String[]{userId})){
+            return cursor.moveToFirst() ? readUser(cursor, 0) : null;
+        }
+    }
+
+    /**
+     * Get a user's stored bookings (as customer or driver), newest first
+     * @param userId
+     * @param limit - The maximum number of bookings returned
+     * @return
+     */
+    public ArrayList<Booking> getUserBookings(String userId, int limit){
+        return query(SELECT_BOOKINGS
+                + " WHERE b." + BOOKING_CUSTOMER_ID + " = ? OR b." + BOOKING_DRIVER_ID + " = ?"
+                + " ORDER BY b." + BOOKING_ID + " DESC LIMIT " + limit, userId, userId);
+    }
+
+    /**
+     * Get a user's stored bookings (as customer or driver) from the newest back to a given one,
+     * newest first
+     * @param userId
+     * @param oldestId - The ID of the oldest booking returned
+     * @return
+     */
+    public ArrayList<Booking> getUserBookingsSince(String userId, String oldestId){
+        return query(SELECT_BOOKINGS
+                + " WHERE (b." + BOOKING_CUSTOMER_ID + " = ? OR b." + BOOKING_DRIVER_ID + " = ?)"
+                + " AND b." + BOOKING_ID + " >= ?"
+                + " ORDER BY b." + BOOKING_ID + " DESC", userId, userId, oldestId);
+    }
+
+    /**
+     * Get a user's stored active bookings (as customer or driver), newest first
+     * @param userId
+     * @return
+     */
+    public ArrayList<Booking> getActiveBookings(String userId){
+        return query(SELECT_BOOKINGS
+                + " WHERE (b." + BOOKING_CUSTOMER_ID + " = ? OR b." + BOOKING_DRIVER_ID + " = ?)"
+                + " AND b." + BOOKING_STATUS + " IN " + ACTIVE_STATUSES
+                + " ORDER BY b." + BOOKING_ID + " DESC", userId, userId);
+    }
+
+    /**
+     * Get a user's most recent stored booking
+     * @param userId
+     * @return the booking, or null if none is stored
+     */
+    public Booking getMostRecentBooking(String userId){
+        ArrayList<Booking> bookings = getUserBookings(userId, 1);
+        return bookings.isEmpty() ? null : bookings.get(0);
+    }
+
+    /**
+     * Run a booking query and attach the notes of the bookings found
+     * @param sql
+     * @param args
+     * @return
+     */
+    private ArrayList<Booking> query(String sql, String... args){
+        ArrayList<Booking> bookings = new ArrayList<>();
+        SQLiteDatabase db = database.getReadableDatabase();
+
+        try(Cursor cursor = db.rawQuery(sql, args)){
+            while(cursor.moveToNext()){
+                bookings.add(readBooking(cursor));
+            }
+        }
+
+        if(!bookings.isEmpty()){
+            attachNotes(db, bookings);
+        }
+
+        return bookings;
+    }
+
+    /**
+     * Read the notes of several bookings with one query
+     * @param db
+     * @param bookings
+     */
+    private void attachNotes(SQLiteDatabase db, List<Booking> bookings){
+        Map<String, Booking> byId = new HashMap<>();
+        StringBuilder placeholders = new StringBuilder();
+        String[] ids = new String[bookings.size()];
+
+        for(int i = 0; i < bookings.size(); i++){
+            Booking booking = bookings.get(i);
+            booking.setNotes(new ArrayList<>());
+            byId.put(booking.getId(), booking);
+            ids[i] = booking.getId();
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+
+        try(Cursor cursor = db.rawQuery("SELECT " + NOTE_BOOKING_ID + ", " + NOTE_TEXT + " FROM " + TABLE_NOTES
+                + " WHERE " + NOTE_BOOKING_ID + " IN (" + placeholders + ") ORDER BY " + NOTE_POSITION, ids)){
+            while(cursor.moveToNext()){
+                byId.get(cursor.getString(0)).getNotes().add(cursor.getString(1));
+            }
+        }
+    }
+
+    /**
+     * Read a booking from a row of SELECT_BOOKINGS
+     * @param cursor
+     * @return
+     */
+    private Booking readBooking(Cursor cursor){
+        Booking booking = new Booking();
+        booking.setId(cursor.getString(0));
+        booking.setPickupLocation(cursor.getString(1));
+        booking.setDestination(cursor.getString(2));
+        booking.setTime(getDate(cursor, 3));
+        booking.setNoPassengers(cursor.getInt(4));
+        booking.setStatus(cursor.isNull(5) ? null : BookingStatus.valueOf(cursor.getString(5)));
+        booking.setCompany(cursor.getString(6));
+        booking.setCreatedAt(getDate(cursor, 7));
+        booking.setUpdatedAt(getDate(cursor, 8));
+        booking.setCustomer(readUser(cursor, CUSTOMER_COLUMNS));
+        booking.setDriver(readUser(cursor, DRIVER_COLUMNS));
+
+        return booking;
+    }
+
+    /**
+     * Read a user from their ID column followed by the other user columns. For a booking's
+     * customer or driver that isn't stored only the ID is known, the same as an unpopulated
+     * booking from the API
+     * @param cursor
+     * @param column - The position of the user's ID
+     * @return the user, or null if the booking doesn't have one
+     */
+    private User readUser(Cursor cursor, int column){
+        if(cursor.isNull(column)){
+            return null;
+        }
+
+        User user = new User(cursor.getString(column), cursor.getString(column + 1), cursor.getString(column + 2),
+                cursor.getString(column + 3), getDate(cursor, column + 6));
+        user.setCompany(cursor.getString(column + 4));
+        user.setAvailable(cursor.getInt(column + 5) != 0);
+
+        return user;
+    }
+
+    /**
+     * Read a date stored as epoch millis
+     * @param cursor
+     * @param column
+     * @return
+     */
+    private Date getDate(Cursor cursor, int column){
+        return cursor.isNull(column) ? null : new Date(cursor.getLong(column));
+    }
+
+    /**
+     * Get the columns of a booking
+     * @param booking
+     * @return
+     */
+    private ContentValues toValues(Booking booking){
+        ContentValues values = new ContentValues();
+        values.put(BOOKING_ID, booking.getId());
+        values.put(BOOKING_PICKUP_LOCATION, booking.getPickupLocation());
+        values.put(BOOKING_DESTINATION, booking.getDestination());
+        values.put(BOOKING_TIME, booking.getTime() != null ? booking.getTime().getTime() : null);
+        values.put(BOOKING_NO_PASSENGERS, booking.getNoPassengers());
+        values.put(BOOKING_STATUS, booking.getStatus() != null ? booking.getStatus().name() : null);
+        values.put(BOOKING_CUSTOMER_ID, booking.getCustomer() != null ? booking.getCustomer().getId() : null);
+        values.put(BOOKING_DRIVER_ID, booking.getDriver() != null ? booking.getDriver().getId() : null);
+        values.put(BOOKING_COMPANY, booking.getCompany());
+        values.put(BOOKING_CREATED_AT, booking.getCreatedAt() != null ? booking.getCreatedAt().getTime() : null);
+        values.put(BOOKING_UPDATED_AT, booking.getUpdatedAt() != null ? booking.getUpdatedAt().getTime() : null);
+
+        return values;
+    }
+
+    /**
+     * Store bookings, their customers, drivers and notes
+     * @param db
+     * @param bookings
+     */
+    private void putBookings(SQLiteDatabase db, List<Booking> bookings){
+        for(Booking booking : bookings){
+            if(booking.getId() == null){
+                continue;
+            }
+
+            // Tombstones from a delta sync
+            if(booking.isDeleted()){
+                deleteBooking(db, booking.getId());
+                continue;
+            }
+
+            db.insertWithOnConflict(TABLE_BOOKINGS, null, toValues(booking), SQLiteDatabase.CONFLICT_REPLACE);
+            putUser(db, booking.getCustomer());
+            putUser(db, booking.getDriver());
+
+            // Notes are only ever added, and some responses leave them out,
+            // so an empty list never replaces the stored notes
+            ArrayList<String> notes = booking.getNotes();
+            if(notes != null && !notes.isEmpty()){
+                db.delete(TABLE_NOTES, NOTE_BOOKING_ID + " = ?", new String[]{booking.getId()});
+                for(int i = 0; i < notes.size(); i++){
+                    ContentValues values = new ContentValues();
+                    values.put(NOTE_BOOKING_ID, booking.getId());
+                    values.put(NOTE_POSITION, i);
+                    values.put(NOTE_TEXT, notes.get(i));
+                    db.insert(TABLE_NOTES, null, values);
+                }
+            }
+        }
+    }
+
+    /**
+     * Store a booking's customer or driver, if the API populated them
+     * (an unpopulated user only has an ID, which is already in the booking's row)
+     * @param db
+     * @param user
+     */
+    private void putUser(SQLiteDatabase db, User user){
+        if(user == null || user.getId() == null || user.getName() == null){
+            return;
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(USER_ID, user.getId());
+        values.put(USER_NAME, user.getName());
+        values.put(USER_EMAIL, user.getEmail());
+        values.put(USER_ROLE, user.getRole());
+        values.put(USER_COMPANY, user.getCompany());
+        values.put(USER_AVAILABLE, user.isAvailable() ? 1 : 0);
+        values.put(USER_CREATED_AT, user.getCreatedAt() != null ? user.getCreatedAt().getTime() : null);
+        db.insertWithOnConflict(TABLE_USERS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Remove a booking and its notes
+     * @param db
+     * @param bookingId
+     */
+    private void deleteBooking(SQLiteDatabase db, String bookingId){
+        db.delete(TABLE_BOOKINGS, BOOKING_ID + " = ?", new String[]{bookingId});
+        db.delete(TABLE_NOTES, NOTE_BOOKING_ID + " = ?", new String[]{bookingId});
+    }
+
+    /**
+     * Apply a write for the current generation of the store
+     * @param write
+     */
+    private void write(Write write){
+        write(generation.get(), write);
+    }
+
+    /**
+     * Apply a write in a transaction on the write thread, unless the store has been cleared
+     * since the write's generation. The store is only a copy, so a failed write is logged
+     * rather than reported
+     * @param writeGeneration
+     * @param write
+     */
+    private void write(int writeGeneration, Write write){
+        writeExecutor.execute(() -> {
+            // Checked here, as a clear() made before this write was applied has run by now
+            if(!isGeneration(writeGeneration)){
+                return;
+            }
+
+            try{
+                SQLiteDatabase db = database.getWritableDatabase();
+                db.beginTransaction();
+                try{
+                    write.apply(db);
+                    db.setTransactionSuccessful();
+                }finally{
+                    db.endTransaction();
+                }
+            }catch(RuntimeException e){
+                Log.w(TAG, "Failed to write to the booking store", e);
+            }
+        });
+    }
+
+    /**
+     * A write to the database
+     */
+    private interface Write {
+        void apply(SQLiteDatabase db);
+    }
+
+    /**
+     * Writes to the generation of the store it was taken in (see writer()), and drops them
+     * once the store has been cleared
+     */
+    public class Writer {
+
+        private final int writeGeneration;
+
+        /**
+         * Private constructor, see writer()
+         * @param writeGeneration
+         */
+        private Writer(int writeGeneration){
+            this.writeGeneration = writeGeneration;
+        }
+
+        /**
+         * Store a booking received from the API, replacing the stored copy
+         * @param booking
+         */
+        public void put(Booking booking){
+            if(booking != null){
+                putAll(Collections.singletonList(booking));
+            }
+        }
+
+        /**
+         * Store bookings received from the API, replacing the stored copies
+         * @param bookings
+         */
+        public void putAll(List<Booking> bookings){
+            BookingStore.this.putAll(writeGeneration, bookings);
+        }
+
+        /**
+         * Store a user's full list of active bookings received from the API
+         * (see BookingStore.putActiveBookings())
+         * @param userId
+         * @param active
+         */
+        public void putActiveBookings(String userId, List<Booking> active){
+            BookingStore.this.putActiveBookings(writeGeneration, userId, active);
+        }
+
+        /**
+         * Store a user received from the API
+         * @param user
+         */
+        public void putUser(User user){
+            BookingStore.this.putUser(writeGeneration, user);
+        }
+
+        /**
+         * Check if the store hasn't been cleared since the writer was taken
+         * @return
+         */
+        public boolean isCurrent(){
+            return isGeneration(writeGeneration);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * TaxeDatabase.java
+ *
+ * The app's local SQLite database, a copy of the bookings (and their customers, drivers and
+ * notes) received from the API. Bookings are indexed by status, time, customer and driver,
+ * so a user's history or active bookings can be queried without scanning every booking.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+class TaxeDatabase extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "taxe.db";
+    private static final int DATABASE_VERSION = 1;
+
+    static final String TABLE_BOOKINGS = "bookings";
+    static final String TABLE_USERS = "users";
+    static final String TABLE_NOTES = "notes";
+
+    // Bookings columns, dates are stored as epoch millis
+    static final String BOOKING_ID = "id";
+    static final String BOOKING_PICKUP_LOCATION = "pickup_location";
+    static final String BOOKING_DESTINATION = "destination";
+    static final String BOOKING_TIME = "time";
+    static final String BOOKING_NO_PASSENGERS = "no_passengers";
+    static final String BOOKING_STATUS = "status";
+    static final String BOOKING_CUSTOMER_ID = "customer_id";
+    static final String BOOKING_DRIVER_ID = "driver_id";
+    static final String BOOKING_COMPANY = "company";
+    static final String BOOKING_CREATED_AT = "created_at";
+    static final String BOOKING_UPDATED_AT = "updated_at";
+
+    // Users columns
+    static final String USER_ID = "id";
+    static final String USER_NAME = "name";
+    static final String USER_EMAIL = "email";
+    static final String USER_ROLE = "role";
+    static final String USER_COMPANY = "company";
+    static final String USER_AVAILABLE = "available";
+    static final String USER_CREATED_AT = "created_at";
+
+    // Notes columns, a booking's notes are kept in order by position
+    static final String NOTE_BOOKING_ID = "booking_id";
+    static final String NOTE_POSITION = "position";
+    static final String NOTE_TEXT = "note";
+
+    /**
+     * Default Constructor
+     * @param context
+     */
+    TaxeDatabase(Context context){
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * Create the tables and their indexes
+     * @param db
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db){
+        db.execSQL("CREATE TABLE " + TABLE_BOOKINGS + " ("
+                + BOOKING_ID + " TEXT PRIMARY KEY, "
+                + BOOKING_PICKUP_LOCATION + " TEXT, "
+                + BOOKING_DESTINATION + " TEXT, "
+                + BOOKING_TIME + " INTEGER, "
+                + BOOKING_NO_PASSENGERS + " INTEGER NOT NULL DEFAULT 0, "
+                + BOOKING_STATUS + " TEXT, "
+                + BOOKING_CUSTOMER_ID + " TEXT, "
+                + BOOKING_DRIVER_ID + " TEXT, "
+                + BOOKING_COMPANY + " TEXT, "
+                + BOOKING_CREATED_AT + " INTEGER, "
+                + BOOKING_UPDATED_AT + " INTEGER)");
+
+        // A user's bookings are looked up by customer or driver, newest first
+        db.execSQL("CREATE INDEX bookings_customer ON " + TABLE_BOOKINGS + " (" + BOOKING_CUSTOMER_ID + ", " + BOOKING_ID + ")");
+        db.execSQL("CREATE INDEX bookings_driver ON " + TABLE_BOOKINGS + " (" + BOOKING_DRIVER_ID + ", " + BOOKING_ID + ")");
+        db.execSQL("CREATE INDEX bookings_status ON " + TABLE_BOOKINGS + " (" + BOOKING_STATUS + ", " + BOOKING_TIME + ")");
+        db.execSQL("CREATE INDEX bookings_time ON " + TABLE_BOOKINGS + " (" + BOOKING_TIME + ")");
+
+        db.execSQL("CREATE TABLE " + TABLE_USERS + " ("
+                + USER_ID + " TEXT PRIMARY KEY, "
+                + USER_NAME + " TEXT, "
+                + USER_EMAIL + " TEXT, "
+                + USER_ROLE + " TEXT, "
+                + USER_COMPANY + " TEXT, "
+                + USER_AVAILABLE + " INTEGER NOT NULL DEFAULT 0, "
+                + USER_CREATED_AT + " INTEGER)");
+
+        db.execSQL("CREATE TABLE " + TABLE_NOTES + " ("
+                + NOTE_BOOKING_ID + " TEXT NOT NULL, "
+                + NOTE_POSITION + " INTEGER NOT NULL, "
+                + NOTE_TEXT + " TEXT, "
+                + "PRIMARY KEY (" + NOTE_BOOKING_ID + ", " + NOTE_POSITION + "))");
+    }
+
+    /**
+     * Upgrade the database. Everything in it can be downloaded again, so just start over
+     * @param db
+     * @param oldVersion
+     * @param newVersion
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion){
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BOOKINGS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_USERS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NOTES);
+        onCreate(db);
+    }
+}
@@ -60,6 +60,13 @@ public class Booking {
     @SerializedName("created_at")
     private Date createdAt;
 
+    @SerializedName("updated_at")
+    private Date updatedAt;
+
+    // Set by the API on bookings returned by a delta sync that have since been deleted
+    @SerializedName("deleted")
+    private boolean deleted;
+
     /**
      * Default empty constructor
      */
@@ -234,6 +241,46 @@ public class Booking {
         return createdAt;
     }
 
+    /**
+     * Set the date the booking was created
+     * @param createdAt
+     */
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Get the date the booking was last modified
+     * @return
+     */
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * Set the date the booking was last modified
+     * @param updatedAt
+     */
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * Check if the booking has been deleted (only returned by delta syncs)
+     * @return
+     */
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Set whether the booking has been deleted
+     * @param deleted
+     */
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
     /**
      * Set the ID of a booking
      * @param id
@@ -274,6 +321,14 @@ public class Booking {
         this.note = note;
     }
 
+    /**
+     * Get the singular note being added to the booking
+     * @return
+     */
+    public String getNote(){
+        return note;
+    }
+
     /**
      * Generate a unique id (long) for this booking object, based on the mongoDB object id
      * Used in recyclerview to fix the blinking update issue
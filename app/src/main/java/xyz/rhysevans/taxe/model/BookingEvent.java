@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * BookingEvent.java
+ *
+ * Model class for an event pushed by the API over the booking event stream, when one of the
+ * user's bookings is created, changes status or is assigned to / released by a driver
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingEvent {
+
+    public static final String TYPE_CREATED = "booking_created";
+    public static final String TYPE_UPDATED = "booking_updated";
+    public static final String TYPE_ASSIGNED = "booking_assigned";
+    public static final String TYPE_RELEASED = "booking_released";
+
+    // Resume token, sent back when reconnecting to receive the events missed meanwhile
+    @SerializedName("id")
+    private String id;
+
+    @SerializedName("type")
+    private String type;
+
+    @SerializedName("booking")
+    private Booking booking;
+
+    /**
+     * Default Constructor
+     */
+    public BookingEvent(){
+    }
+
+    /**
+     * Get the ID of the event
+     * @return
+     */
+    public String getId(){
+        return id;
+    }
+
+    /**
+     * Get the type of the event (one of the TYPE_ constants)
+     * @return
+     */
+    public String getType(){
+        return type;
+    }
+
+    /**
+     * Get the booking as it is after the event. The customer and driver may not be populated
+     * @return
+     */
+    public Booking getBooking(){
+        return booking;
+    }
+
+    /**
+     * Reflection-free Gson adapter for booking events, registered by ModelTypeAdapterFactory
+     */
+    static final class GsonAdapter extends TypeAdapter<BookingEvent> {
+
+        private final TypeAdapter<Booking> bookingAdapter;
+
+        /**
+         * Default Constructor
+         * @param bookingAdapter
+         */
+        GsonAdapter(TypeAdapter<Booking> bookingAdapter){
+            this.bookingAdapter = bookingAdapter;
+        }
+
+        /**
+         * Write an event, skipping null fields
+         * @param out
+         * @param event
+         * @throws IOException
+         */
+        @Override
+        public void write(JsonWriter out, BookingEvent event) throws IOException {
+            if(event == null){
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            ModelTypeAdapterFactory.writeString(out, "id", event.id);
+            ModelTypeAdapterFactory.writeString(out, "type", event.type);
+            if(event.booking != null){
+                out.name("booking");
+                bookingAdapter.write(out, event.booking);
+            }
+            out.endObject();
+        }
+
+        /**
+         * Read an event, ignoring unknown and null fields
+         * @param in
+         * @return
+         * @throws IOException
+         */
+        @Override
+        public BookingEvent read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL){
+                in.nextNull();
+                return null;
+            }
+
+            BookingEvent event = new BookingEvent();
+
+            in.beginObject();
+            while(in.hasNext()){
+                String name = in.nextName();
+
+                if(in.peek() == JsonToken.NULL){
+                    in.nextNull();
+                    continue;
+                }
+
+                switch(name){
+                    case "id":
+                        event.id = in.nextString();
+                        break;
+                    case "type":
+                        event.type = in.nextString();
+                        break;
+                    case "booking":
+                        event.booking = bookingAdapter.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            return event;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.model;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Bootstrap.java
+ *
+ * Model class for everything the app's first screens need about the logged in user:
+ * the user, their most recent booking and their active bookings
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class Bootstrap {
+
+    @SerializedName("user")
+    private User user;
+
+    @SerializedName("most_recent_booking")
+    private Booking mostRecentBooking;
+
+    @SerializedName("active_bookings")
+    private ArrayList<Booking> activeBookings;
+
+    /**
+     * Default Constructor
+     */
+    public Bootstrap(){
+    }
+
+    /**
+     * Constructor
+     * @param user
+     * @param mostRecentBooking - null if the user has no bookings
+     * @param activeBookings
+     */
+    public Bootstrap(User user, Booking mostRecentBooking, ArrayList<Booking> activeBookings){
+        this.user = user;
+        this.mostRecentBooking = mostRecentBooking;
+        this.activeBookings = activeBookings;
+    }
+
+    /**
+     * Get the logged in user
+     * @return
+     */
+    public User getUser(){
+        return user;
+    }
+
+    /**
+     * Get the user's most recent booking (fully populated)
+     * @return the booking, or null if the user has no bookings
+     */
+    public Booking getMostRecentBooking(){
+        return mostRecentBooking;
+    }
+
+    /**
+     * Get the user's active bookings
+     * @return
+     */
+    public ArrayList<Booking> getActiveBookings(){
+        return activeBookings;
+    }
+
+    /**
+     * Reflection-free Gson adapter for the bootstrap, registered by ModelTypeAdapterFactory
+     */
+    static final class GsonAdapter extends TypeAdapter<Bootstrap> {
+
+        private final TypeAdapter<User> userAdapter;
+        private final TypeAdapter<Booking> bookingAdapter;
+
+        /**
+         * Default Constructor
+         * @param userAdapter
+         * @param bookingAdapter
+         */
+        GsonAdapter(TypeAdapter<User> userAdapter, TypeAdapter<Booking> bookingAdapter){
+            this.userAdapter = userAdapter;
+            this.bookingAdapter = bookingAdapter;
+        }
+
+        /**
+         * Write a bootstrap, skipping null fields
+         * @param out
+         * @param bootstrap
+         * @throws IOException
+         */
+        @Override
+        public void write(JsonWriter out, Bootstrap bootstrap) throws IOException {
+            if(bootstrap == null){
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            if(bootstrap.user != null){
+                out.name("user");
+                userAdapter.write(out, bootstrap.user);
+            }
+            if(bootstrap.mostRecentBooking != null){
+                out.name("most_recent_booking");
+                bookingAdapter.write(out, bootstrap.mostRecentBooking);
+            }
+            if(bootstrap.activeBookings != null){
+                out.name("active_bookings").beginArray();
+                for(Booking booking : bootstrap.activeBookings){
+                    bookingAdapter.write(out, booking);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        /**
+         * Read a bootstrap, ignoring unknown and null fields
+         * @param in
+         * @return
+         * @throws IOException
+         */
+        @Override
+        public Bootstrap read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL){
+                in.nextNull();
+                return null;
+            }
+
+            Bootstrap bootstrap = new Bootstrap();
+            bootstrap.activeBookings = new ArrayList<>();
+
+            in.beginObject();
+            while(in.hasNext()){
+                String name = in.nextName();
+
+                if(in.peek() == JsonToken.NULL){
+                    in.nextNull();
+                    continue;
+                }
+
+                switch(name){
+                    case "user":
+                        bootstrap.user = userAdapter.read(in);
+                        break;
+                    case "most_recent_booking":
+                        bootstrap.mostRecentBooking = bookingAdapter.read(in);
+                        break;
+                    case "active_bookings":
+                        in.beginArray();
+                        while(in.hasNext()){
+                            bootstrap.activeBookings.add(bookingAdapter.read(in));
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            return bootstrap;
+        }
+    }
+}
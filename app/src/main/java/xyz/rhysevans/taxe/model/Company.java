@@ -5,8 +5,13 @@
 
 package xyz.rhysevans.taxe.model;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
 import java.util.Date;
 
 /**
@@ -99,4 +104,96 @@ public class Company {
     public Date getCreatedAt() {
         return createdAt;
     }
+
+    /**
+     * Reflection-free Gson adapter for companies, registered by ModelTypeAdapterFactory
+     */
+    static final class GsonAdapter extends TypeAdapter<Company> {
+
+        private final TypeAdapter<Date> dateAdapter;
+
+        /**
+         * Default Constructor
+         * @param dateAdapter
+         */
+        GsonAdapter(TypeAdapter<Date> dateAdapter){
+            this.dateAdapter = dateAdapter;
+        }
+
+        /**
+         * Write a company, skipping null fields
+         * @param out
+         * @param company
+         * @throws IOException
+         */
+        @Override
+        public void write(JsonWriter out, Company company) throws IOException {
+            if(company == null){
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            ModelTypeAdapterFactory.writeString(out, "_id", company.id);
+            ModelTypeAdapterFactory.writeString(out, "name", company.name);
+            ModelTypeAdapterFactory.writeStringArray(out, "bookings", company.bookings);
+            ModelTypeAdapterFactory.writeStringArray(out, "drivers", company.drivers);
+            ModelTypeAdapterFactory.writeStringArray(out, "admins", company.admins);
+            ModelTypeAdapterFactory.writeDate(out, "created_at", company.createdAt, dateAdapter);
+            out.endObject();
+        }
+
+        /**
+         * Read a company, ignoring unknown and null fields
+         * @param in
+         * @return
+         * @throws IOException
+         */
+        @Override
+        public Company read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL){
+                in.nextNull();
+                return null;
+            }
+
+            Company company = new Company();
+
+            in.beginObject();
+            while(in.hasNext()){
+                String name = in.nextName();
+
+                if(in.peek() == JsonToken.NULL){
+                    in.nextNull();
+                    continue;
+                }
+
+                switch(name){
+                    case "_id":
+                        company.id = in.nextString();
+                        break;
+                    case "name":
+                        company.name = in.nextString();
+                        break;
+                    case "bookings":
+                        company.bookings = ModelTypeAdapterFactory.readStringArray(in);
+                        break;
+                    case "drivers":
+                        company.drivers = ModelTypeAdapterFactory.readStringArray(in);
+                        break;
+                    case "admins":
+                        company.admins = ModelTypeAdapterFactory.readStringArray(in);
+                        break;
+                    case "created_at":
+                        company.createdAt = dateAdapter.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            return company;
+        }
+    }
 }
@@ -5,8 +5,13 @@
 
 package xyz.rhysevans.taxe.model;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
 import java.util.Date;
 
 /**
@@ -113,4 +118,104 @@ public class LoginResponse {
     public String getCompany(){
         return this.company;
     }
+
+    /**
+     * Reflection-free Gson adapter for login responses, registered by ModelTypeAdapterFactory
+     */
+    static final class GsonAdapter extends TypeAdapter<LoginResponse> {
+
+        private final TypeAdapter<Date> dateAdapter;
+
+        /**
+         * Default Constructor
+         * @param dateAdapter
+         */
+        GsonAdapter(TypeAdapter<Date> dateAdapter){
+            this.dateAdapter = dateAdapter;
+        }
+
+        /**
+         * Write a login response, skipping null fields
+         * @param out
+         * @param response
+         * @throws IOException
+         */
+        @Override
+        public void write(JsonWriter out, LoginResponse response) throws IOException {
+            if(response == null){
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            ModelTypeAdapterFactory.writeString(out, "token", response.token);
+            ModelTypeAdapterFactory.writeString(out, "name", response.name);
+            ModelTypeAdapterFactory.writeString(out, "email", response.email);
+            ModelTypeAdapterFactory.writeDate(out, "created_at", response.createdAt, dateAdapter);
+            ModelTypeAdapterFactory.writeString(out, "role", response.role);
+            ModelTypeAdapterFactory.writeString(out, "_id", response.id);
+            ModelTypeAdapterFactory.writeString(out, "company", response.company);
+            ModelTypeAdapterFactory.writeStringArray(out, "bookings", response.bookings);
+            out.endObject();
+        }
+
+        /**
+         * Read a login response, ignoring unknown and null fields
+         * @param in
+         * @return
+         * @throws IOException
+         */
+        @Override
+        public LoginResponse read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL){
+                in.nextNull();
+                return null;
+            }
+
+            LoginResponse response = new LoginResponse();
+
+            in.beginObject();
+            while(in.hasNext()){
+                String name = in.nextName();
+
+                if(in.peek() == JsonToken.NULL){
+                    in.nextNull();
+                    continue;
+                }
+
+                switch(name){
+                    case "token":
+                        response.token = in.nextString();
+                        break;
+                    case "name":
+                        response.name = in.nextString();
+                        break;
+                    case "email":
+                        response.email = in.nextString();
+                        break;
+                    case "created_at":
+                        response.createdAt = dateAdapter.read(in);
+                        break;
+                    case "role":
+                        response.role = in.nextString();
+                        break;
+                    case "_id":
+                        response.id = in.nextString();
+                        break;
+                    case "company":
+                        response.company = in.nextString();
+                        break;
+                    case "bookings":
+                        response.bookings = ModelTypeAdapterFactory.readStringArray(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            return response;
+        }
+    }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.model;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * ModelTypeAdapterFactory.java
+ *
+ * Provides the hand-written, reflection-free Gson adapters of the model classes
+ * (User, Company, LoginResponse, Response, BookingEvent and Bootstrap). Each adapter lives inside its model class,
+ * so it can read and write the private fields directly, using the same JSON names as the
+ * @SerializedName annotations. Bookings are handled by BookingTypeAdapter.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class ModelTypeAdapterFactory implements TypeAdapterFactory {
+
+    /**
+     * Return the adapter for a model class, or null for any other type
+     * @param gson
+     * @param type
+     * @param <T>
+     * @return
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+
+        if(rawType == User.class){
+            return (TypeAdapter<T>) new User.GsonAdapter(gson.getAdapter(Date.class));
+        }
+
+        if(rawType == Company.class){
+            return (TypeAdapter<T>) new Company.GsonAdapter(gson.getAdapter(Date.class));
+        }
+
+        if(rawType == LoginResponse.class){
+            return (TypeAdapter<T>) new LoginResponse.GsonAdapter(gson.getAdapter(Date.class));
+        }
+
+        if(rawType == Response.class){
+            return (TypeAdapter<T>) new Response.GsonAdapter();
+        }
+
+        if(rawType == BookingEvent.class){
+            return (TypeAdapter<T>) new BookingEvent.GsonAdapter(gson.getAdapter(Booking.class));
+        }
+
+        if(rawType == Bootstrap.class){
+            return (TypeAdapter<T>) new Bootstrap.GsonAdapter(gson.getAdapter(User.class), gson.getAdapter(Booking.class));
+        }
+
+        return null;
+    }
+
+    /**
+     * Read a JSON array of strings
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    static String[] readStringArray(JsonReader in) throws IOException {
+        ArrayList<String> values = new ArrayList<>();
+
+        in.beginArray();
+        while(in.hasNext()){
+            values.add(in.nextString());
+        }
+        in.endArray();
+
+        return values.toArray(new String[values.size()]);
+    }
+
+    /**
+     * Write a named array of strings, skipping it if null
+     * @param out
+     * @param name
+     * @param values
+     * @throws IOException
+     */
+    static void writeStringArray(JsonWriter out, String name, String[] values) throws IOException {
+        if(values == null){
+            return;
+        }
+
+        out.name(name).beginArray();
+        for(String value : values){
+            out.value(value);
+        }
+        out.endArray();
+    }
+
+    /**
+     * Write a named string, skipping it if null
+     * @param out
+     * @param name
+     * @param value
+     * @throws IOException
+     */
+    static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if(value != null){
+            out.name(name).value(value);
+        }
+    }
+
+    /**
+     * Write a named date, skipping it if null
+     * @param out
+     * @param name
+     * @param value
+     * @param dateAdapter
+     * @throws IOException
+     */
+    static void writeDate(JsonWriter out, String name, Date value, TypeAdapter<Date> dateAdapter) throws IOException {
+        if(value != null){
+            out.name(name);
+            dateAdapter.write(out, value);
+        }
+    }
+}
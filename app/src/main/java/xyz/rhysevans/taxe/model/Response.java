@@ -5,7 +5,13 @@
 
 package xyz.rhysevans.taxe.model;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 
 /**
  * Response.java
@@ -24,12 +30,25 @@ public class Response {
     @SerializedName("bookingId")
     private String bookingId;
 
+    // Set locally when the request was queued to be sent once back online, never sent by the API
+    private boolean queued;
+
     /**
      * Default Constructor
      */
     public Response(){
     }
 
+    /**
+     * Overloaded constructor for responses created by the app rather than the API
+     * @param message
+     * @param queued
+     */
+    public Response(String message, boolean queued){
+        this.message = message;
+        this.queued = queued;
+    }
+
     /**
      * Get the message returned by the API
      * @return
@@ -45,4 +64,78 @@ public class Response {
     public String getBookingId(){
         return bookingId;
     }
+
+    /**
+     * Check if the request was queued rather than sent, because the device is offline
+     * @return
+     */
+    public boolean isQueued(){
+        return queued;
+    }
+
+    /**
+     * Reflection-free Gson adapter for responses, registered by ModelTypeAdapterFactory
+     */
+    static final class GsonAdapter extends TypeAdapter<Response> {
+
+        /**
+         * Write a response, skipping null fields
+         * @param out
+         * @param response
+         * @throws IOException
+         */
+        @Override
+        public void write(JsonWriter out, Response response) throws IOException {
+            if(response == null){
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            ModelTypeAdapterFactory.writeString(out, "message", response.message);
+            ModelTypeAdapterFactory.writeString(out, "bookingId", response.bookingId);
+            out.endObject();
+        }
+
+        /**
+         * Read a response, ignoring unknown and null fields
+         * @param in
+         * @return
+         * @throws IOException
+         */
+        @Override
+        public Response read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL){
+                in.nextNull();
+                return null;
+            }
+
+            Response response = new Response();
+
+            in.beginObject();
+            while(in.hasNext()){
+                String name = in.nextName();
+
+                if(in.peek() == JsonToken.NULL){
+                    in.nextNull();
+                    continue;
+                }
+
+                switch(name){
+                    case "message":
+                        response.message = in.nextString();
+                        break;
+                    case "bookingId":
+                        response.bookingId = in.nextString();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            return response;
+        }
+    }
 }
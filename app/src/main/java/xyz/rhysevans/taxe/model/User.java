@@ -5,8 +5,13 @@
 
 package xyz.rhysevans.taxe.model;
 
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.IOException;
 import java.util.Date;
 
 import xyz.rhysevans.taxe.util.Roles;
@@ -85,6 +90,23 @@ public class User{
         this.createdAt = createdAt;
     }
 
+    /**
+     * Copy constructor, the copy shares nothing mutable with the original
+     * @param other
+     */
+    public User(User other){
+        this.id = other.id;
+        this.name = other.name;
+        this.email = other.email;
+        this.password = other.password;
+        this.oldPassword = other.oldPassword;
+        this.role = other.role;
+        this.available = other.available;
+        this.createdAt = other.createdAt != null ? new Date(other.createdAt.getTime()) : null;
+        this.company = other.company;
+        this.bookings = other.bookings != null ? other.bookings.clone() : null;
+    }
+
 
     /**
      * Set the object ID of the user
@@ -222,4 +244,111 @@ public class User{
         return this.available;
     }
 
+    /**
+     * Reflection-free Gson adapter for users, registered by ModelTypeAdapterFactory
+     */
+    static final class GsonAdapter extends TypeAdapter<User> {
+
+        private final TypeAdapter<Date> dateAdapter;
+
+        /**
+         * Default Constructor
+         * @param dateAdapter
+         */
+        GsonAdapter(TypeAdapter<Date> dateAdapter){
+            this.dateAdapter = dateAdapter;
+        }
+
+        /**
+         * Write a user, skipping null fields
+         * @param out
+         * @param user
+         * @throws IOException
+         */
+        @Override
+        public void write(JsonWriter out, User user) throws IOException {
+            if(user == null){
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            ModelTypeAdapterFactory.writeString(out, "_id", user.id);
+            ModelTypeAdapterFactory.writeString(out, "name", user.name);
+            ModelTypeAdapterFactory.writeString(out, "email", user.email);
+            ModelTypeAdapterFactory.writeString(out, "password", user.password);
+            ModelTypeAdapterFactory.writeString(out, "old_password", user.oldPassword);
+            ModelTypeAdapterFactory.writeString(out, "role", user.role);
+            out.name("available").value(user.available);
+            ModelTypeAdapterFactory.writeDate(out, "created_at", user.createdAt, dateAdapter);
+            ModelTypeAdapterFactory.writeString(out, "company", user.company);
+            ModelTypeAdapterFactory.writeStringArray(out, "bookings", user.bookings);
+            out.endObject();
+        }
+
+        /**
+         * Read a user, ignoring unknown and null fields
+         * @param in
+         * @return
+         * @throws IOException
+         */
+        @Override
+        public User read(JsonReader in) throws IOException {
+            if(in.peek() == JsonToken.NULL){
+                in.nextNull();
+                return null;
+            }
+
+            User user = new User();
+
+            in.beginObject();
+            while(in.hasNext()){
+                String name = in.nextName();
+
+                if(in.peek() == JsonToken.NULL){
+                    in.nextNull();
+                    continue;
+                }
+
+                switch(name){
+                    case "_id":
+                        user.id = in.nextString();
+                        break;
+                    case "name":
+                        user.name = in.nextString();
+                        break;
+                    case "email":
+                        user.email = in.nextString();
+                        break;
+                    case "password":
+                        user.password = in.nextString();
+                        break;
+                    case "old_password":
+                        user.oldPassword = in.nextString();
+                        break;
+                    case "role":
+                        user.role = in.nextString();
+                        break;
+                    case "available":
+                        user.available = in.nextBoolean();
+                        break;
+                    case "created_at":
+                        user.createdAt = dateAdapter.read(in);
+                        break;
+                    case "company":
+                        user.company = in.nextString();
+                        break;
+                    case "bookings":
+                        user.bookings = ModelTypeAdapterFactory.readStringArray(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            return user;
+        }
+    }
 }
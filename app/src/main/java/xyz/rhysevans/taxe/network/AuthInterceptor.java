@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import xyz.rhysevans.taxe.util.SharedPreferencesManager;
+
+/**
+ * AuthInterceptor.java
+ *
+ * Attaches the current session's access token as a Bearer Authorization header.
+ * The token is read from the shared preferences manager on every request, so a single
+ * retrofit interface can be shared for the whole session and picks up login / logout immediately.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class AuthInterceptor implements Interceptor {
+
+    private final SharedPreferencesManager sharedPreferencesManager;
+
+    /**
+     * Default Constructor
+     * @param sharedPreferencesManager - Where the current token is read from
+     */
+    public AuthInterceptor(SharedPreferencesManager sharedPreferencesManager){
+        this.sharedPreferencesManager = sharedPreferencesManager;
+    }
+
+    /**
+     * Add the bearer token to the request (if the user is logged in and no
+     * other Authorization header has been set)
+     * @param chain
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request original = chain.request();
+
+        // Read the token once so the whole request uses a consistent value
+        String token = sharedPreferencesManager.getCachedToken();
+
+        if(token == null || original.header("Authorization") != null){
+            return chain.proceed(original);
+        }
+
+        Request.Builder builder = original.newBuilder()
+                .header("Authorization", "Bearer " + token)
+                .method(original.method(), original.body());
+
+        return chain.proceed(builder.build());
+    }
+}
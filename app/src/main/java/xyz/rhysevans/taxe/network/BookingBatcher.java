@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import retrofit2.adapter.rxjava.HttpException;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+import rx.subjects.AsyncSubject;
+import xyz.rhysevans.taxe.model.Booking;
+
+/**
+ * BookingBatcher.java
+ *
+ * Collects the bookings requested by ID within a short window and fetches them with a single
+ * multi-get request (GET bookings?ids=a,b,c), handing each caller back its own booking.
+ * Bookings missing from the multi-get response are fetched individually, so callers still get
+ * the API's error for them, and if the API doesn't support multi-get every booking is.
+ *
+ * A booking whose callers all unsubscribe before its window closes is left out of the request.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingBatcher {
+
+    /**
+     * Default time (in milliseconds) requests are collected for before being sent
+     */
+    private static final long DEFAULT_WINDOW = 20;
+
+    /**
+     * Default maximum number of IDs in one request, a full batch is sent straight away
+     */
+    private static final int DEFAULT_MAX_BATCH_SIZE = 50;
+
+    private final long window;
+    private final int maxBatchSize;
+    private final Scheduler scheduler;
+
+    // The bookings requested in the current window (guarded by this)
+    private Map<String, AsyncSubject<Booking>> pending = new LinkedHashMap<>();
+    // The number of callers subscribed to each booking in the current window (guarded by this)
+    private final Map<String, Integer> waiters = new HashMap<>();
+    private Subscription scheduledFlush;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    /**
+     * Default Constructor
+     */
+    public BookingBatcher(){
+        this(DEFAULT_WINDOW, DEFAULT_MAX_BATCH_SIZE, Schedulers.computation());
+    }
+
+    /**
+     * Constructor
+     * @param window - Time (in milliseconds) requests are collected for
+     * @param maxBatchSize - Maximum number of IDs in one request
+     * @param scheduler - Scheduler the window is timed on
+     */
+    public BookingBatcher(long window, int maxBatchSize, Scheduler scheduler){
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Get a booking by its ID, batched with any other bookings requested at the same time
+     * @param bookingId
+     * @return
+     */
+    public Observable<Booking> get(String bookingId){
+        return Observable.defer(() -> {
+            AsyncSubject<Booking> result = register(bookingId);
+            return result.asObservable()
+                    .doOnUnsubscribe(() -> unregister(bookingId, result));
+        });
+    }
+
+    /**
+     * Get the average number of bookings fetched per request
+     * @return
+     */
+    public double getAverageBatchSize(){
+        long batches = batchCount.get();
+        return batches == 0 ? 0 : (double) requestCount.get() / batches;
+    }
+
+    /**
+     * Add a booking to the current window, sharing the result if it was already requested
+     * @param bookingId
+     * @return
+     */
+    private AsyncSubject<Booking> register(String bookingId){
+        AsyncSubject<Booking> result;
+        boolean full;
+
+        synchronized(this){
+            result = pending.get(bookingId);
+            if(result == null){
+                result = AsyncSubject.create();
+                pending.put(bookingId, result);
+            }
+
+            Integer count = waiters.get(bookingId);
+            waiters.put(bookingId, count == null ? 1 : count + 1);
+
+            full = pending.size() >= maxBatchSize;
+            if(!full && scheduledFlush == null){
+                scheduledFlush = Observable.timer(window, TimeUnit.MILLISECONDS, scheduler)
+                        .subscribe(tick -> flush());
+            }
+        }
+
+        if(full){
+            flush();
+        }
+
+        return result;
+    }
+
+    /**
+     * Remove a caller of a booking, leaving the booking out of the request if it was the last
+     * one and the window hasn't been sent yet
+     * @param bookingId
+     * @param result - The result the caller subscribed to
+     */
+    private synchronized void unregister(String bookingId, AsyncSubject<Booking> result){
+        // Already sent (or completed), nothing to cancel
+        if(pending.get(bookingId) != result){
+            return;
+        }
+
+        int count = waiters.get(bookingId) - 1;
+        if(count > 0){
+            waiters.put(bookingId, count);
+            return;
+        }
+
+        waiters.remove(bookingId);
+        pending.remove(bookingId);
+
+        if(pending.isEmpty() && scheduledFlush != null){
+            scheduledFlush.unsubscribe();
+            scheduledFlush = null;
+        }
+    }
+
+    /**
+     * Send the bookings requested in the current window and start a new one
+     */
+    private void flush(){
+        Map<String, AsyncSubject<Booking>> batch;
+        synchronized(this){
+            batch = pending;
+            pending = new LinkedHashMap<>();
+            waiters.clear();
+
+            if(scheduledFlush != null){
+                scheduledFlush.unsubscribe();
+                scheduledFlush = null;
+            }
+        }
+
+        if(batch.isEmpty()){
+            return;
+        }
+
+        requestCount.addAndGet(batch.size());
+        batchCount.incrementAndGet();
+
+        // Nothing to gain from a multi-get for a single booking
+        if(batch.size() == 1){
+            Map.Entry<String, AsyncSubject<Booking>> only = batch.entrySet().iterator().next();
+            fetchSingle(only.getKey(), only.getValue());
+            return;
+        }
+
+        StringBuilder ids = new StringBuilder();
+        for(String bookingId : batch.keySet()){
+            if(ids.length() > 0){
+                ids.append(',');
+            }
+            ids.append(bookingId);
+        }
+
+        NetworkUtil.getRetrofit().getBookings(ids.toString())
+                .subscribe(bookings -> deliver(batch, bookings), error -> fail(batch, error));
+    }
+
+    /**
+     * Hand each caller its booking from the multi-get response
+     * @param batch
+     * @param bookings
+     */
+    private void deliver(Map<String, AsyncSubject<Booking>> batch, ArrayList<Booking> bookings){
+        Map<String, Booking> byId = new HashMap<>();
+        for(Booking booking : bookings){
+            byId.put(booking.getId(), booking);
+        }
+
+        for(Map.Entry<String, AsyncSubject<Booking>> entry : batch.entrySet()){
+            Booking booking = byId.get(entry.getKey());
+            if(booking != null){
+                entry.getValue().onNext(booking);
+                entry.getValue().onCompleted();
+            }else{
+                // Let the single endpoint report why (e.g. not found or not allowed)
+                fetchSingle(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Handle a failed multi-get
+     * @param batch
+     * @param error
+     */
+    private void fail(Map<String, AsyncSubject<Booking>> batch, Throwable error){
+        boolean unsupported = error instanceof HttpException
+                && (((HttpException) error).code() == 404 || ((HttpException) error).code() == 400);
+
+        for(Map.Entry<String, AsyncSubject<Booking>> entry : batch.entrySet()){
+            if(unsupported){
+                fetchSingle(entry.getKey(), entry.getValue());
+            }else{
+                entry.getValue().onError(error);
+            }
+        }
+    }
+
+    /**
+     * Fetch a single booking with its own request
+     * @param bookingId
+     * @param result
+     */
+    private void fetchSingle(String bookingId, AsyncSubject<Booking> result){
+        NetworkUtil.getRetrofit().getBooking(bookingId).subscribe(result);
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subjects.SerializedSubject;
+import rx.subjects.Subject;
+import xyz.rhysevans.taxe.model.BookingEvent;
+import xyz.rhysevans.taxe.util.Constants;
+import xyz.rhysevans.taxe.util.GsonUtil;
+
+/**
+ * BookingEventStream.java
+ *
+ * Client of the API's booking event stream, a WebSocket on which the API pushes an event
+ * whenever one of the logged-in user's bookings changes (see BookingEvent), so screens can
+ * update as soon as a booking's status changes rather than when the user refreshes.
+ *
+ * The socket is opened when the first subscriber subscribes to events() and closed when the
+ * last one unsubscribes. If it drops it is re-opened with capped exponential backoff, sending
+ * the ID of the last event received so the API can replay any events missed meanwhile.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingEventStream {
+
+    private static final String TAG = BookingEventStream.class.getSimpleName();
+
+    /**
+     * Path of the stream, relative to the base url
+     */
+    private static final String EVENTS_PATH = "events";
+
+    /**
+     * Query parameter carrying the resume token
+     */
+    private static final String RESUME_QUERY = "since";
+
+    /**
+     * Normal closure code of a WebSocket
+     */
+    private static final int NORMAL_CLOSURE = 1000;
+
+    /**
+     * Range of close codes the API uses to end the stream deliberately (e.g. an expired token)
+     */
+    private static final int MIN_APPLICATION_CLOSURE = 4000;
+    private static final int MAX_APPLICATION_CLOSURE = 4999;
+
+    /**
+     * Handshake status of a token the API refused
+     */
+    private static final int UNAUTHORIZED = 401;
+
+    /**
+     * Delay (in milliseconds) before the first reconnection, doubled for each further attempt
+     */
+    private static final long BASE_RECONNECT_DELAY = 1000;
+
+    /**
+     * Maximum delay (in milliseconds) between two reconnections
+     */
+    private static final long MAX_RECONNECT_DELAY = 60000;
+
+    private final OkHttpClient client;
+    private final HttpUrl baseUrl;
+    private final Scheduler scheduler;
+    private final Random random;
+    private final Gson gson = GsonUtil.getGson();
+
+    private final Subject<BookingEvent, BookingEvent> events = new SerializedSubject<>(PublishSubject.create());
+
+    // All of the following are guarded by this
+    private int subscriberCount;
+    private WebSocket webSocket;
+    private boolean connected;
+    private Subscription pendingReconnect;
+    private int reconnectAttempt;
+    private String lastEventId;
+
+    /**
+     * Constructor
+     * @param client - Client the socket is opened with, it should attach the session's token
+     * @param baseUrl - Base url of the API (e.g. a local server in tests)
+     * @param scheduler - Scheduler reconnections are timed on (e.g. a TestScheduler in tests)
+     * @param random - Source of the reconnection jitter
+     */
+    public BookingEventStream(OkHttpClient client, HttpUrl baseUrl, Scheduler scheduler, Random random){
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.scheduler = scheduler;
+        this.random = random;
+    }
+
+    /**
+     * Constructor, connecting to the API and timing reconnections on the computation scheduler
+     * @param client
+     */
+    public BookingEventStream(OkHttpClient client){
+        this(client, HttpUrl.parse(Constants.BASE_URL), Schedulers.computation(), new Random());
+    }
+
+    /**
+     * Get the stream of booking events. Events are emitted on OkHttp's socket thread
+     * and the stream never errors, connection failures are retried internally
+     * @return
+     */
+    public Observable<BookingEvent> events(){
+        return events.asObservable()
+                .doOnSubscribe(this::onSubscribe)
+                .doOnUnsubscribe(this::onUnsubscribe);
+    }
+
+    /**
+     * Check if the socket is currently open
+     * @return
+     */
+    public synchronized boolean isConnected(){
+        return connected;
+    }
+
+    /**
+     * Close the socket and forget the position in the stream, e.g. when the user logs out.
+     * The next subscriber opens a fresh socket from the start of the stream
+     */
+    public synchronized void reset(){
+        disconnect();
+        lastEventId = null;
+    }
+
+    /**
+     * Check if a reconnection is waiting for its backoff delay to pass
+     * @return
+     */
+    @VisibleForTesting
+    synchronized boolean isReconnectPending(){
+        return pendingReconnect != null;
+    }
+
+    /**
+     * Open the socket when a subscriber arrives and none is open or pending,
+     * e.g. the first subscriber or one arriving after the API ended the stream
+     */
+    private synchronized void onSubscribe(){
+        subscriberCount++;
+        if(webSocket == null && pendingReconnect == null){
+            connect();
+        }
+    }
+
+    /**
+     * Close the socket once the last subscriber has gone
+     */
+    private synchronized void onUnsubscribe(){
+        if(--subscriberCount == 0){
+            disconnect();
+        }
+    }
+
+    /**
+     * Open the socket, resuming after the last event received
+     */
+    private synchronized void connect(){
+        HttpUrl.Builder url = baseUrl.newBuilder().addPathSegment(EVENTS_PATH);
+        if(lastEventId != null){
+            url.addQueryParameter(RESUME_QUERY, lastEventId);
+        }
+
+        webSocket = client.newWebSocket(new Request.Builder().url(url.build()).build(), new Listener());
+    }
+
+    /**
+     * Close the socket and cancel any pending reconnection
+     */
+    private synchronized void disconnect(){
+        if(pendingReconnect != null){
+            pendingReconnect.unsubscribe();
+            pendingReconnect = null;
+        }
+
+        if(webSocket != null){
+            webSocket.close(NORMAL_CLOSURE, null);
+            webSocket = null;
+        }
+
+        connected = false;
+        reconnectAttempt = 0;
+    }
+
+    /**
+     * Schedule a reconnection after a failed or dropped socket, if anyone is still subscribed
+     * @param socket - The socket that failed
+     */
+    private synchronized void scheduleReconnect(WebSocket socket){
+        // Ignore sockets that have already been replaced or closed
+        if(socket != webSocket || subscriberCount == 0){
+            return;
+        }
+
+        connected = false;
+
+        // Full jitter over a capped exponential backoff
+        long backoff = Math.min(MAX_RECONNECT_DELAY, BASE_RECONNECT_DELAY << Math.min(reconnectAttempt, 16));
+        long delay = (long) (random.nextDouble() * (backoff + 1));
+        reconnectAttempt++;
+
+        pendingReconnect = Observable.timer(delay, TimeUnit.MILLISECONDS, scheduler)
+                .subscribe(tick -> reconnect(socket));
+    }
+
+    /**
+     * Give up on a socket the API has refused or closed on purpose, without reconnecting
+     * @param socket - The socket that was refused
+     * @param reason - Logged reason
+     */
+    private synchronized void stop(WebSocket socket, String reason){
+        if(socket != webSocket){
+            return;
+        }
+
+        Log.w(TAG, "Booking event stream ended by the API: " + reason);
+        webSocket = null;
+        connected = false;
+        reconnectAttempt = 0;
+    }
+
+    /**
+     * Re-open the socket, unless it was closed or replaced while waiting
+     * @param socket - The socket that failed
+     */
+    private synchronized void reconnect(WebSocket socket){
+        if(socket == webSocket && subscriberCount > 0){
+            pendingReconnect = null;
+            connect();
+        }
+    }
+
+    /**
+     * Record a successful connection, resetting the backoff
+     * @param socket
+     */
+    private synchronized void onConnected(WebSocket socket){
+        if(socket == webSocket){
+            connected = true;
+            reconnectAttempt = 0;
+        }
+    }
+
+    /**
+     * Parse an event and pass it on to the subscribers
+     * @param socket
+     * @param text
+     */
+    private void onEvent(WebSocket socket, String text){
+        BookingEvent event;
+        try{
+            event = gson.fromJson(text, BookingEvent.class);
+        }catch(JsonParseException e){
+            Log.w(TAG, "Ignoring malformed booking event", e);
+            return;
+        }
+
+        if(event == null || event.getBooking() == null){
+            return;
+        }
+
+        synchronized(this){
+            if(socket != webSocket){
+                return;
+            }
+            if(event.getId() != null){
+                lastEventId = event.getId();
+            }
+        }
+
+        events.onNext(event);
+    }
+
+    /**
+     * Listener of a single socket
+     */
+    private class Listener extends WebSocketListener {
+
+        @Override
+        public void onOpen(WebSocket webSocket, Response response){
+            onConnected(webSocket);
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text){
+            onEvent(webSocket, text);
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason){
+            webSocket.close(NORMAL_CLOSURE, null);
+            if(code >= MIN_APPLICATION_CLOSURE && code <= MAX_APPLICATION_CLOSURE){
+                stop(webSocket, code + " " + reason);
+            }else{
+                scheduleReconnect(webSocket);
+            }
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response){
+            if(response != null && response.code() == UNAUTHORIZED){
+                stop(webSocket, "401 " + response.message());
+            }else{
+                scheduleReconnect(webSocket);
+            }
+        }
+    }
+}
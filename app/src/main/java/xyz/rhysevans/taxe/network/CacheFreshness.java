@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.CacheControl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * CacheFreshness.java
+ *
+ * Network interceptor that lets a request's max-age (see CachePolicy.SHORT_LIVED) take effect.
+ * The API sends ETags but no freshness headers, and OkHttp's cache never serves a response
+ * without asking the server unless the response itself says how long it stays fresh. So when a
+ * GET asked for max-age and the response has no Cache-Control or Expires of its own, the
+ * response is stored as fresh for that long.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class CacheFreshness implements Interceptor {
+
+    /**
+     * Add the request's max-age to a response without freshness headers
+     * @param chain
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+
+        int maxAge = request.cacheControl().maxAgeSeconds();
+        if(!request.method().equals("GET") || maxAge <= 0 || !response.isSuccessful()){
+            return response;
+        }
+
+        // Leave any caching rules the server did send alone
+        if(response.header("Cache-Control") != null || response.header("Expires") != null){
+            return response;
+        }
+
+        return response.newBuilder()
+                .header("Cache-Control", new CacheControl.Builder()
+                        .maxAge(maxAge, TimeUnit.SECONDS)
+                        .build()
+                        .toString())
+                .build();
+    }
+}
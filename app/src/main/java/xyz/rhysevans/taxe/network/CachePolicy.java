@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+/**
+ * CachePolicy.java
+ *
+ * Cache-Control request headers used to choose the caching behaviour of each endpoint
+ * in the RetrofitInterface (via the @Headers annotation).
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public final class CachePolicy {
+
+    /**
+     * Always ask the server, but send the cached ETag / Last-Modified so that unchanged
+     * responses come back as a body-less 304
+     */
+    public static final String REVALIDATE = "Cache-Control: no-cache";
+
+    /**
+     * Serve from the cache without asking the server if the cached copy is under 30 seconds old,
+     * otherwise revalidate. The API doesn't send freshness headers itself, CacheFreshness
+     * marks the response as fresh for the requested 30 seconds
+     */
+    public static final String SHORT_LIVED = "Cache-Control: max-age=30";
+
+    /**
+     * Private constructor, constants only
+     */
+    private CachePolicy(){}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * CacheStats.java
+ *
+ * Application interceptor that classifies every GET by how the HTTP cache served it:
+ * - Hit: served from disk without touching the network
+ * - Revalidated: a conditional request (If-None-Match / If-Modified-Since) returned 304,
+ *   so the cached body was reused and no body was downloaded
+ * - Miss: the full body was downloaded from the server
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class CacheStats implements Interceptor {
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong revalidatedCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    /**
+     * Classify the response once the cache has handled it
+     * @param chain
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+
+        // Only GETs are cached
+        if(!"GET".equals(chain.request().method())){
+            return response;
+        }
+
+        Response cacheResponse = response.cacheResponse();
+        Response networkResponse = response.networkResponse();
+
+        if(networkResponse == null){
+            hitCount.incrementAndGet();
+            recordBytesSaved(response);
+        }else if(cacheResponse != null && networkResponse.code() == 304){
+            revalidatedCount.incrementAndGet();
+            recordBytesSaved(response);
+        }else{
+            missCount.incrementAndGet();
+        }
+
+        return response;
+    }
+
+    /**
+     * Add the size of a body that was served from the cache to the bytes saved
+     * @param response
+     */
+    private void recordBytesSaved(Response response){
+        if(response.body() != null && response.body().contentLength() > 0){
+            bytesSaved.addAndGet(response.body().contentLength());
+        }
+    }
+
+    /**
+     * Get the number of responses served from the cache without a network request
+     * @return
+     */
+    public long getHitCount(){
+        return hitCount.get();
+    }
+
+    /**
+     * Get the number of conditional requests that returned 304 Not Modified
+     * @return
+     */
+    public long getRevalidatedCount(){
+        return revalidatedCount.get();
+    }
+
+    /**
+     * Get the number of responses whose body was downloaded from the server
+     * @return
+     */
+    public long getMissCount(){
+        return missCount.get();
+    }
+
+    /**
+     * Get the number of body bytes that were served from the cache instead of downloaded
+     * (only counted when the cached response declares a Content-Length)
+     * @return
+     */
+    public long getBytesSaved(){
+        return bytesSaved.get();
+    }
+
+    /**
+     * Reset all counters
+     */
+    public void reset(){
+        hitCount.set(0);
+        revalidatedCount.set(0);
+        missCount.set(0);
+        bytesSaved.set(0);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import android.os.SystemClock;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Dns;
+
+/**
+ * CachingDns.java
+ *
+ * DNS resolver that remembers lookups for a short time, so a host resolved while warming up
+ * the client (see NetworkUtil.warmUp()) does not have to be resolved again by the first request.
+ * The cache is cleared whenever the device changes network, as the addresses may differ.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class CachingDns implements Dns {
+
+    /**
+     * How long (in milliseconds) a lookup is remembered for
+     */
+    private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Dns delegate;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Whether the last lookup made on each thread was answered from the cache
+    private final ThreadLocal<Boolean> lastLookupCached = new ThreadLocal<>();
+
+    /**
+     * Default Constructor, resolves hosts with the system resolver
+     */
+    public CachingDns(){
+        this(Dns.SYSTEM);
+    }
+
+    /**
+     * Constructor
+     * @param delegate - Resolver used when a lookup is not cached
+     */
+    public CachingDns(Dns delegate){
+        this.delegate = delegate;
+    }
+
+    /**
+     * Get the addresses of a host, from the cache if the last lookup has not expired
+     * @param hostname
+     * @return
+     * @throws UnknownHostException
+     */
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        Entry entry = entries.get(hostname);
+        long now = SystemClock.elapsedRealtime();
+
+        if(entry != null && entry.expiresAt > now){
+            lastLookupCached.set(true);
+            return entry.addresses;
+        }
+
+        lastLookupCached.set(false);
+        List<InetAddress> addresses = delegate.lookup(hostname);
+        entries.put(hostname, new Entry(addresses, now + TTL_MILLIS));
+        return addresses;
+    }
+
+    /**
+     * Check if the last lookup made on the calling thread was answered from the cache.
+     * OkHttp resolves a host on the thread that reports the lookup to the call's EventListener,
+     * so a listener can use this to tell cache hits apart
+     * @return
+     */
+    public boolean wasLastLookupCached(){
+        return Boolean.TRUE.equals(lastLookupCached.get());
+    }
+
+    /**
+     * Forget every cached lookup, e.g. when the device changes network
+     */
+    public void clear(){
+        entries.clear();
+    }
+
+    /**
+     * A cached lookup
+     */
+    private static class Entry {
+        final List<InetAddress> addresses;
+        final long expiresAt;
+
+        Entry(List<InetAddress> addresses, long expiresAt){
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
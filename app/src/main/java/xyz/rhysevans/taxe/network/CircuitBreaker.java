@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.CacheControl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * CircuitBreaker.java
+ *
+ * Application interceptor that stops sending requests to an endpoint group (e.g. "users",
+ * "bookings", "companies") once it looks like the API is down, so screens fail instantly
+ * rather than each waiting for a socket timeout.
+ * - Closed: requests are sent. Consecutive outage failures (timeouts, refused connections,
+ *   5xx responses) are counted and once they reach the threshold the circuit opens (a trip)
+ * - Open: requests are not sent. GETs are answered from the HTTP cache if possible, otherwise
+ *   a CircuitOpenException is thrown. After a cool-down the circuit becomes half-open
+ * - Half-open: a single trial request is sent, closing the circuit if it succeeds or
+ *   re-opening it if it fails. Other requests are treated as if the circuit was open
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class CircuitBreaker implements Interceptor {
+
+    /**
+     * States of a circuit
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Default number of consecutive failures that open a circuit
+     */
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /**
+     * Default time (in milliseconds) a circuit stays open before a trial request is allowed
+     */
+    private static final long DEFAULT_OPEN_DURATION = TimeUnit.SECONDS.toMillis(30);
+
+    private final int failureThreshold;
+    private final long openDuration;
+
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    private final AtomicLong tripCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong servedFromCacheCount = new AtomicLong();
+
+    /**
+     * Default Constructor
+     */
+    public CircuitBreaker(){
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION);
+    }
+
+    /**
+     * Constructor
+     * @param failureThreshold - Number of consecutive failures that open a circuit
+     * @param openDuration - Time (in milliseconds) a circuit stays open
+     */
+    public CircuitBreaker(int failureThreshold, long openDuration){
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Send the request if its group's circuit allows it, and record the outcome
+     * @param chain
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String group = EndpointKey.groupOf(request);
+        Circuit circuit = getCircuit(group);
+
+        if(!circuit.allowRequest(SystemClock.elapsedRealtime())){
+            return reject(chain, group);
+        }
+
+        boolean recorded = false;
+        try{
+            Response response = chain.proceed(request);
+
+            // A response served from the cache says nothing about the server
+            if(response.networkResponse() != null){
+                if(response.code() >= 500){
+                    onFailure(circuit);
+                }else{
+                    circuit.onSuccess();
+                }
+                recorded = true;
+            }
+
+            return response;
+        }catch(IOException e){
+            if(isOutage(e)){
+                onFailure(circuit);
+                recorded = true;
+            }
+            throw e;
+        }finally{
+            // Anything else (a cache hit, a cancelled call or a RuntimeException further down the
+            // chain) says nothing about the server, but must still end a half-open trial
+            if(!recorded){
+                circuit.onComplete();
+            }
+        }
+    }
+
+    /**
+     * Get the current state of an endpoint group's circuit
+     * @param group - e.g. "bookings"
+     * @return
+     */
+    public State getState(String group){
+        Circuit circuit = circuits.get(group);
+        return circuit == null ? State.CLOSED : circuit.getState();
+    }
+
+    /**
+     * Get the number of times a circuit has opened
+     * @return
+     */
+    public long getTripCount(){
+        return tripCount.get();
+    }
+
+    /**
+     * Get the number of requests that were not sent because their circuit was open
+     * @return
+     */
+    public long getRejectedCount(){
+        return rejectedCount.get();
+    }
+
+    /**
+     * Get the number of rejected requests that were answered from the HTTP cache
+     * @return
+     */
+    public long getServedFromCacheCount(){
+        return servedFromCacheCount.get();
+    }
+
+    /**
+     * Close every circuit and reset all counters
+     */
+    public void reset(){
+        circuits.clear();
+        tripCount.set(0);
+        rejectedCount.set(0);
+        servedFromCacheCount.set(0);
+    }
+
+    /**
+     * Answer a request without sending it, from the cache if it is a GET with a cached response
+     * @param chain
+     * @param group
+     * @return
+     * @throws IOException
+     */
+    private Response reject(Chain chain, String group) throws IOException {
+        rejectedCount.incrementAndGet();
+
+        Request request = chain.request();
+        if("GET".equals(request.method())){
+            Response cached = chain.proceed(request.newBuilder()
+                    .cacheControl(CacheControl.FORCE_CACHE)
+                    .build());
+
+            if(cached.cacheResponse() != null){
+                servedFromCacheCount.incrementAndGet();
+                return cached;
+            }
+
+            // Nothing cached (OkHttp answered with 504 Unsatisfiable Request)
+            cached.body().close();
+        }
+
+        throw new CircuitOpenException(group);
+    }
+
+    /**
+     * Record a failure against a circuit, counting a trip if it opened
+     * @param circuit
+     */
+    private void onFailure(Circuit circuit){
+        if(circuit.onFailure(SystemClock.elapsedRealtime())){
+            tripCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get (creating it if needed) the circuit of an endpoint group
+     * @param group
+     * @return
+     */
+    private Circuit getCircuit(String group){
+        Circuit circuit = circuits.get(group);
+        if(circuit == null){
+            Circuit created = new Circuit();
+            circuit = circuits.putIfAbsent(group, created);
+            if(circuit == null){
+                circuit = created;
+            }
+        }
+
+        return circuit;
+    }
+
+    /**
+     * Check if an error means the API could not be reached, rather than e.g. the call being cancelled
+     * @param e
+     * @return
+     */
+    private static boolean isOutage(IOException e){
+        return e instanceof SocketTimeoutException
+                || e instanceof ConnectException
+                || e instanceof NoRouteToHostException
+                || e instanceof UnknownHostException;
+    }
+
+    /**
+     * The state of a single endpoint group
+     */
+    private class Circuit {
+
+        private State state = State.CLOSED;
+        private int failures;
+        private long openedAt;
+        private boolean trialInFlight;
+
+        /**
+         * Check if a request may be sent, moving from open to half-open once the cool-down is over
+         * @param now
+         * @return
+         */
+        synchronized boolean allowRequest(long now){
+            if(state == State.OPEN){
+                if(now - openedAt < openDuration){
+                    return false;
+                }
+
+                state = State.HALF_OPEN;
+                trialInFlight = false;
+            }
+
+            if(state == State.HALF_OPEN){
+                // Only one trial request at a time
+                if(trialInFlight){
+                    return false;
+                }
+
+                trialInFlight = true;
+            }
+
+            return true;
+        }
+
+        /**
+         * Record a successful request, closing the circuit
+         */
+        synchronized void onSuccess(){
+            state = State.CLOSED;
+            failures = 0;
+            trialInFlight = false;
+        }
+
+        /**
+         * Record a failed request
+         * @param now
+         * @return true if the circuit opened
+         */
+        synchronized boolean onFailure(long now){
+            if(state == State.HALF_OPEN || (state == State.CLOSED && ++failures >= failureThreshold)){
+                state = State.OPEN;
+                openedAt = now;
+                failures = 0;
+                trialInFlight = false;
+                return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Record a request that neither succeeded nor failed (e.g. cancelled, or served from cache)
+         */
+        synchronized void onComplete(){
+            trialInFlight = false;
+        }
+
+        synchronized State getState(){
+            return state;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import java.io.IOException;
+
+/**
+ * CircuitOpenException.java
+ *
+ * Thrown instead of sending a request while the circuit breaker of its endpoint group is open
+ * (the API is considered down) and no cached response is available.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class CircuitOpenException extends IOException {
+
+    /**
+     * Default Constructor
+     * @param group - The endpoint group whose circuit is open
+     */
+    public CircuitOpenException(String group){
+        super("Circuit open for '" + group + "' requests");
+    }
+}
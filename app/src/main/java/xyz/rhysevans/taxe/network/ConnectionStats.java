@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * ConnectionStats.java
+ *
+ * Network interceptor that counts how many requests were sent over a connection
+ * that had already been used before (taken warm from the shared connection pool)
+ * versus a freshly opened one.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class ConnectionStats implements Interceptor {
+
+    /**
+     * Every connection seen so far, weakly held so evicted connections can be collected
+     */
+    private final Set<Connection> seenConnections =
+            Collections.newSetFromMap(Collections.synchronizedMap(new WeakHashMap<Connection, Boolean>()));
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong reusedCount = new AtomicLong();
+
+    /**
+     * Record whether the connection carrying this request is new or reused
+     * @param chain
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Connection connection = chain.connection();
+
+        requestCount.incrementAndGet();
+        // add() returns false if the connection has already carried a request
+        if(connection != null && !seenConnections.add(connection)){
+            reusedCount.incrementAndGet();
+        }
+
+        return chain.proceed(chain.request());
+    }
+
+    /**
+     * Get the total number of requests sent over the network
+     * @return
+     */
+    public long getRequestCount(){
+        return requestCount.get();
+    }
+
+    /**
+     * Get the number of requests that reused a pooled connection
+     * @return
+     */
+    public long getReusedCount(){
+        return reusedCount.get();
+    }
+
+    /**
+     * Get the number of requests that had to open a new connection
+     * @return
+     */
+    public long getNewConnectionCount(){
+        return requestCount.get() - reusedCount.get();
+    }
+
+    /**
+     * Get the fraction (0 - 1) of requests that reused a pooled connection
+     * @return
+     */
+    public double getReuseRate(){
+        long requests = requestCount.get();
+        return requests == 0 ? 0 : (double) reusedCount.get() / requests;
+    }
+
+    /**
+     * Reset all counters
+     */
+    public void reset(){
+        requestCount.set(0);
+        reusedCount.set(0);
+        seenConnections.clear();
+    }
+}
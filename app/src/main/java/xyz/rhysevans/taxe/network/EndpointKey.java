@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import java.util.List;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import xyz.rhysevans.taxe.util.Constants;
+
+/**
+ * EndpointKey.java
+ *
+ * Turns a request into the name of the API endpoint it was sent to, e.g.
+ * "GET users/{id}/bookings", by removing the API's base path and replacing object IDs
+ * with "{id}". Used to group network metrics by RetrofitInterface endpoint.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public final class EndpointKey {
+
+    /**
+     * Number of path segments in the base url (e.g. api/v1/)
+     */
+    private static final int BASE_PATH_SEGMENTS = countSegments(HttpUrl.parse(Constants.BASE_URL));
+
+    /**
+     * Private constructor, static methods only
+     */
+    private EndpointKey(){}
+
+    /**
+     * Get the endpoint key of a request
+     * @param request
+     * @return
+     */
+    public static String of(Request request){
+        StringBuilder key = new StringBuilder(request.method()).append(' ');
+
+        List<String> segments = request.url().pathSegments();
+        for(int i = BASE_PATH_SEGMENTS; i < segments.size(); i++){
+            if(i > BASE_PATH_SEGMENTS){
+                key.append('/');
+            }
+
+            String segment = segments.get(i);
+            key.append(isObjectId(segment) ? "{id}" : segment);
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Get the group of an endpoint, its first path segment (e.g. "users", "bookings")
+     * @param request
+     * @return
+     */
+    public static String groupOf(Request request){
+        List<String> segments = request.url().pathSegments();
+        return segments.size() > BASE_PATH_SEGMENTS ? segments.get(BASE_PATH_SEGMENTS) : "";
+    }
+
+    /**
+     * Check if a path segment is a MongoDB object ID (24 hex characters)
+     * @param segment
+     * @return
+     */
+    private static boolean isObjectId(String segment){
+        if(segment.length() != 24){
+            return false;
+        }
+
+        for(int i = 0; i < segment.length(); i++){
+            if(Character.digit(segment.charAt(i), 16) < 0){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Count the non-empty path segments of a url
+     * @param url
+     * @return
+     */
+    private static int countSegments(HttpUrl url){
+        int count = 0;
+        for(String segment : url.pathSegments()){
+            if(!segment.isEmpty()){
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram.java
+ *
+ * Lock-free histogram of durations with logarithmic buckets, each 10% wider than the last,
+ * from 1 microsecond up to about a minute. Percentiles are reported as the upper bound of
+ * the bucket they fall in, so they are accurate to within 10%.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class LatencyHistogram {
+
+    /**
+     * Growth factor between the upper bounds of two neighbouring buckets
+     */
+    private static final double BUCKET_GROWTH = 1.1;
+
+    /**
+     * Number of buckets, the last one also holds anything longer than its bound (~70s)
+     */
+    private static final int BUCKET_COUNT = 190;
+
+    private static final double LOG_GROWTH = Math.log(BUCKET_GROWTH);
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Record a duration
+     * @param duration
+     * @param unit
+     */
+    public void record(long duration, TimeUnit unit){
+        long micros = Math.max(1, unit.toMicros(duration));
+
+        buckets.incrementAndGet(bucketOf(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+
+        long max;
+        while(micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)){
+            // Another thread updated the max, try again
+        }
+    }
+
+    /**
+     * Get the number of durations recorded
+     * @return
+     */
+    public long getCount(){
+        return count.get();
+    }
+
+    /**
+     * Get the mean duration in milliseconds
+     * @return
+     */
+    public double getMeanMillis(){
+        long recorded = count.get();
+        return recorded == 0 ? 0 : totalMicros.get() / (recorded * 1000.0);
+    }
+
+    /**
+     * Get the longest duration in milliseconds
+     * @return
+     */
+    public double getMaxMillis(){
+        return maxMicros.get() / 1000.0;
+    }
+
+    /**
+     * Get the duration (in milliseconds) that the given fraction of durations were at or below
+     * @param percentile - between 0 and 1, e.g. 0.95 for p95
+     * @return
+     */
+    public double getPercentileMillis(double percentile){
+        long recorded = count.get();
+        if(recorded == 0){
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile * recorded));
+        long seen = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            seen += buckets.get(i);
+            if(seen >= rank){
+                // Never report more than the longest duration actually seen
+                return Math.min(upperBoundOf(i), maxMicros.get()) / 1000.0;
+            }
+        }
+
+        return getMaxMillis();
+    }
+
+    /**
+     * Get the median duration in milliseconds
+     * @return
+     */
+    public double getP50Millis(){
+        return getPercentileMillis(0.50);
+    }
+
+    /**
+     * Get the 95th percentile duration in milliseconds
+     * @return
+     */
+    public double getP95Millis(){
+        return getPercentileMillis(0.95);
+    }
+
+    /**
+     * Get the 99th percentile duration in milliseconds
+     * @return
+     */
+    public double getP99Millis(){
+        return getPercentileMillis(0.99);
+    }
+
+    /**
+     * Remove every recorded duration
+     */
+    public void reset(){
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    @Override
+    public String toString(){
+        return String.format(Locale.US, "n=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                getCount(), getP50Millis(), getP95Millis(), getP99Millis(), getMaxMillis());
+    }
+
+    /**
+     * Get the index of the bucket a duration falls in
+     * @param micros
+     * @return
+     */
+    private static int bucketOf(long micros){
+        int bucket = (int) Math.ceil(Math.log(micros) / LOG_GROWTH);
+        return Math.min(Math.max(bucket, 0), BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Get the upper bound (in microseconds) of a bucket
+     * @param bucket
+     * @return
+     */
+    private static double upperBoundOf(int bucket){
+        return Math.pow(BUCKET_GROWTH, bucket);
+    }
+}
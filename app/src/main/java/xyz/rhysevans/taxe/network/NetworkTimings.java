@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * NetworkTimings.java
+ *
+ * EventListener factory that times the phases of every call and records them, per
+ * RetrofitInterface endpoint (see EndpointKey), in latency histograms. Phases that mostly
+ * depend on the radio (DNS, connect, TLS, request write, body read) can then be told apart
+ * from the one that mostly depends on the server (time to first byte).
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class NetworkTimings implements EventListener.Factory {
+
+    /**
+     * The timed phases of a call
+     */
+    public enum Phase {
+        /**
+         * Resolving the host. Lookups answered from the CachingDns cache are not recorded,
+         * as they take no time
+         */
+        DNS,
+        /**
+         * Opening a new connection, including the TLS handshake
+         */
+        CONNECT,
+        /**
+         * The TLS handshake of a new connection
+         */
+        TLS,
+        /**
+         * Writing the request headers and body
+         */
+        REQUEST_WRITE,
+        /**
+         * From the request being written until the response headers start to arrive
+         */
+        TIME_TO_FIRST_BYTE,
+        /**
+         * Reading the response body
+         */
+        BODY_READ,
+        /**
+         * The whole call, from being started until it ends or fails
+         */
+        CALL
+    }
+
+    private final ConcurrentMap<String, EndpointTimings> endpoints = new ConcurrentHashMap<>();
+
+    // The client's resolver, to leave out cached lookups (null to record every lookup)
+    private final CachingDns dns;
+
+    /**
+     * Default Constructor, records every lookup
+     */
+    public NetworkTimings(){
+        this(null);
+    }
+
+    /**
+     * Constructor
+     * @param dns - The client's resolver, lookups it answers from its cache are not recorded
+     */
+    public NetworkTimings(CachingDns dns){
+        this.dns = dns;
+    }
+
+    /**
+     * Create the listener of a single call
+     * @param call
+     * @return
+     */
+    @Override
+    public EventListener create(Call call){
+        return new CallTimer(getTimings(EndpointKey.of(call.request())), dns);
+    }
+
+    /**
+     * Get the timings of a single endpoint
+     * @param endpoint - e.g. "GET users/{id}/bookings"
+     * @return
+     */
+    public EndpointTimings getTimings(String endpoint){
+        EndpointTimings timings = endpoints.get(endpoint);
+        if(timings == null){
+            EndpointTimings created = new EndpointTimings();
+            timings = endpoints.putIfAbsent(endpoint, created);
+            if(timings == null){
+                timings = created;
+            }
+        }
+
+        return timings;
+    }
+
+    /**
+     * Get the timings of every endpoint seen so far, e.g. for a debug screen
+     * @return
+     */
+    public Map<String, EndpointTimings> getAllTimings(){
+        return Collections.unmodifiableMap(new HashMap<>(endpoints));
+    }
+
+    /**
+     * Remove every recorded timing
+     */
+    public void reset(){
+        endpoints.clear();
+    }
+
+    /**
+     * The latency histograms of a single endpoint, one per phase
+     */
+    public static class EndpointTimings {
+
+        private final Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+
+        EndpointTimings(){
+            for(Phase phase : Phase.values()){
+                histograms.put(phase, new LatencyHistogram());
+            }
+        }
+
+        /**
+         * Get the histogram of a phase
+         * @param phase
+         * @return
+         */
+        public LatencyHistogram get(Phase phase){
+            return histograms.get(phase);
+        }
+
+        @Override
+        public String toString(){
+            StringBuilder builder = new StringBuilder();
+            for(Phase phase : Phase.values()){
+                LatencyHistogram histogram = histograms.get(phase);
+                if(histogram.getCount() > 0){
+                    builder.append(phase).append(": ").append(histogram).append('\n');
+                }
+            }
+
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Listener of a single call, turns its events into phase durations.
+     * OkHttp delivers the events of a call sequentially, so no synchronization is needed
+     */
+    private static class CallTimer extends EventListener {
+
+        private final EndpointTimings timings;
+        private final CachingDns dns;
+
+        private long callStart;
+        private long dnsStart;
+        private long connectStart;
+        private long secureConnectStart;
+        private long requestStart;
+        private long requestEnd;
+        private long bodyStart;
+
+        CallTimer(EndpointTimings timings, CachingDns dns){
+            this.timings = timings;
+            this.dns = dns;
+        }
+
+        @Override
+        public void callStart(Call call){
+            callStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName){
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList){
+            // The lookup ran on this thread, between dnsStart and dnsEnd
+            if(dns == null || !dns.wasLastLookupCached()){
+                record(Phase.DNS, dnsStart);
+            }
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy){
+            connectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectStart(Call call){
+            secureConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake){
+            record(Phase.TLS, secureConnectStart);
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol){
+            record(Phase.CONNECT, connectStart);
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol, IOException ioe){
+            record(Phase.CONNECT, connectStart);
+        }
+
+        @Override
+        public void requestHeadersStart(Call call){
+            requestStart = System.nanoTime();
+        }
+
+        @Override
+        public void requestHeadersEnd(Call call, Request request){
+            requestEnd = System.nanoTime();
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount){
+            requestEnd = System.nanoTime();
+        }
+
+        @Override
+        public void responseHeadersStart(Call call){
+            timings.get(Phase.REQUEST_WRITE).record(requestEnd - requestStart, TimeUnit.NANOSECONDS);
+            record(Phase.TIME_TO_FIRST_BYTE, requestEnd);
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response){
+            // The body starts where the headers end
+            bodyStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount){
+            record(Phase.BODY_READ, bodyStart);
+        }
+
+        @Override
+        public void callEnd(Call call){
+            record(Phase.CALL, callStart);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe){
+            record(Phase.CALL, callStart);
+        }
+
+        /**
+         * Record the time since a phase started
+         * @param phase
+         * @param start - System.nanoTime() when the phase started
+         */
+        private void record(Phase phase, long start){
+            timings.get(phase).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
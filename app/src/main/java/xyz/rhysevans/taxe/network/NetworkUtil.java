@@ -6,22 +6,41 @@
 package xyz.rhysevans.taxe.network;
 
 
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.support.annotation.VisibleForTesting;
 import android.util.Base64;
-import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
-import retrofit2.Converter;
+import okhttp3.Response;
 import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
 import retrofit2.converter.gson.GsonConverterFactory;
+import rx.Observable;
+import rx.functions.Func0;
 import rx.schedulers.Schedulers;
-import xyz.rhysevans.taxe.model.Booking;
-import xyz.rhysevans.taxe.util.BookingDeserializer;
 import xyz.rhysevans.taxe.util.Constants;
+import xyz.rhysevans.taxe.util.GsonUtil;
+import xyz.rhysevans.taxe.util.SharedPreferencesManager;
 
 /**
  * NetworkUtil.java
@@ -36,29 +55,214 @@ import xyz.rhysevans.taxe.util.Constants;
 public class NetworkUtil {
 
     /**
-     * Default getRetrofit() method returns a retrofit interface with an RxJavaCallAdapterFactory
-     * @return Retrofit.Builder
+     * Maximum number of idle connections kept in the shared pool
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+
+    /**
+     * How long (in minutes) an idle connection is kept alive in the shared pool
+     */
+    private static final long KEEP_ALIVE_DURATION = 5;
+
+    /**
+     * Name of the directory (inside the app's cache dir) used for the HTTP cache
+     */
+    private static final String HTTP_CACHE_DIRECTORY = "http";
+
+    /**
+     * Maximum size of the HTTP cache in bytes (10 MiB)
+     */
+    private static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * Connection pool shared by every client so TCP connections are reused across requests
+     */
+    private static final ConnectionPool connectionPool = new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION, TimeUnit.MINUTES);
+
+    /**
+     * Dispatcher shared by every client so all requests share one thread pool
+     */
+    private static final Dispatcher dispatcher = new Dispatcher();
+
+    /**
+     * DNS resolver shared by every client, remembers the host resolved while warming up
+     */
+    private static final CachingDns dns = new CachingDns();
+
+    /**
+     * Set while a warm-up request is in flight so only one is sent at a time
+     */
+    private static final AtomicBoolean warmingUp = new AtomicBoolean();
+
+    /**
+     * Counts how often requests are sent over a warm, pooled connection
+     */
+    private static final ConnectionStats connectionStats = new ConnectionStats();
+
+    /**
+     * Fails requests fast while the API looks to be down
+     */
+    private static final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Counts cache hits, misses and conditional revalidations of the shared cache
+     */
+    private static final CacheStats cacheStats = new CacheStats();
+
+    /**
+     * Stores responses as fresh for the max-age the request asked for
+     */
+    private static final CacheFreshness cacheFreshness = new CacheFreshness();
+
+    /**
+     * Records wire vs decoded response sizes per endpoint
+     */
+    private static final PayloadStats payloadStats = new PayloadStats();
+
+    /**
+     * Measures time-to-first-byte of requests on cold vs pre-warmed connections
+     */
+    private static final TtfbStats ttfbStats = new TtfbStats(connectionPool);
+
+    /**
+     * Times the phases (DNS, connect, TLS, TTFB, ...) of every call per endpoint
+     */
+    private static final NetworkTimings networkTimings = new NetworkTimings(dns);
+
+    /**
+     * Shares in-flight GET requests between identical callers
+     */
+    private static final RequestCoalescer requestCoalescer = new RequestCoalescer();
+
+    /**
+     * Combines getBooking requests made at the same time into one multi-get
+     */
+    private static final BookingBatcher bookingBatcher = new BookingBatcher();
+
+    /**
+     * Source of the current session's token, set in init()
+     */
+    private static SharedPreferencesManager sharedPreferencesManager;
+
+    /**
+     * On-disk HTTP response cache, created in init()
+     */
+    private static Cache httpCache;
+
+    /**
+     * The base client that all other clients derive from
+     */
+    private static OkHttpClient baseClient;
+
+    /**
+     * Bare client used to pre-connect to the API, created in warmUp()
+     */
+    private static OkHttpClient warmUpClient;
+
+    /**
+     * The session retrofit interface, shared app-wide. Attaches the current token (if any)
+     */
+    private static volatile RetrofitInterface sessionInterface;
+
+    /**
+     * How often (in seconds) the booking event stream pings the API to detect dead connections
+     */
+    private static final long EVENT_STREAM_PING_INTERVAL = 30;
+
+    /**
+     * The booking event stream of the session, created in init()
+     */
+    private static volatile BookingEventStream bookingEventStream;
+
+    /**
+     * Initialize the shared session interface, must be called once when the app starts
+     * @param context
+     */
+    public static synchronized void init(Context context){
+        if(sessionInterface == null){
+            // Create the disk cache before the base client is built so every client shares it
+            if(httpCache == null){
+                httpCache = new Cache(new File(context.getCacheDir(), HTTP_CACHE_DIRECTORY), HTTP_CACHE_SIZE);
+            }
+
+            sharedPreferencesManager = SharedPreferencesManager.getInstance(context.getApplicationContext());
+
+            // Addresses resolved on one network may be wrong (or unreachable) on the next
+            ConnectivityManager connectivityManager =
+                    (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            NetworkRequest networkRequest = new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build();
+
+            connectivityManager.registerNetworkCallback(networkRequest, new ConnectivityManager.NetworkCallback(){
+                @Override
+                public void onAvailable(Network network){
+                    dns.clear();
+                }
+
+                @Override
+                public void onLost(Network network){
+                    dns.clear();
+                }
+            });
+
+            OkHttpClient client = getBaseClient().newBuilder()
+                    .addInterceptor(new AuthInterceptor(sharedPreferencesManager))
+                    .build();
+
+            sessionInterface = createInterface(client);
+
+            // The event stream is a long-lived socket, so it must not time out between events
+            bookingEventStream = new BookingEventStream(client.newBuilder()
+                    .readTimeout(0, TimeUnit.MILLISECONDS)
+                    .pingInterval(EVENT_STREAM_PING_INTERVAL, TimeUnit.SECONDS)
+                    .build());
+        }
+    }
+
+    /**
+     * Default getRetrofit() method returns the shared session interface. The Bearer token is
+     * read from the shared preferences on each request, so the same interface is used before and
+     * after login / logout.
+     * @return RetrofitInterface
      */
     public static RetrofitInterface getRetrofit(){
+        RetrofitInterface retrofitInterface = sessionInterface;
+        if(retrofitInterface == null){
+            throw new IllegalStateException("NetworkUtil.init() must be called before getRetrofit()");
+        }
 
-        // Create Rx Adapter
-        RxJavaCallAdapterFactory rxAdapter = RxJavaCallAdapterFactory.createWithScheduler(Schedulers.io());
+        return retrofitInterface;
+    }
 
-        // Build and return the retrofit interface
-        // Base URL: This is the base url of the API likely <something>:3000/api/v1
-        // Call adapter factory: This is the adapter factory we defined above
-        // Converter Factory: This is the converter factory to allow Java objects to be serialized to
-        // json for the API interaction
-        return new Retrofit.Builder()
-                .baseUrl(Constants.BASE_URL)
-                .addCallAdapterFactory(rxAdapter)
-                .addConverterFactory(GsonConverterFactory.create())
-                .build().create(RetrofitInterface.class);
+    /**
+     * Replace the session interface, e.g. with one pointed at a local test server
+     * @param retrofitInterface
+     */
+    @VisibleForTesting
+    public static void setRetrofit(RetrofitInterface retrofitInterface){
+        sessionInterface = retrofitInterface;
+    }
+
+    /**
+     * Get the stream of booking events pushed by the API for the session's user
+     * @return
+     */
+    public static BookingEventStream getBookingEventStream(){
+        BookingEventStream stream = bookingEventStream;
+        if(stream == null){
+            throw new IllegalStateException("NetworkUtil.init() must be called before getBookingEventStream()");
+        }
+
+        return stream;
     }
 
     /**
      * getRetrofit() method for sending authentication requests. Combine credentials with ":" between
-     * them, then encode in Base64 and send as header in API request
+     * them, then encode in Base64 and send as header in API request.
+     *
+     * The login interface is not cached so that credentials are not kept in memory, but it is
+     * derived from the shared client so it still uses the shared connection pool and dispatcher.
      * @param  - User's provided email in plaintext
      * @param password - User's provided password in plaintext
      * @return
@@ -69,8 +273,8 @@ public class NetworkUtil {
         // Encode using Basic64
         String basicCredential = "Basic " + Base64.encodeToString(credentials.getBytes(), Base64.NO_WRAP);
 
-        // Create a httpClient builder
-        OkHttpClient.Builder httpClient = new OkHttpClient.Builder();
+        // Derive a client from the shared one (shares pool + dispatcher)
+        OkHttpClient.Builder httpClient = getBaseClient().newBuilder();
 
         // Add an interceptor that will monitor and (if needed) retry the API call(s)
         httpClient.addInterceptor(chain -> {
@@ -85,68 +289,191 @@ public class NetworkUtil {
             return chain.proceed(builder.build());
         });
 
-        // Create rxAdapter
-        RxJavaCallAdapterFactory rxAdapter = RxJavaCallAdapterFactory.createWithScheduler(Schedulers.io());
+        return createInterface(httpClient.build());
+    }
 
-        // Return Retrofit.Builder
-        return new Retrofit.Builder()
-                .baseUrl(Constants.BASE_URL)
-                .client(httpClient.build())
-                .addCallAdapterFactory(rxAdapter)
-                .addConverterFactory(GsonConverterFactory.create())
-                .build().create(RetrofitInterface.class);
+    /**
+     * Resolve and connect to the API host ahead of the first real request (e.g. on app start
+     * and when the login screen is shown), leaving the connection idle in the shared pool.
+     * Does nothing if an idle connection is already pooled or a warm-up is in flight
+     */
+    public static void warmUp(){
+        if(connectionPool.idleConnectionCount() > 0 || !warmingUp.compareAndSet(false, true)){
+            return;
+        }
+
+        // HEAD the base url, the response itself is not needed
+        Request request = new Request.Builder()
+                .url(HttpUrl.parse(Constants.BASE_URL))
+                .head()
+                .build();
+
+        getWarmUpClient().newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                warmingUp.set(false);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                // Closing the body releases the connection back into the pool
+                response.body().close();
+                warmingUp.set(false);
+            }
+        });
     }
 
     /**
-     * getRetrofit() method for sending access token as Authentication header for API requests.
-     * @param token - The access token
-     * @param customGsonConverter - Boolean value to decide if custom GSON Converter should be used
+     * Share a request with any identical request already in flight in the current session.
+     * The key is scoped to the session's token so requests are never shared between users
+     * @param key - Identifies the endpoint and its parameters
+     * @param request - Creates the request if no identical one is in flight
+     * @param <T>
      * @return
      */
-    public static RetrofitInterface getRetrofit(String token, boolean customGsonConverter){
+    public static <T> Observable<T> coalesce(String key, Func0<Observable<T>> request){
+        String token = sharedPreferencesManager != null ? sharedPreferencesManager.getCachedToken() : null;
+        return requestCoalescer.coalesce(token + "|" + key, request);
+    }
 
-        Converter.Factory converterFactory;
+    /**
+     * Get the batcher that fetches bookings requested at the same time in one request
+     * @return
+     */
+    public static BookingBatcher getBookingBatcher(){
+        return bookingBatcher;
+    }
 
-        OkHttpClient.Builder httpClient = new OkHttpClient.Builder();
+    /**
+     * Get the connection reuse counters of the shared client
+     * @return
+     */
+    public static ConnectionStats getConnectionStats(){
+        return connectionStats;
+    }
 
-        // Create HTTP interceptor again to attach token to request header
-        httpClient.addInterceptor(chain -> {
+    /**
+     * Get the circuit breaker of the shared client, e.g. to read its trip count
+     * @return
+     */
+    public static CircuitBreaker getCircuitBreaker(){
+        return circuitBreaker;
+    }
 
-            Request original = chain.request();
+    /**
+     * Get the hit / miss / revalidation counters of the HTTP cache
+     * @return
+     */
+    public static CacheStats getCacheStats(){
+        return cacheStats;
+    }
 
-            Request.Builder builder = original.newBuilder()
-                    .addHeader("Authorization", "Bearer " + token)
-                    .method(original.method(), original.body());
+    /**
+     * Get the time-to-first-byte of requests sent on cold vs pre-warmed connections
+     * @return
+     */
+    public static TtfbStats getTtfbStats(){
+        return ttfbStats;
+    }
 
-            return chain.proceed(builder.build());
-        });
+    /**
+     * Get the per-endpoint latency histograms of each phase of a call
+     * @return
+     */
+    public static NetworkTimings getNetworkTimings(){
+        return networkTimings;
+    }
 
-        // Load the correct converter
-        if(customGsonConverter){
-            converterFactory = createBookingsGsonConverter();
-        }else{
-            converterFactory = GsonConverterFactory.create();
+    /**
+     * Get the wire vs decoded payload sizes of each endpoint. Compression is negotiated
+     * by OkHttp, which requests gzip and decodes it transparently
+     * @return
+     */
+    public static PayloadStats getPayloadStats(){
+        return payloadStats;
+    }
+
+    /**
+     * Remove every cached response, e.g. when the user logs out
+     */
+    public static synchronized void evictCache(){
+        if(httpCache != null){
+            try{
+                httpCache.evictAll();
+            }catch(IOException e){
+                // The cache directory will be overwritten as responses are re-cached
+            }
         }
+    }
 
-        RxJavaCallAdapterFactory rxAdapter = RxJavaCallAdapterFactory.createWithScheduler(Schedulers.io());
+    /**
+     * Lazily build the base client, which owns the shared connection pool and dispatcher.
+     * HTTP/2 is preferred (one multiplexed connection for concurrent requests) and negotiated
+     * through ALPN, so it is only used when the API is served over TLS. Every client derives
+     * from this one and so shares its SSL socket factory, letting TLS sessions be resumed
+     * @return
+     */
+    private static synchronized OkHttpClient getBaseClient(){
+        if(baseClient == null){
+            baseClient = new OkHttpClient.Builder()
+                    .connectionPool(connectionPool)
+                    .dispatcher(dispatcher)
+                    .dns(dns)
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .eventListenerFactory(networkTimings)
+                    .cache(httpCache)
+                    .addInterceptor(circuitBreaker)
+                    .addInterceptor(cacheStats)
+                    .addInterceptor(ttfbStats)
+                    .addInterceptor(payloadStats.decodedBytesInterceptor())
+                    .addNetworkInterceptor(cacheFreshness)
+                    .addNetworkInterceptor(connectionStats)
+                    .addNetworkInterceptor(payloadStats.wireBytesInterceptor())
+                    .build();
+        }
 
-        return new Retrofit.Builder()
-                .baseUrl(Constants.BASE_URL)
-                .client(httpClient.build())
-                .addCallAdapterFactory(rxAdapter)
-                .addConverterFactory(converterFactory)
-                .build().create(RetrofitInterface.class);
+        return baseClient;
+    }
+
+    /**
+     * Lazily build the warm-up client. It has the same address settings as the base client (so
+     * its connections can be reused by it) but no interceptors, cache or event listener, so
+     * warm-ups are not counted in any stats
+     * @return
+     */
+    private static synchronized OkHttpClient getWarmUpClient(){
+        if(warmUpClient == null){
+            OkHttpClient.Builder builder = getBaseClient().newBuilder()
+                    .cache(null)
+                    .eventListener(EventListener.NONE);
+            builder.interceptors().clear();
+            builder.networkInterceptors().clear();
+            warmUpClient = builder.build();
+        }
+
+        return warmUpClient;
     }
 
     /**
-     * Create a custom GSON Converter specifically for bookings
-     * (due to the dynamic nature of JSON fields)
+     * Build a retrofit interface on top of the given client
+     * @param client
      * @return
      */
-    private static Converter.Factory createBookingsGsonConverter(){
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.registerTypeAdapter(Booking.class, new BookingDeserializer());
-        Gson gson = gsonBuilder.create();
-        return  GsonConverterFactory.create(gson);
+    private static RetrofitInterface createInterface(OkHttpClient client){
+
+        // Create Rx Adapter
+        RxJavaCallAdapterFactory rxAdapter = RxJavaCallAdapterFactory.createWithScheduler(Schedulers.io());
+
+        // Build and return the retrofit interface
+        // Base URL: This is the base url of the API likely <something>:3000/api/v1
+        // Call adapter factory: This is the adapter factory we defined above
+        // Converter Factory: This is the converter factory to allow Java objects to be serialized to
+        // json for the API interaction (using the app's shared Gson instance)
+        return new Retrofit.Builder()
+                .baseUrl(Constants.BASE_URL)
+                .client(client)
+                .addCallAdapterFactory(rxAdapter)
+                .addConverterFactory(GsonConverterFactory.create(GsonUtil.getGson()))
+                .build().create(RetrofitInterface.class);
     }
 }
@@ -0,0 +1,658 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import retrofit2.adapter.rxjava.HttpException;
+import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.model.Response;
+import xyz.rhysevans.taxe.util.GsonUtil;
+
+/**
+ * OfflineWriteQueue.java
+ *
+ * Durable queue of booking writes (creations, status changes, notes) that could not be sent
+ * because the device was offline. Writes are replayed in order once a network is available.
+ *
+ * The queue is stored as an append-only journal, one json record per line: a write record when
+ * a write is queued and a done record once it has been sent (or permanently rejected). Every
+ * record is fsynced before returning, and a record torn by a crash is skipped when the journal is
+ * read back. The journal is compacted (rewritten with only the pending writes, then renamed over
+ * the old one) once enough done records build up.
+ *
+ * Consecutive edits of the same booking that don't add a note are merged and sent as one request.
+ *
+ * Creations and edits that add a note are not idempotent, so they are only sent again if the
+ * last attempt never reached the API (see isNeverSent()). If it may have reached the API (e.g.
+ * a read timeout or a server error) the write is dropped rather than risk applying it twice,
+ * and the OnWriteDroppedListeners are told so the user can check it.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class OfflineWriteQueue {
+
+    private static final String TAG = OfflineWriteQueue.class.getSimpleName();
+
+    /**
+     * Name of the journal file, inside the app's files dir
+     */
+    private static final String JOURNAL_FILE = "offline_writes.journal";
+
+    /**
+     * Number of done records after which the journal is compacted
+     */
+    private static final int COMPACTION_THRESHOLD = 64;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String TYPE_CREATE_BOOKING = "createBooking";
+    private static final String TYPE_EDIT_BOOKING = "editBooking";
+
+    private static OfflineWriteQueue INSTANCE = null;
+
+    private final File journal;
+    private final Gson gson = GsonUtil.getGson();
+
+    /**
+     * Writes that have not been sent yet, in the order they were queued (guarded by this)
+     */
+    private final Map<Long, Write> pending = new LinkedHashMap<>();
+    private long nextSeq = 1;
+    private int doneRecords;
+
+    /**
+     * Replays run one at a time, on their own thread, so writes are always sent in order
+     */
+    private final ExecutorService replayExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean replayScheduled = new AtomicBoolean();
+
+    private final LatencyHistogram replayLatency = new LatencyHistogram();
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final CopyOnWriteArrayList<OnWriteDroppedListener> droppedListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Listener for queued writes that are given up on, so the user can be told
+     */
+    public interface OnWriteDroppedListener {
+
+        /**
+         * Called on the replay thread when a queued write is dropped
+         * @param bookingId - The booking edited, or null if it was a booking creation
+         * @param maybeApplied - True if the API may have applied the write before the request
+         *                     failed, false if the API rejected it
+         */
+        void onWriteDropped(@Nullable String bookingId, boolean maybeApplied);
+    }
+
+    /**
+     * Private constructor to enforce singleton
+     * @param journal
+     */
+    private OfflineWriteQueue(File journal){
+        this.journal = journal;
+    }
+
+    /**
+     * Open a queue on a journal and read back its writes, without replaying them when a
+     * network becomes available, e.g. in tests
+     * @param journal
+     * @return
+     */
+    @VisibleForTesting
+    static OfflineWriteQueue open(File journal){
+        OfflineWriteQueue queue = new OfflineWriteQueue(journal);
+        queue.load();
+        return queue;
+    }
+
+    /**
+     * Initialize the queue, read back any writes left over from a previous run and replay them
+     * whenever a network becomes available. Must be called once when the app starts, after
+     * NetworkUtil.init()
+     * @param context
+     */
+    public static synchronized void init(Context context){
+        if(INSTANCE == null){
+            INSTANCE = new OfflineWriteQueue(new File(context.getFilesDir(), JOURNAL_FILE));
+            INSTANCE.load();
+
+            ConnectivityManager connectivityManager =
+                    (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            NetworkRequest request = new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build();
+
+            connectivityManager.registerNetworkCallback(request, new ConnectivityManager.NetworkCallback(){
+                @Override
+                public void onAvailable(Network network){
+                    INSTANCE.replay();
+                }
+            });
+
+            // Send anything left over in case we are already online
+            INSTANCE.replay();
+        }
+    }
+
+    /**
+     * Returns the instance of the queue
+     * @return
+     */
+    public static OfflineWriteQueue getInstance(){
+        OfflineWriteQueue queue = INSTANCE;
+        if(queue == null){
+            throw new IllegalStateException("OfflineWriteQueue.init() must be called before getInstance()");
+        }
+
+        return queue;
+    }
+
+    /**
+     * Check if an error means the request never reached the API, so it is safe to queue
+     * even a non-idempotent write such as creating a booking
+     * @param error
+     * @return
+     */
+    public static boolean isNeverSent(Throwable error){
+        return error instanceof ConnectException
+                || error instanceof UnknownHostException
+                || error instanceof NoRouteToHostException
+                || error instanceof CircuitOpenException;
+    }
+
+    /**
+     * Queue the creation of a booking
+     * @param booking
+     * @return a queued response to hand back to the caller in place of the API's
+     * @throws IOException - If the write could not be stored
+     */
+    public Response enqueueCreate(Booking booking) throws IOException {
+        return enqueue(TYPE_CREATE_BOOKING, null, booking);
+    }
+
+    /**
+     * Queue an edit of a booking
+     * @param bookingId
+     * @param changes
+     * @return a queued response to hand back to the caller in place of the API's
+     * @throws IOException - If the write could not be stored
+     */
+    public Response enqueueEdit(String bookingId, Booking changes) throws IOException {
+        return enqueue(TYPE_EDIT_BOOKING, bookingId, changes);
+    }
+
+    /**
+     * Check if a booking has queued edits, in which case new edits of it must be queued
+     * behind them rather than sent straight away
+     * @param bookingId
+     * @return
+     */
+    public synchronized boolean hasPendingWrites(String bookingId){
+        for(Write write : pending.values()){
+            if(bookingId.equals(write.bookingId)){
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Send the queued writes in the background, unless a replay is already scheduled
+     */
+    public void replay(){
+        if(replayScheduled.compareAndSet(false, true)){
+            replayExecutor.execute(() -> {
+                replayScheduled.set(false);
+                replayPending();
+            });
+        }
+    }
+
+    /**
+     * Block until every replay scheduled so far has finished, e.g. in tests
+     */
+    @VisibleForTesting
+    void awaitReplay(){
+        try{
+            // Replays run in order, so once this has run every earlier replay has too
+            replayExecutor.submit(() -> {}).get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException e){
+            Log.w(TAG, "Failed to wait for the replay", e);
+        }
+    }
+
+    /**
+     * Register a listener to be notified when a queued write is dropped
+     * @param listener
+     */
+    public void addOnWriteDroppedListener(OnWriteDroppedListener listener){
+        droppedListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Unregister a listener added with addOnWriteDroppedListener()
+     * @param listener
+     */
+    public void removeOnWriteDroppedListener(OnWriteDroppedListener listener){
+        droppedListeners.remove(listener);
+    }
+
+    /**
+     * Discard every queued write, e.g. when the user logs out
+     */
+    public synchronized void clear(){
+        pending.clear();
+        try{
+            compact();
+        }catch(IOException e){
+            Log.w(TAG, "Could not clear the offline write journal", e);
+        }
+    }
+
+    /**
+     * Get the number of writes waiting to be sent
+     * @return
+     */
+    public synchronized int getDepth(){
+        return pending.size();
+    }
+
+    /**
+     * Get the time between writes being queued and being sent
+     * @return
+     */
+    public LatencyHistogram getReplayLatency(){
+        return replayLatency;
+    }
+
+    /**
+     * Get the number of queued writes that have been sent
+     * @return
+     */
+    public long getReplayedCount(){
+        return replayedCount.get();
+    }
+
+    /**
+     * Get the number of queued writes that the API rejected and were discarded
+     * @return
+     */
+    public long getDroppedCount(){
+        return droppedCount.get();
+    }
+
+    /**
+     * Store a write in the journal and add it to the pending writes
+     * @param type
+     * @param bookingId
+     * @param booking
+     * @return
+     * @throws IOException
+     */
+    private Response enqueue(String type, String bookingId, Booking booking) throws IOException {
+        synchronized(this){
+            Write write = new Write(nextSeq++, type, bookingId,
+                    gson.toJsonTree(booking).getAsJsonObject(), System.currentTimeMillis());
+
+            append(write.toJson());
+            pending.put(write.seq, write);
+        }
+
+        // We may have come back online since the request failed
+        replay();
+
+        return new Response(null, true);
+    }
+
+    /**
+     * Send the pending writes in order, stopping at the first one that can't be sent yet
+     */
+    private void replayPending(){
+        List<Write> batch;
+        while(!(batch = nextBatch()).isEmpty()){
+            Write first = batch.get(0);
+
+            try{
+                send(first.type, first.bookingId, merge(batch));
+            }catch(HttpException e){
+                if(e.code() == 401 || (e.code() >= 500 && first.isRepeatable())){
+                    // The session needs renewing or the API is having trouble, try again on the next replay
+                    return;
+                }
+
+                // Either the API will never accept the write (e.g. the booking was cancelled
+                // meanwhile), or it failed after the write may have been applied
+                drop(batch, e.code() >= 500, "failed with " + e.code());
+                continue;
+            }catch(IOException e){
+                if(first.isRepeatable() || isNeverSent(e)){
+                    // Still offline
+                    return;
+                }
+
+                // The request may have reached the API before the connection failed
+                drop(batch, true, "failed with " + e);
+                continue;
+            }
+
+            long now = System.currentTimeMillis();
+            for(Write write : batch){
+                replayLatency.record(now - write.queuedAt, TimeUnit.MILLISECONDS);
+            }
+            replayedCount.addAndGet(batch.size());
+            markDone(batch);
+        }
+    }
+
+    /**
+     * Give up on a batch of writes and tell the listeners
+     * @param batch
+     * @param maybeApplied - If the API may have applied the writes
+     * @param reason - Logged along with the writes' type
+     */
+    private void drop(List<Write> batch, boolean maybeApplied, String reason){
+        Write first = batch.get(0);
+        Log.w(TAG, "Dropping queued " + first.type + " " + reason);
+        droppedCount.addAndGet(batch.size());
+        markDone(batch);
+
+        for(OnWriteDroppedListener listener : droppedListeners){
+            listener.onWriteDropped(first.bookingId, maybeApplied);
+        }
+    }
+
+    /**
+     * Send a single write, blocking until the API responds
+     * @param type
+     * @param bookingId
+     * @param body
+     * @throws IOException - If the API could not be reached
+     * @throws HttpException - If the API responded with an error
+     */
+    private void send(String type, String bookingId, JsonObject body) throws IOException, HttpException {
+        RetrofitInterface retrofitInterface = NetworkUtil.getRetrofit();
+
+        try{
+            if(TYPE_CREATE_BOOKING.equals(type)){
+                retrofitInterface.createBooking(body).toBlocking().first();
+            }else{
+                retrofitInterface.editBooking(bookingId, body).toBlocking().first();
+            }
+        }catch(RuntimeException e){
+            // Checked exceptions are wrapped by toBlocking()
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }
+            if(e.getCause() instanceof HttpException){
+                throw (HttpException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Get the next write to send, along with any following edits it can be merged with
+     * @return
+     */
+    private synchronized List<Write> nextBatch(){
+        List<Write> batch = new ArrayList<>();
+
+        for(Write write : pending.values()){
+            if(!batch.isEmpty() && !canMerge(batch.get(0), write)){
+                break;
+            }
+
+            batch.add(write);
+        }
+
+        return batch;
+    }
+
+    /**
+     * Check if two writes can be sent as a single edit
+     * @param first
+     * @param second
+     * @return
+     */
+    private static boolean canMerge(Write first, Write second){
+        return TYPE_EDIT_BOOKING.equals(first.type)
+                && TYPE_EDIT_BOOKING.equals(second.type)
+                && first.bookingId.equals(second.bookingId)
+                && !first.body.has("note")
+                && !second.body.has("note");
+    }
+
+    /**
+     * Merge a batch of edits into one, later edits overwriting the fields of earlier ones
+     * @param batch
+     * @return
+     */
+    private static JsonObject merge(List<Write> batch){
+        if(batch.size() == 1){
+            return batch.get(0).body;
+        }
+
+        JsonObject merged = new JsonObject();
+        for(Write write : batch){
+            for(Map.Entry<String, JsonElement> field : write.body.entrySet()){
+                merged.add(field.getKey(), field.getValue());
+            }
+        }
+
+        return merged;
+    }
+
+    /**
+     * Record that a batch of writes no longer needs sending
+     * @param batch
+     */
+    private synchronized void markDone(List<Write> batch){
+        try{
+            for(Write write : batch){
+                // The queue may have been cleared while the write was being sent
+                if(pending.remove(write.seq) != null){
+                    JsonObject done = new JsonObject();
+                    done.addProperty("done", write.seq);
+                    append(done);
+                    doneRecords++;
+                }
+            }
+
+            if(doneRecords >= COMPACTION_THRESHOLD || (pending.isEmpty() && doneRecords > 0)){
+                compact();
+            }
+        }catch(IOException e){
+            // The writes may be sent again after a restart, they are already out of the queue
+            Log.w(TAG, "Could not update the offline write journal", e);
+        }
+    }
+
+    /**
+     * Read back the pending writes from the journal. If the last record was torn by a crash
+     * the journal is rewritten, as the next record appended would otherwise run on from it
+     * and be lost along with it
+     */
+    private synchronized void load(){
+        if(!journal.exists()){
+            return;
+        }
+
+        boolean torn = false;
+        JsonParser parser = new JsonParser();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), UTF_8))){
+            String line;
+            while((line = reader.readLine()) != null){
+                try{
+                    JsonObject record = parser.parse(line).getAsJsonObject();
+
+                    if(record.has("done")){
+                        pending.remove(record.get("done").getAsLong());
+                        doneRecords++;
+                    }else{
+                        Write write = Write.fromJson(record);
+                        pending.put(write.seq, write);
+                        nextSeq = Math.max(nextSeq, write.seq + 1);
+                    }
+                }catch(JsonParseException | IllegalStateException | NullPointerException e){
+                    // Record torn by a crash while it was being written, it was never acknowledged
+                    torn = true;
+                }
+            }
+        }catch(IOException e){
+            Log.w(TAG, "Could not read the offline write journal", e);
+            return;
+        }
+
+        try{
+            if(torn || !endsWithNewline()){
+                compact();
+            }
+        }catch(IOException e){
+            Log.w(TAG, "Could not repair the offline write journal", e);
+        }
+    }
+
+    /**
+     * Check if the last record in the journal was written in full, up to its line end
+     * @return
+     * @throws IOException
+     */
+    private boolean endsWithNewline() throws IOException {
+        try(RandomAccessFile file = new RandomAccessFile(journal, "r")){
+            if(file.length() == 0){
+                return true;
+            }
+
+            file.seek(file.length() - 1);
+            return file.read() == '\n';
+        }
+    }
+
+    /**
+     * Append a record to the journal and wait for it to reach the disk
+     * @param record
+     * @throws IOException
+     */
+    private void append(JsonObject record) throws IOException {
+        try(FileOutputStream out = new FileOutputStream(journal, true)){
+            out.write((gson.toJson(record) + "\n").getBytes(UTF_8));
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Rewrite the journal with only the pending writes. The new journal is written to a
+     * temporary file and renamed over the old one, so a crash leaves one or the other intact.
+     * Must be called while holding the lock
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+        File compacted = new File(journal.getPath() + ".tmp");
+
+        try(FileOutputStream out = new FileOutputStream(compacted)){
+            for(Write write : pending.values()){
+                out.write((gson.toJson(write.toJson()) + "\n").getBytes(UTF_8));
+            }
+            out.getFD().sync();
+        }
+
+        if(!compacted.renameTo(journal)){
+            throw new IOException("Could not replace " + journal);
+        }
+
+        doneRecords = 0;
+    }
+
+    /**
+     * A single queued write
+     */
+    private static class Write {
+        final long seq;
+        final String type;
+        final String bookingId;
+        final JsonObject body;
+        final long queuedAt;
+
+        Write(long seq, String type, String bookingId, JsonObject body, long queuedAt){
+            this.seq = seq;
+            this.type = type;
+            this.bookingId = bookingId;
+            this.body = body;
+            this.queuedAt = queuedAt;
+        }
+
+        /**
+         * Check if the write can safely be sent again after an attempt that may have reached
+         * the API. Creations and added notes would be applied twice
+         * @return
+         */
+        boolean isRepeatable(){
+            return TYPE_EDIT_BOOKING.equals(type) && !body.has("note");
+        }
+
+        JsonObject toJson(){
+            JsonObject json = new JsonObject();
+            json.addProperty("seq", seq);
+            json.addProperty("type", type);
+            json.addProperty("bookingId", bookingId);
+            json.add("body", body);
+            json.addProperty("queuedAt", queuedAt);
+            return json;
+        }
+
+        static Write fromJson(JsonObject json){
+            JsonElement bookingId = json.get("bookingId");
+            return new Write(json.get("seq").getAsLong(),
+                    json.get("type").getAsString(),
+                    bookingId == null || bookingId.isJsonNull() ? null : bookingId.getAsString(),
+                    json.getAsJsonObject("body"),
+                    json.get("queuedAt").getAsLong());
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * PayloadStats.java
+ *
+ * Records, per endpoint, how many response body bytes were received over the wire and how many
+ * bytes they decoded to. OkHttp asks for gzip (Accept-Encoding: gzip) and decompresses
+ * transparently, so the network interceptor sees the compressed body and the application
+ * interceptor sees the decoded one. Responses served from the HTTP cache are not counted.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class PayloadStats {
+
+    private final ConcurrentMap<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Get the network interceptor that counts the bytes received over the wire
+     * @return
+     */
+    public Interceptor wireBytesInterceptor(){
+        return chain -> {
+            Response response = chain.proceed(chain.request());
+            EndpointStats stats = getStats(EndpointKey.of(chain.request()));
+
+            stats.responseCount.incrementAndGet();
+            if(response.header("Content-Encoding") != null){
+                stats.compressedCount.incrementAndGet();
+            }
+
+            return countBody(response, stats.wireBytes);
+        };
+    }
+
+    /**
+     * Get the application interceptor that counts the decoded bytes
+     * @return
+     */
+    public Interceptor decodedBytesInterceptor(){
+        return chain -> {
+            Response response = chain.proceed(chain.request());
+
+            // Only count bodies that were actually downloaded
+            Response networkResponse = response.networkResponse();
+            if(networkResponse == null || networkResponse.code() == 304){
+                return response;
+            }
+
+            return countBody(response, getStats(EndpointKey.of(chain.request())).decodedBytes);
+        };
+    }
+
+    /**
+     * Get the payload stats of a single endpoint
+     * @param endpoint - e.g. "GET users/{id}/bookings"
+     * @return
+     */
+    public EndpointStats getStats(String endpoint){
+        EndpointStats stats = endpoints.get(endpoint);
+        if(stats == null){
+            EndpointStats created = new EndpointStats();
+            stats = endpoints.putIfAbsent(endpoint, created);
+            if(stats == null){
+                stats = created;
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * Get the payload stats of every endpoint seen so far
+     * @return
+     */
+    public Map<String, EndpointStats> getAllStats(){
+        return Collections.unmodifiableMap(new HashMap<>(endpoints));
+    }
+
+    /**
+     * Reset all counters
+     */
+    public void reset(){
+        endpoints.clear();
+    }
+
+    /**
+     * Wrap a response's body so the bytes read from it are added to a counter
+     * @param response
+     * @param counter
+     * @return
+     */
+    private static Response countBody(Response response, AtomicLong counter){
+        ResponseBody body = response.body();
+        if(body == null){
+            return response;
+        }
+
+        return response.newBuilder().body(new CountingResponseBody(body, counter)).build();
+    }
+
+    /**
+     * Payload counters of a single endpoint
+     */
+    public static class EndpointStats {
+
+        private final AtomicLong responseCount = new AtomicLong();
+        private final AtomicLong compressedCount = new AtomicLong();
+        private final AtomicLong wireBytes = new AtomicLong();
+        private final AtomicLong decodedBytes = new AtomicLong();
+
+        /**
+         * Get the number of responses received from the network
+         * @return
+         */
+        public long getResponseCount(){
+            return responseCount.get();
+        }
+
+        /**
+         * Get the number of responses that were sent compressed
+         * @return
+         */
+        public long getCompressedCount(){
+            return compressedCount.get();
+        }
+
+        /**
+         * Get the number of body bytes received over the wire
+         * @return
+         */
+        public long getWireBytes(){
+            return wireBytes.get();
+        }
+
+        /**
+         * Get the number of body bytes after decompression
+         * @return
+         */
+        public long getDecodedBytes(){
+            return decodedBytes.get();
+        }
+
+        /**
+         * Get the fraction of bytes saved by compression (0 if nothing was saved)
+         * @return
+         */
+        public double getSavings(){
+            long decoded = decodedBytes.get();
+            return decoded == 0 ? 0 : Math.max(0, 1 - (double) wireBytes.get() / decoded);
+        }
+    }
+
+    /**
+     * Response body that adds every byte read from it to a counter
+     */
+    private static class CountingResponseBody extends ResponseBody {
+
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        /**
+         * Default Constructor
+         * @param delegate
+         * @param counter
+         */
+        CountingResponseBody(ResponseBody delegate, AtomicLong counter){
+            this.delegate = delegate;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if(read > 0){
+                        counter.addAndGet(read);
+                    }
+                    return read;
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
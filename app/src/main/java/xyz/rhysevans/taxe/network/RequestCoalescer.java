@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import rx.Observable;
+import rx.functions.Func0;
+
+/**
+ * RequestCoalescer.java
+ *
+ * Single-flight layer for identical requests: while a request with a given key is in flight,
+ * any other subscriber asking for the same key shares that request's Observable instead of
+ * sending a duplicate. Requests are expected to emit a single value: once it has been emitted,
+ * or the request terminates (or every subscriber unsubscribes), the key is released and the
+ * next subscriber triggers a fresh request. A subscriber that joins just as the value is
+ * emitted still receives it.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class RequestCoalescer {
+
+    /**
+     * The shared observables of all in-flight requests, by key
+     */
+    private final ConcurrentMap<String, Observable<?>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Return an Observable that shares the in-flight request for the key, or
+     * starts a new one (created by the factory) if none is in flight.
+     * The lookup is deferred until subscription.
+     * @param key - Identifies the request (endpoint, params and session)
+     * @param factory - Creates the request if none is in flight
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Observable<T> coalesce(String key, Func0<Observable<T>> factory){
+        return Observable.defer(() -> {
+            Observable<T> shared = (Observable<T>) inFlight.get(key);
+
+            if(shared == null){
+                // The release actions need a reference to the observable they belong to,
+                // so that they never remove a newer request stored under the same key
+                final Observable<?>[] self = new Observable<?>[1];
+                Observable<T> created = factory.call()
+                        .doOnNext(value -> inFlight.remove(key, self[0]))
+                        .doOnTerminate(() -> inFlight.remove(key, self[0]))
+                        .doOnUnsubscribe(() -> inFlight.remove(key, self[0]))
+                        .replay(1)
+                        .refCount();
+                self[0] = created;
+
+                Observable<T> existing = (Observable<T>) inFlight.putIfAbsent(key, created);
+                shared = existing != null ? existing : created;
+            }
+
+            return shared;
+        });
+    }
+
+    /**
+     * Get the number of requests currently in flight
+     * @return
+     */
+    public int getInFlightCount(){
+        return inFlight.size();
+    }
+}
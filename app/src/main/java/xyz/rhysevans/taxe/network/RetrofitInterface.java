@@ -6,10 +6,13 @@
 package xyz.rhysevans.taxe.network;
 
 
+import com.google.gson.JsonObject;
+
 import java.util.ArrayList;
 
 import retrofit2.http.Body;
 import retrofit2.http.GET;
+import retrofit2.http.Headers;
 import retrofit2.http.PATCH;
 import retrofit2.http.POST;
 import retrofit2.http.PUT;
@@ -17,6 +20,7 @@ import retrofit2.http.Path;
 import retrofit2.http.Query;
 import rx.Observable;
 import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.model.Bootstrap;
 import xyz.rhysevans.taxe.model.LoginResponse;
 import xyz.rhysevans.taxe.model.Response;
 import xyz.rhysevans.taxe.model.User;
@@ -28,6 +32,7 @@ import xyz.rhysevans.taxe.model.User;
  * Declare all of the API's endpoints that we will use. Each method will return an Observable
  * that will be subscribed to. This class will provide a layer of abstraction between
  * the client and the API requests, with friendlier method names e.g. register.
+ * GET endpoints declare their caching behaviour using the headers in CachePolicy.
  * @author Rhys Evans
  * @version 0.1
  */
@@ -42,6 +47,7 @@ public interface RetrofitInterface {
      * @param id
      * @return
      */
+    @Headers(CachePolicy.SHORT_LIVED)
     @GET("users/{id}")
     Observable<User> getUser(@Path("id") String id);
 
@@ -76,14 +82,41 @@ public interface RetrofitInterface {
      * @param id
      * @return
      */
+    @Headers(CachePolicy.REVALIDATE)
     @GET("users/{id}/bookings")
     Observable<ArrayList<Booking>> getUserBookings(@Path("id") String id, @Query("limit") int limit);
 
+    /**
+     * Override getUserBookings method to request the bookings fully populated
+     * (customer and driver as objects, as returned by getBooking) so that no follow-up
+     * getBooking request is needed
+     * @param id
+     * @param limit
+     * @param populate
+     * @return
+     */
+    @Headers(CachePolicy.REVALIDATE)
+    @GET("users/{id}/bookings")
+    Observable<ArrayList<Booking>> getUserBookings(@Path("id") String id, @Query("limit") int limit, @Query("populate") boolean populate);
+
+    /**
+     * Override getUserBookings method to request a single page of bookings (newest first),
+     * starting after the booking with the given ID (null for the first page)
+     * @param id
+     * @param limit
+     * @param before
+     * @return
+     */
+    @Headers(CachePolicy.REVALIDATE)
+    @GET("users/{id}/bookings")
+    Observable<ArrayList<Booking>> getUserBookings(@Path("id") String id, @Query("limit") int limit, @Query("before") String before);
+
     /**
      * Override getUserBookings method to support plain
      * @param id
      * @return
      */
+    @Headers(CachePolicy.REVALIDATE)
     @GET("users/{id}/bookings")
     Observable<ArrayList<Booking>> getUserBookings(@Path("id") String id);
 
@@ -93,9 +126,31 @@ public interface RetrofitInterface {
      * @param active
      * @return
      */
+    @Headers(CachePolicy.REVALIDATE)
     @GET("users/{id}/bookings")
     Observable<ArrayList<Booking>> getUserBookings(@Path("id") String id, @Query("active") boolean active);
 
+    /**
+     * Get only the user's bookings created, modified or deleted (returned with deleted set)
+     * at or after the given time, used to sync changes to bookings already downloaded
+     * @param id
+     * @param updatedSince - ISO-8601 timestamp
+     * @return
+     */
+    @Headers(CachePolicy.REVALIDATE)
+    @GET("users/{id}/bookings")
+    Observable<ArrayList<Booking>> getUserBookingsUpdatedSince(@Path("id") String id, @Query("updated_since") String updatedSince);
+
+    /**
+     * Get the user, their most recent booking and their active bookings in one request
+     * (see SessionBootstrap)
+     * @param id
+     * @return
+     */
+    @Headers(CachePolicy.REVALIDATE)
+    @GET("users/{id}/bootstrap")
+    Observable<Bootstrap> getBootstrap(@Path("id") String id);
+
     /////////////////////
     //     BOOKINGS    //
     ////////////////////
@@ -105,9 +160,19 @@ public interface RetrofitInterface {
      * @param id
      * @return
      */
+    @Headers(CachePolicy.REVALIDATE)
     @GET("bookings/{id}")
     Observable<Booking> getBooking(@Path("id") String id);
 
+    /**
+     * Get several bookings by their IDs in one request (see BookingBatcher)
+     * @param ids - Comma separated booking IDs
+     * @return
+     */
+    @Headers(CachePolicy.REVALIDATE)
+    @GET("bookings")
+    Observable<ArrayList<Booking>> getBookings(@Query("ids") String ids);
+
     /**
      * Create a new booking with a booking model as the request body
      * @param booking
@@ -116,6 +181,14 @@ public interface RetrofitInterface {
     @POST("bookings")
     Observable<Response> createBooking(@Body Booking booking);
 
+    /**
+     * Create a new booking from its raw json, used to replay queued offline writes
+     * @param booking
+     * @return
+     */
+    @POST("bookings")
+    Observable<Response> createBooking(@Body JsonObject booking);
+
     /**
      * Edit a current booking
      * @param id
@@ -125,6 +198,15 @@ public interface RetrofitInterface {
     @PATCH("bookings/{id}")
     Observable<Response> editBooking(@Path("id") String id, @Body Booking booking);
 
+    /**
+     * Edit a current booking with the raw json of the changes, used to replay queued offline writes
+     * @param id
+     * @param changes
+     * @return
+     */
+    @PATCH("bookings/{id}")
+    Observable<Response> editBooking(@Path("id") String id, @Body JsonObject changes);
+
     /**
      * Release a booking back into the collective pool
      * @param id
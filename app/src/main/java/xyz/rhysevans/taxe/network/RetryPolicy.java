@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import retrofit2.adapter.rxjava.HttpException;
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * RetryPolicy.java
+ *
+ * Retries requests that failed for a transient reason (a network error, or the server / a proxy
+ * reporting 408, 502, 503 or 504) with capped exponential backoff and full jitter, so clients
+ * on a flaky link don't all retry at the same moment. Requests rejected by the CircuitBreaker
+ * are not retried.
+ *
+ * Must only be applied to idempotent requests (GETs, releasing a booking, editing a booking's
+ * status), never to requests that create something such as createBooking.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class RetryPolicy {
+
+    /**
+     * Default number of retries after the first attempt
+     */
+    private static final int DEFAULT_MAX_RETRIES = 3;
+
+    /**
+     * Default delay (in milliseconds) before the first retry, doubled for each further retry
+     */
+    private static final long DEFAULT_BASE_DELAY = 500;
+
+    /**
+     * Default maximum delay (in milliseconds) between two attempts
+     */
+    private static final long DEFAULT_MAX_DELAY = 8000;
+
+    private static final RetryPolicy defaultPolicy = new RetryPolicy(DEFAULT_MAX_RETRIES,
+            DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, Schedulers.computation(), new Random());
+
+    private final int maxRetries;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final Scheduler scheduler;
+    private final Random random;
+
+    /**
+     * Constructor
+     * @param maxRetries - Number of retries after the first attempt
+     * @param baseDelay - Delay (in milliseconds) before the first retry
+     * @param maxDelay - Maximum delay (in milliseconds) between two attempts
+     * @param scheduler - Scheduler the delays are timed on (e.g. a TestScheduler in tests)
+     * @param random - Source of the jitter
+     */
+    public RetryPolicy(int maxRetries, long baseDelay, long maxDelay, Scheduler scheduler, Random random){
+        this.maxRetries = maxRetries;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.scheduler = scheduler;
+        this.random = random;
+    }
+
+    /**
+     * Get the app-wide retry policy
+     * @return
+     */
+    public static RetryPolicy getDefault(){
+        return defaultPolicy;
+    }
+
+    /**
+     * Get a transformer that re-subscribes to the request when it fails with a retryable error.
+     * Use with Observable.compose()
+     * @param <T>
+     * @return
+     */
+    public <T> Observable.Transformer<T, T> retry(){
+        return request -> request.retryWhen(errors -> {
+            // One counter per subscription
+            AtomicInteger attempt = new AtomicInteger();
+
+            return errors.flatMap(error -> {
+                int retry = attempt.getAndIncrement();
+                if(retry >= maxRetries || !isRetryable(error)){
+                    return Observable.<Long>error(error);
+                }
+
+                return Observable.timer(getDelay(retry), TimeUnit.MILLISECONDS, scheduler);
+            });
+        });
+    }
+
+    /**
+     * Get the delay (in milliseconds) before a retry: a random value between 0 and the
+     * exponential backoff for that retry, capped at the maximum delay
+     * @param retry - 0 for the first retry
+     * @return
+     */
+    long getDelay(int retry){
+        // Cap the shift so the backoff can't overflow
+        long backoff = Math.min(maxDelay, baseDelay << Math.min(retry, 30));
+        return (long) (random.nextDouble() * (backoff + 1));
+    }
+
+    /**
+     * Check if an error is transient and the request can be safely sent again
+     * @param error
+     * @return
+     */
+    public static boolean isRetryable(Throwable error){
+        if(error instanceof HttpException){
+            int code = ((HttpException) error).code();
+            return code == 408 || code == 502 || code == 503 || code == 504;
+        }
+
+        return error instanceof IOException && !(error instanceof CircuitOpenException);
+    }
+}
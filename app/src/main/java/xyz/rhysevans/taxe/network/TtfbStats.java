@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * TtfbStats.java
+ *
+ * Application interceptor that measures time-to-first-byte (from the request being started
+ * until the response headers arrive, including any DNS / TCP / TLS setup). Requests are split
+ * into cold ones, started while the shared pool had no idle connection, and warm ones, so the
+ * saving from pre-connecting (see NetworkUtil.warmUp()) can be compared.
+ * Responses served entirely from the HTTP cache are not counted.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class TtfbStats implements Interceptor {
+
+    private final ConnectionPool connectionPool;
+
+    private final AtomicLong coldCount = new AtomicLong();
+    private final AtomicLong coldTotalNanos = new AtomicLong();
+    private final AtomicLong warmCount = new AtomicLong();
+    private final AtomicLong warmTotalNanos = new AtomicLong();
+
+    /**
+     * TTFB of the first request of the process, -1 until it completes
+     */
+    private final AtomicLong firstRequestNanos = new AtomicLong(-1);
+    private volatile boolean firstRequestWarm;
+
+    /**
+     * Constructor
+     * @param connectionPool - The pool the measured client takes its connections from
+     */
+    public TtfbStats(ConnectionPool connectionPool){
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Time the request until its response headers are received
+     * @param chain
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        boolean warm = connectionPool.idleConnectionCount() > 0;
+        long start = System.nanoTime();
+
+        Response response = chain.proceed(chain.request());
+
+        if(response.networkResponse() != null){
+            long elapsed = System.nanoTime() - start;
+
+            if(warm){
+                warmCount.incrementAndGet();
+                warmTotalNanos.addAndGet(elapsed);
+            }else{
+                coldCount.incrementAndGet();
+                coldTotalNanos.addAndGet(elapsed);
+            }
+
+            if(firstRequestNanos.compareAndSet(-1, elapsed)){
+                firstRequestWarm = warm;
+            }
+        }
+
+        return response;
+    }
+
+    /**
+     * Get the TTFB (in milliseconds) of the first request made by the app, or -1 if none has completed
+     * @return
+     */
+    public long getFirstRequestMillis(){
+        long nanos = firstRequestNanos.get();
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Check if the first request found a pre-warmed connection
+     * @return
+     */
+    public boolean wasFirstRequestWarm(){
+        return firstRequestWarm;
+    }
+
+    /**
+     * Get the average TTFB (in milliseconds) of requests that had to open a connection
+     * @return
+     */
+    public double getAverageColdMillis(){
+        return average(coldTotalNanos.get(), coldCount.get());
+    }
+
+    /**
+     * Get the average TTFB (in milliseconds) of requests that found an idle pooled connection
+     * @return
+     */
+    public double getAverageWarmMillis(){
+        return average(warmTotalNanos.get(), warmCount.get());
+    }
+
+    /**
+     * Get the number of cold requests
+     * @return
+     */
+    public long getColdCount(){
+        return coldCount.get();
+    }
+
+    /**
+     * Get the number of warm requests
+     * @return
+     */
+    public long getWarmCount(){
+        return warmCount.get();
+    }
+
+    /**
+     * Reset all counters
+     */
+    public void reset(){
+        coldCount.set(0);
+        coldTotalNanos.set(0);
+        warmCount.set(0);
+        warmTotalNanos.set(0);
+        firstRequestNanos.set(-1);
+        firstRequestWarm = false;
+    }
+
+    /**
+     * Average of a nanosecond total, in milliseconds
+     * @param totalNanos
+     * @param count
+     * @return
+     */
+    private static double average(long totalNanos, long count){
+        return count == 0 ? 0 : totalNanos / (count * 1e6);
+    }
+}
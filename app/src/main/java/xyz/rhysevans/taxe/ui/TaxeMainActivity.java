@@ -13,9 +13,15 @@ import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentTransaction;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.MenuItem;
+import android.widget.Toast;
 
+import rx.subscriptions.CompositeSubscription;
 import xyz.rhysevans.taxe.R;
+import xyz.rhysevans.taxe.model.Bootstrap;
+import xyz.rhysevans.taxe.model.User;
+import xyz.rhysevans.taxe.network.OfflineWriteQueue;
 import xyz.rhysevans.taxe.ui.account.AccountOverviewFragment;
 import xyz.rhysevans.taxe.ui.authentication.AuthenticationActivity;
 import xyz.rhysevans.taxe.ui.booking.BookingListFragment;
@@ -23,6 +29,8 @@ import xyz.rhysevans.taxe.ui.booking.BookingOverviewFragment;
 import xyz.rhysevans.taxe.ui.booking.CreateBookingActivity;
 import xyz.rhysevans.taxe.ui.home.HomeFragment;
 import xyz.rhysevans.taxe.util.SharedPreferencesManager;
+import xyz.rhysevans.taxe.util.StartupTimer;
+import xyz.rhysevans.taxe.viewmodel.UserViewModel;
 
 /**
  * TaxeMainActivity.java
@@ -33,14 +41,35 @@ import xyz.rhysevans.taxe.util.SharedPreferencesManager;
  */
 public class TaxeMainActivity extends AppCompatActivity implements NavigationView.OnNavigationItemSelectedListener {
 
+    public static final String TAG = TaxeMainActivity.class.getSimpleName();
+
     private final String PAGE_TITLE_KEY = "PAGE_TITLE_KEY";
     public static final int CREATE_BOOKING_REQUEST_CODE = 2;
 
     private SharedPreferencesManager sharedPreferencesManager;
+    private CompositeSubscription subscriptions;
+    private UserViewModel userViewModel;
 
     private BottomNavigationView navMenu;
     private int currentPageTitle;
 
+    // The role the nav bar was built for
+    private String navbarRole;
+
+    // Rebuild the nav bar if the saved user's role changes
+    private final SharedPreferencesManager.OnUserChangedListener userChangedListener = user -> {
+        String role = user != null ? user.getRole() : null;
+        if(role != null && !role.equals(navbarRole)){
+            initNavbar();
+        }
+    };
+
+    // Tell the user when a change made while offline couldn't be sent
+    private final OfflineWriteQueue.OnWriteDroppedListener writeDroppedListener = (bookingId, maybeApplied) ->
+            runOnUiThread(() -> Toast.makeText(getApplicationContext(),
+                    maybeApplied ? R.string.offline_write_maybe_applied : R.string.offline_write_rejected,
+                    Toast.LENGTH_LONG).show());
+
 
     /**
      * Initialize the activity, check if user is 'logged in' (token saved in shared prefs).
@@ -50,10 +79,15 @@ public class TaxeMainActivity extends AppCompatActivity implements NavigationVie
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_taxe_main);
+        StartupTimer.onActivityCreated(this);
 
         // Initialize shared preferences manager
         sharedPreferencesManager = SharedPreferencesManager.getInstance(getApplicationContext());
 
+        // Initialize Subscriptions and View Model
+        subscriptions = new CompositeSubscription();
+        userViewModel = new UserViewModel();
+
         // Check if token is saved
         if(!sharedPreferencesManager.isTokenPresent()){
             // If token is not saved, user is not authed and should be sent to login
@@ -66,6 +100,15 @@ public class TaxeMainActivity extends AppCompatActivity implements NavigationVie
         navMenu = findViewById(R.id.navigation_menu);
         initNavbar();
         navMenu.setOnNavigationItemSelectedListener(this::onNavigationItemSelected);
+        sharedPreferencesManager.addOnUserChangedListener(userChangedListener);
+        OfflineWriteQueue.getInstance().addOnWriteDroppedListener(writeDroppedListener);
+
+        // Start loading the session's bootstrap, shared with the fragments, to keep
+        // the nav bar in step with the user's role
+        if(sharedPreferencesManager.isTokenPresent()){
+            subscriptions.add(userViewModel.getBootstrap(sharedPreferencesManager.getUser().getId())
+                    .subscribe(this::handleBootstrapLoad, this::handleBootstrapError));
+        }
 
         // Load the default fragment if opening for first time
         if(savedInstanceState == null){
@@ -89,14 +132,49 @@ public class TaxeMainActivity extends AppCompatActivity implements NavigationVie
         // Clear old menu
         navMenu.getMenu().clear();
 
+        User user = sharedPreferencesManager.getUser();
+        navbarRole = user != null ? user.getRole() : null;
+
         // If the logged in user is a driver, change the menu's XML source
-        if(sharedPreferencesManager.isUserPresent() && sharedPreferencesManager.getUser().getRole().equals("Driver")){
+        if("Driver".equals(navbarRole)){
             navMenu.inflateMenu(R.menu.main_nav_driver);
         }else{
             navMenu.inflateMenu(R.menu.main_nav);
         }
     }
 
+    /**
+     * Handle the session's bootstrap loading, if the user's role differs from
+     * that saved in shared prefs, update it and the nav bar
+     * @param bootstrap
+     */
+    private void handleBootstrapLoad(Bootstrap bootstrap){
+        User user = bootstrap.getUser();
+
+        if(!user.getRole().equals(sharedPreferencesManager.getUser().getRole())){
+            // Update Shared Preferences
+            User updatedUser = sharedPreferencesManager.getUser();
+            updatedUser.setRole(user.getRole());
+
+            // Update user's company
+            if(user.getCompany() != null){
+                updatedUser.setCompany(user.getCompany());
+            }
+
+            // The nav bar is updated by the user changed listener
+            sharedPreferencesManager.putUser(updatedUser);
+        }
+    }
+
+    /**
+     * Handle an error loading the session's bootstrap, the fragments showing it report
+     * the error so just keep the nav bar from the saved role
+     * @param error
+     */
+    private void handleBootstrapError(Throwable error){
+        Log.w(TAG, "Session bootstrap failed to load", error);
+    }
+
     /**
      * Event handler for navigation item selection, in the bottom nav.
      * Change the title on the Action Bar based on the current fragment
@@ -166,7 +244,7 @@ public class TaxeMainActivity extends AppCompatActivity implements NavigationVie
      * the user is a driver or a customer
      */
     private void loadBookingFragment(){
-        if(sharedPreferencesManager.getUser().getRole().equals("Driver")){
+        if("Driver".equals(navbarRole)){
             // Set title
             getSupportActionBar().setTitle(R.string.nav_active_bookings);
             // Create fragment and pass args to it
@@ -208,6 +286,17 @@ public class TaxeMainActivity extends AppCompatActivity implements NavigationVie
         }
     }
 
+    /**
+     * Called just before the activity is destroyed to unsubscribe any async tasks
+     */
+    @Override
+    protected void onDestroy(){
+        subscriptions.unsubscribe();
+        sharedPreferencesManager.removeOnUserChangedListener(userChangedListener);
+        OfflineWriteQueue.getInstance().removeOnWriteDroppedListener(writeDroppedListener);
+        super.onDestroy();
+    }
+
     /**
      * Called to save the state of the activity, just before the activity is destroyed
      * @param outState
@@ -33,6 +33,7 @@ import xyz.rhysevans.taxe.model.User;
 import xyz.rhysevans.taxe.ui.authentication.AuthenticationActivity;
 import xyz.rhysevans.taxe.ui.authentication.LoginFragment;
 import xyz.rhysevans.taxe.util.ErrorHandler;
+import xyz.rhysevans.taxe.util.Session;
 import xyz.rhysevans.taxe.util.SharedPreferencesManager;
 import xyz.rhysevans.taxe.viewmodel.UserViewModel;
 
@@ -221,8 +222,8 @@ public class AccountOverviewFragment extends Fragment implements ListView.OnItem
         builder.setTitle(getString(R.string.logout_confirmation));
         // When users confirms dialog, send them back to login screen
         builder.setPositiveButton(android.R.string.ok, (dialog, which) -> {
-            // Delete all shared prefs
-            sharedPreferencesManager.deleteAll();
+            // Delete the session and everything kept for the user
+            Session.logout(getContext());
 
             // Send user to login screen and show toast messsage
             Toast toast = Toast.makeText(getActivity().getApplicationContext(), getString(R.string.logged_out_successfully), Toast.LENGTH_SHORT);
@@ -268,8 +269,7 @@ public class AccountOverviewFragment extends Fragment implements ListView.OnItem
             }
 
             // Send Request
-            subscriptions.add(userViewModel.resign(sharedPreferencesManager.getToken(),
-                    sharedPreferencesManager.getUser().getCompany(),
+            subscriptions.add(userViewModel.resign(sharedPreferencesManager.getUser().getCompany(),
                     sharedPreferencesManager.getUser().getId())
                     .subscribe(this::handleSuccess, this::handleError));
         });
@@ -297,8 +297,8 @@ public class AccountOverviewFragment extends Fragment implements ListView.OnItem
         // Unlock screen orientation
         getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER);
 
-        // Delete all shared prefs
-        sharedPreferencesManager.deleteAll();
+        // Delete the session and everything kept for the user
+        Session.logout(getContext());
 
         // Send user to login screen and show toast messsage
         Toast toast = Toast.makeText(getActivity().getApplicationContext(), getString(R.string.resigned_successfully), Toast.LENGTH_SHORT);
@@ -142,8 +142,7 @@ public class ChangeNameActivity extends AppCompatActivity {
             updatedUser.setName(newName);
 
             // Send HTTP Request
-            subscriptions.add(userViewmodel.editUser(sharedPreferencesManager.getToken(),
-                    sharedPreferencesManager.getUser().getId(), updatedUser)
+            subscriptions.add(userViewmodel.editUser(sharedPreferencesManager.getUser().getId(), updatedUser)
                     .subscribe(this::handleSuccess, this::handleError));
 
         }else{
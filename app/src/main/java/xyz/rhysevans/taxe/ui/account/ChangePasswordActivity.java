@@ -155,8 +155,7 @@ public class ChangePasswordActivity extends AppCompatActivity {
             User updatedUser = new User();
             updatedUser.setPassword(newPassword);
             updatedUser.setOldPassword(currentPassword);
-            subscriptions.add(userViewModel.editUser(sharedPreferencesManager.getToken(),
-                    sharedPreferencesManager.getUser().getId(), updatedUser)
+            subscriptions.add(userViewModel.editUser(sharedPreferencesManager.getUser().getId(), updatedUser)
                     .subscribe(this::handleSuccess, this::handleError));
         }
 
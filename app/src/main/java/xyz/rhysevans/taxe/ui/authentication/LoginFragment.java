@@ -23,6 +23,7 @@ import rx.subscriptions.CompositeSubscription;
 import xyz.rhysevans.taxe.R;
 import xyz.rhysevans.taxe.model.LoginResponse;
 import xyz.rhysevans.taxe.model.User;
+import xyz.rhysevans.taxe.network.NetworkUtil;
 import xyz.rhysevans.taxe.ui.TaxeMainActivity;
 import xyz.rhysevans.taxe.util.ErrorHandler;
 import xyz.rhysevans.taxe.util.Errors;
@@ -92,6 +93,9 @@ public class LoginFragment extends Fragment {
         // Initialize views
         initViews(view);
 
+        // Re-warm the connection to the API (it may have gone idle) while the user types
+        NetworkUtil.warmUp();
+
         return view;
     }
 
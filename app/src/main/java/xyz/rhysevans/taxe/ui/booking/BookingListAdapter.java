@@ -63,6 +63,25 @@ public class BookingListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHo
         notifyDataSetChanged();
     }
 
+    /**
+     * Append a page of bookings to the end of the list
+     * @param page
+     */
+    public void appendPage(ArrayList<Booking> page){
+        int start = bookings.size();
+        bookings.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+
+    /**
+     * Get the booking at a given position
+     * @param position
+     * @return
+     */
+    public Booking getBooking(int position){
+        return bookings.get(position);
+    }
+
     /**
      * Add a booking to the list
      * @param booking
@@ -10,6 +10,7 @@ import android.content.pm.ActivityInfo;
 import android.content.res.Configuration;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.support.design.widget.Snackbar;
 import android.support.v4.app.Fragment;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.widget.DividerItemDecoration;
@@ -27,6 +28,9 @@ import xyz.rhysevans.taxe.model.Booking;
 import xyz.rhysevans.taxe.ui.authentication.LoginFragment;
 import xyz.rhysevans.taxe.util.ErrorHandler;
 import xyz.rhysevans.taxe.util.SharedPreferencesManager;
+import xyz.rhysevans.taxe.viewmodel.BookingPager;
+import xyz.rhysevans.taxe.viewmodel.BookingPollingScheduler;
+import xyz.rhysevans.taxe.viewmodel.BookingViewModel;
 import xyz.rhysevans.taxe.viewmodel.UserViewModel;
 
 /**
@@ -42,18 +46,29 @@ public class BookingListFragment extends Fragment implements SwipeRefreshLayout.
     public static final String TAG = LoginFragment.class.getSimpleName();
     public static final String ACTIVE_BOOKING_KEY = "ACTIVE_BOOKING_KEY";
 
+    // How close (in rows) to the end of the list the next page of history is requested
+    private static final int NEXT_PAGE_THRESHOLD = 5;
+
     // A flag to determine whether the list should load all bookings
     // or only 'active' bookings
     private boolean activeBookings;
 
-    private ArrayList<Booking> bookings;
-
     private ErrorHandler errorHandler;
     private CompositeSubscription subscriptions;
+    private BookingPollingScheduler pollingScheduler;
     private UserViewModel userViewModel;
+    private BookingViewModel bookingViewModel;
+    private BookingPager bookingPager;
     private SharedPreferencesManager sharedPreferencesManager;
 
     private BookingListAdapter bookingListAdapter;
+    private BookingPrefetcher bookingPrefetcher;
+
+    // The bookings on screen
+    private ArrayList<Booking> shownBookings = new ArrayList<>();
+
+    // Set if the API couldn't be reached while loading and the stored bookings were kept
+    private volatile boolean offline;
 
     private SwipeRefreshLayout swipeRefreshLayout;
     private RecyclerView bookingHistoryList;
@@ -89,8 +104,10 @@ public class BookingListFragment extends Fragment implements SwipeRefreshLayout.
         // Initialize Shared Prefs
         sharedPreferencesManager = SharedPreferencesManager.getInstance(getContext());
 
-        // Initialize View model
+        // Initialize View models and history pager
         userViewModel = new UserViewModel();
+        bookingViewModel = new BookingViewModel();
+        bookingPager = userViewModel.getBookingPager(sharedPreferencesManager.getUser().getId());
 
         // Check if 'activeBookings' flag is present in saved instance state
         if(savedInstanceState != null){
@@ -107,6 +124,13 @@ public class BookingListFragment extends Fragment implements SwipeRefreshLayout.
         // Load the bookings
         loadBookings();
 
+        // Reload the active bookings as soon as the API pushes a change to any of them
+        // (polling for changes while events aren't pushed starts once they are loaded)
+        if(activeBookings){
+            subscriptions.add(bookingViewModel.getBookingEvents()
+                    .subscribe(event -> loadBookings(), this::handlePageError));
+        }
+
         return view;
     }
 
@@ -128,6 +152,10 @@ public class BookingListFragment extends Fragment implements SwipeRefreshLayout.
         bookingHistoryList.setAdapter(bookingListAdapter);
         bookingHistoryList.setLayoutManager(new LinearLayoutManager(getContext()));
 
+        // Prefetch the details of the bookings on screen so they open instantly
+        bookingPrefetcher = new BookingPrefetcher(bookingListAdapter, bookingViewModel);
+        bookingPrefetcher.attach(bookingHistoryList);
+
         // Initialize Click Listener
         bookingListAdapter.setItemClickListener((v, position) -> {
             // Open a new activity to show the booking overview
@@ -135,12 +163,26 @@ public class BookingListFragment extends Fragment implements SwipeRefreshLayout.
             Bundle args = new Bundle();
 
             // Pass Booking ID to the view
-            args.putString(BookingOverviewFragment.BOOKING_ID_KEY, bookings.get(position).getId());
+            args.putString(BookingOverviewFragment.BOOKING_ID_KEY, bookingListAdapter.getBooking(position).getId());
             intent.putExtras(args);
 
             startActivity(intent);
         });
 
+        // Load the next page of history as the user nears the end of the list
+        if(!activeBookings){
+            bookingHistoryList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                    LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                    if(dy > 0 && layoutManager != null &&
+                            layoutManager.findLastVisibleItemPosition() >= bookingListAdapter.getItemCount() - NEXT_PAGE_THRESHOLD){
+                        loadNextPage();
+                    }
+                }
+            });
+        }
+
         // Initialize Empty Booking View
         emptyBookingView = view.findViewById(R.id.empty_booking);
 
@@ -152,7 +194,7 @@ public class BookingListFragment extends Fragment implements SwipeRefreshLayout.
 
     /**
      * Sends a request to the API via the View model to get a
-     * list of all the user's bookings
+     * list of the user's active bookings, or the first page of their booking history
      */
     private void loadBookings(){
         // Lock Screen Orientation
@@ -164,33 +206,36 @@ public class BookingListFragment extends Fragment implements SwipeRefreshLayout.
             getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER_PORTRAIT);
         }
 
-        // Show Progress Indicator
+        // Show Progress Indicator, the stored bookings are shown underneath it until the API answers
         swipeRefreshLayout.setRefreshing(true);
+        offline = false;
 
         // Either load all bookings or load only active bookings
         if(activeBookings){
-            subscriptions.add(userViewModel.getActiveBookings(sharedPreferencesManager.getToken(),
-                    sharedPreferencesManager.getUser().getId()).subscribe(this::handleSuccess, this::handleError));
+            subscriptions.add(userViewModel.getActiveBookings(sharedPreferencesManager.getUser().getId(), this::handleOffline)
+                    .subscribe(this::handleSuccess, this::handleError, this::handleLoadComplete));
         }else{
-            subscriptions.add(userViewModel.getUserBookings(sharedPreferencesManager.getToken(),
-                    sharedPreferencesManager.getUser().getId()).subscribe(this::handleSuccess, this::handleError));
+            subscriptions.add(bookingPager.loadFirstPage(this::handleOffline)
+                    .subscribe(this::handleSuccess, this::handleError, this::handleLoadComplete));
         }
     }
 
     /**
-     * Handle successful retrival of booking history
+     * Request the next page of the user's booking history (if there is one and
+     * no page is already loading)
+     */
+    private void loadNextPage(){
+        if(bookingPager.hasMore() && !bookingPager.isLoading()){
+            subscriptions.add(bookingPager.loadNextPage()
+                    .subscribe(this::handlePageLoad, this::handlePageError));
+        }
+    }
+
+    /**
+     * Handle successful retrival of booking history, either the stored or the API's
      * @param bookings
      */
     private void handleSuccess(ArrayList<Booking> bookings){
-        // Unlock Screen Orientation
-        getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER);
-
-        // Hide Progress Indicator
-        swipeRefreshLayout.setRefreshing(false);
-
-        // Set the local list of bookings
-        this.bookings = bookings;
-
         // If list is empty, show empty view
         if(bookings.size() == 0){
             emptyBookingView.setVisibility(View.VISIBLE);
@@ -202,6 +247,89 @@ public class BookingListFragment extends Fragment implements SwipeRefreshLayout.
 
         // Populate Bookings
         bookingListAdapter.populateList(bookings);
+        shownBookings = bookings;
+
+        // Only poll results that differ from what is now shown are passed on
+        if(pollingScheduler != null){
+            pollingScheduler.seed(bookings);
+        }
+    }
+
+    /**
+     * Called (possibly off the main thread) if the API couldn't be reached while loading,
+     * and the stored bookings were kept on screen
+     */
+    private void handleOffline(){
+        offline = true;
+    }
+
+    /**
+     * Handle the end of loading, once the API's bookings are shown or the API
+     * couldn't be reached and the stored bookings were kept
+     */
+    private void handleLoadComplete(){
+        // Unlock Screen Orientation
+        getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER);
+
+        // Hide Progress Indicator
+        swipeRefreshLayout.setRefreshing(false);
+
+        // Let the user know the bookings shown may be out of date
+        if(offline){
+            Snackbar.make(view, R.string.showing_saved_bookings_offline, Snackbar.LENGTH_LONG).show();
+            return;
+        }
+
+        if(activeBookings){
+            startPolling();
+        }
+
+        prefetch();
+    }
+
+    /**
+     * Handle a poll result that differs from the bookings shown
+     * @param bookings
+     */
+    private void handlePollResult(ArrayList<Booking> bookings){
+        handleSuccess(bookings);
+        prefetch();
+    }
+
+    /**
+     * Prefetch the first screen of bookings once they have been laid out
+     */
+    private void prefetch(){
+        bookingHistoryList.post(() -> bookingPrefetcher.prefetch(bookingHistoryList));
+    }
+
+    /**
+     * Poll the active bookings for changes, as a fallback for when events aren't pushed
+     */
+    private void startPolling(){
+        if(pollingScheduler == null){
+            pollingScheduler = userViewModel.getActiveBookingsPollingScheduler(sharedPreferencesManager.getUser().getId());
+            pollingScheduler.seed(shownBookings);
+            subscriptions.add(pollingScheduler.start()
+                    .subscribe(this::handlePollResult, this::handlePageError));
+        }
+    }
+
+    /**
+     * Handle successful retrieval of a further page of booking history
+     * @param page
+     */
+    private void handlePageLoad(ArrayList<Booking> page){
+        bookingListAdapter.appendPage(page);
+    }
+
+    /**
+     * Handle an error retrieving a further page of booking history, the
+     * pages already loaded are kept on screen
+     * @param error
+     */
+    private void handlePageError(Throwable error){
+        errorHandler.handle(error, getContext(), view);
     }
 
     /**
@@ -229,15 +357,25 @@ public class BookingListFragment extends Fragment implements SwipeRefreshLayout.
     @Override
     public void onDestroy(){
         subscriptions.unsubscribe();
+        bookingPrefetcher.cancel();
         super.onDestroy();
     }
 
     /**
-     * Called when the swipe refresh is triggered
+     * Called when the swipe refresh is triggered. Booking history that has already been
+     * loaded is refreshed by only downloading the bookings that changed
      */
     @Override
     public void onRefresh() {
-        loadBookings();
+        String userId = sharedPreferencesManager.getUser().getId();
+
+        if(!activeBookings && userViewModel.canSyncBookings(userId)){
+            // On failure keep showing the bookings already loaded
+            subscriptions.add(userViewModel.syncBookings(userId)
+                    .subscribe(this::handleSuccess, this::handlePageError, this::prefetch));
+        }else{
+            loadBookings();
+        }
         swipeRefreshLayout.setRefreshing(false);
     }
 
@@ -190,7 +190,7 @@ public class BookingNotesViewActivity extends AppCompatActivity {
         booking.setNote(note);
 
         // Send HTTP request
-        subscriptions.add(bookingViewModel.editBooking(sharedPreferencesManager.getToken(), bookingId, booking)
+        subscriptions.add(bookingViewModel.editBooking(bookingId, booking)
             .subscribe(this::handleSuccess, this::handleError));
     }
 
@@ -202,7 +202,8 @@ public class BookingNotesViewActivity extends AppCompatActivity {
         // Unlock screen orientation
         setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER);
         // Show snackbar message
-        Snackbar.make(view, R.string.note_successfully_added, Snackbar.LENGTH_SHORT).show();
+        int message = response.isQueued() ? R.string.change_queued_offline : R.string.note_successfully_added;
+        Snackbar.make(view, message, Snackbar.LENGTH_SHORT).show();
     }
 
     /**
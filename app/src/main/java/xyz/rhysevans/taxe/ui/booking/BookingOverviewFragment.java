@@ -30,17 +30,23 @@ import android.widget.Toast;
 import org.apache.commons.text.WordUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
 
+import rx.Observable;
+import rx.Subscription;
 import rx.subscriptions.CompositeSubscription;
 import xyz.rhysevans.taxe.R;
 import xyz.rhysevans.taxe.databinding.FragmentBookingOverviewBinding;
 import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.model.Bootstrap;
+import xyz.rhysevans.taxe.model.BookingEvent;
 import xyz.rhysevans.taxe.model.Response;
 import xyz.rhysevans.taxe.ui.authentication.LoginFragment;
 import xyz.rhysevans.taxe.ui.dialogs.StringPickerDialog;
 import xyz.rhysevans.taxe.util.BookingStatus;
 import xyz.rhysevans.taxe.util.ErrorHandler;
 import xyz.rhysevans.taxe.util.SharedPreferencesManager;
+import xyz.rhysevans.taxe.viewmodel.BookingPollingScheduler;
 import xyz.rhysevans.taxe.viewmodel.BookingViewModel;
 import xyz.rhysevans.taxe.viewmodel.UserViewModel;
 
@@ -59,7 +65,7 @@ public class BookingOverviewFragment extends Fragment implements SwipeRefreshLay
     public static final String BOOKING_NOTES_KEY = "BOOKING_NOTES_KEY";
     public static final int BOOKING_NOTES_REQUEST_CODE = 5;
 
-    // A potential booking ID to display
+    // The ID of the booking to display, null to display the user's most recent booking
     private String id;
 
     // The container for the empty booking view
@@ -85,12 +91,24 @@ public class BookingOverviewFragment extends Fragment implements SwipeRefreshLay
     private ErrorHandler errorHandler;
     private CompositeSubscription subscriptions;
     private UserViewModel userViewModel;
+
+    // Re-bind the loaded booking's role dependent parts if the saved user's role changes
+    private final SharedPreferencesManager.OnUserChangedListener userChangedListener = user -> {
+        if(user != null && booking != null){
+            bindUserRole(user.getRole());
+        }
+    };
     private BookingViewModel bookingViewModel;
     private FragmentBookingOverviewBinding dataBinding;
 
     // The booking object
     private Booking booking;
 
+    // ID of the booking being polled for changes (null until a booking is shown)
+    private String polledBookingId;
+    private BookingPollingScheduler pollingScheduler;
+    private Subscription pollingSubscription;
+
     /**
      * Default Constructor
      */
@@ -120,6 +138,7 @@ public class BookingOverviewFragment extends Fragment implements SwipeRefreshLay
 
         // Initialize Shared Preferences
         sharedPreferencesManager = SharedPreferencesManager.getInstance(getContext());
+        sharedPreferencesManager.addOnUserChangedListener(userChangedListener);
 
         // Initialize Error Handler
         errorHandler = new ErrorHandler();
@@ -144,6 +163,10 @@ public class BookingOverviewFragment extends Fragment implements SwipeRefreshLay
         // Load the booking
         loadBooking();
 
+        // Update the booking as soon as the API pushes a change
+        subscriptions.add(bookingViewModel.getBookingEvents()
+                .subscribe(this::handleBookingEvent, this::handleBookingEventError));
+
         return view;
     }
 
@@ -248,6 +271,29 @@ public class BookingOverviewFragment extends Fragment implements SwipeRefreshLay
      * Load the booking using view model
      */
     private void loadBooking(){
+        // The user's most recent booking is loaded with the session's bootstrap. It is only used
+        // to show something straight away, the field is left null so refreshing still loads
+        // whichever booking is the most recent by then
+        String bookingId = id;
+        if(bookingId == null){
+            Bootstrap bootstrap = userViewModel.getLoadedBootstrap(sharedPreferencesManager.getUser().getId());
+            if(bootstrap != null && bootstrap.getMostRecentBooking() != null){
+                bookingId = bootstrap.getMostRecentBooking().getId();
+            }
+        }
+
+        // If the booking was prefetched or bootstrapped, show it straight away
+        // and refresh it in the background
+        Booking cached = bookingId != null ? bookingViewModel.getCachedBooking(bookingId) : null;
+        if(cached != null){
+            handleBookingLoad(cached);
+            Observable<Booking> refresh = id != null
+                    ? bookingViewModel.getBooking(id)
+                    : userViewModel.getMostRecentBooking(sharedPreferencesManager.getUser().getId());
+            subscriptions.add(refresh.subscribe(this::handleBookingLoad, this::handleBookingEventError));
+            return;
+        }
+
         // Show Progress Bar
         activeBookingContainer.setVisibility(View.GONE);
         emptyBookingContainer.setVisibility(View.GONE);
@@ -264,12 +310,12 @@ public class BookingOverviewFragment extends Fragment implements SwipeRefreshLay
 
         // Check if an ID is present, if so, just load that booking
         if(id != null){
-            subscriptions.add(bookingViewModel.getBooking(sharedPreferencesManager.getToken(), id)
+            subscriptions.add(bookingViewModel.openBooking(id)
                     .subscribe(this::handleBookingLoad, this::handleError));
         }else{
             // Get most recent booking from View Model
-            subscriptions.add(userViewModel.getMostRecentBooking(sharedPreferencesManager.getToken(),
-                    sharedPreferencesManager.getUser().getId()).subscribe(this::handleBookingLoad, this::handleError));
+            subscriptions.add(userViewModel.getMostRecentBooking(sharedPreferencesManager.getUser().getId())
+                    .subscribe(this::handleBookingLoad, this::handleError, this::handleBookingLoadComplete));
         }
     }
 
@@ -296,7 +342,7 @@ public class BookingOverviewFragment extends Fragment implements SwipeRefreshLay
         // Send Request
         Booking updatedBooking = new Booking();
         updatedBooking.setStatus(BookingStatus.Cancelled);
-        subscriptions.add(bookingViewModel.editBooking(sharedPreferencesManager.getToken(), id, updatedBooking)
+        subscriptions.add(bookingViewModel.editBooking(booking.getId(), updatedBooking)
             .subscribe(this::handleBookingCancellation, this::handleError));
     }
 
@@ -321,7 +367,7 @@ public class BookingOverviewFragment extends Fragment implements SwipeRefreshLay
         progressIndicator.setVisibility(View.VISIBLE);
 
         // Send Request
-        subscriptions.add(bookingViewModel.releaseBooking(sharedPreferencesManager.getToken(), id)
+        subscriptions.add(bookingViewModel.releaseBooking(booking.getId())
             .subscribe(this::handleBookingRelease, this::handleError));
     }
 
@@ -351,7 +397,7 @@ public class BookingOverviewFragment extends Fragment implements SwipeRefreshLay
         // Create Updated Booking Object
         Booking updatedBooking = new Booking();
         updatedBooking.setStatus(BookingStatus.valueOf(status));
-        subscriptions.add(bookingViewModel.editBooking(sharedPreferencesManager.getToken(), id, updatedBooking)
+        subscriptions.add(bookingViewModel.editBooking(booking.getId(), updatedBooking)
                 .subscribe(this::handleUpdateBookingStatus, this::handleError));
     }
 
@@ -361,37 +407,128 @@ public class BookingOverviewFragment extends Fragment implements SwipeRefreshLay
      */
     private void handleBookingLoad(Booking booking){
         this.booking = booking;
+        startPolling(booking);
         // Hide Progress Bar
         progressIndicator.setVisibility(View.GONE);
         // Unlock screen orientation
         getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER);
 
         // If booking is no longer active, remove cancel button
-        // and if user is a driver, handle release button
-        if(booking.getStatus() == BookingStatus.Cancelled || booking.getStatus() == BookingStatus.Finished){
+        if(isInactive(booking)){
             cancelBtn.setVisibility(View.GONE);
-            releaseBtn.setVisibility(View.GONE);
         }else{
             cancelBtn.setVisibility(View.VISIBLE);
-            // If user is a driver, show release buttonn
-            if(sharedPreferencesManager.getUser().getRole().equals("Driver")){
-                releaseBtn.setVisibility(View.VISIBLE);
-            }
         }
 
         // If booking is successfully loaded, hide empty view
         activeBookingContainer.setVisibility(View.VISIBLE);
         emptyBookingContainer.setVisibility(View.GONE);
 
-        // Store the ID of the booking for easier reloading
-        this.id = booking.getId();
-
         // Send model to the view using Data Binding
         dataBinding.setBooking(beautifyBooking(booking));
+        bindUserRole(sharedPreferencesManager.getUser().getRole());
+    }
+
+    /**
+     * Show the parts of the loaded booking that depend on the user's role
+     * @param role
+     */
+    private void bindUserRole(String role){
+        // If the booking is active and user is a driver, show release button
+        if(booking != null && !isInactive(booking) && "Driver".equals(role)){
+            releaseBtn.setVisibility(View.VISIBLE);
+        }else{
+            releaseBtn.setVisibility(View.GONE);
+        }
+
         // Send user's role to the view
-        dataBinding.setUserRole(sharedPreferencesManager.getUser().getRole());
+        dataBinding.setUserRole(role);
     }
 
+    /**
+     * Check if a booking is no longer active (cancelled or finished)
+     * @param booking
+     * @return
+     */
+    private boolean isInactive(Booking booking){
+        return booking.getStatus() == BookingStatus.Cancelled || booking.getStatus() == BookingStatus.Finished;
+    }
+
+
+    /**
+     * Called once the most recent booking request completes. If no booking was loaded
+     * (the user has no bookings), show the empty view
+     */
+    private void handleBookingLoadComplete(){
+        if(progressIndicator.getVisibility() == View.VISIBLE){
+            // Hide Progress Bar
+            progressIndicator.setVisibility(View.GONE);
+            // Unlock screen orientation
+            getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER);
+
+            activeBookingContainer.setVisibility(View.GONE);
+            emptyBookingContainer.setVisibility(View.VISIBLE);
+        }
+    }
+
+    /**
+     * Handle a booking event pushed by the API. If it is about the booking being shown, show
+     * its new state (fetching it in full if the event's booking isn't populated). When showing
+     * the most recent booking, a newly created booking replaces it
+     * @param event
+     */
+    private void handleBookingEvent(BookingEvent event){
+        Booking updated = event.getBooking();
+        boolean isShown = booking != null && updated.getId().equals(booking.getId());
+
+        if(!isShown){
+            // A new booking replaces the most recent one, if that is what's shown
+            if(id == null && BookingEvent.TYPE_CREATED.equals(event.getType())){
+                loadBooking();
+            }
+            return;
+        }
+
+        if(updated.getCustomer() != null && updated.getCustomer().getName() != null){
+            handleBookingLoad(updated);
+        }else{
+            subscriptions.add(bookingViewModel.getBooking(updated.getId())
+                    .subscribe(this::handleBookingLoad, this::handleBookingEventError));
+        }
+    }
+
+    /**
+     * Poll the booking shown for changes, as a fallback for when events aren't pushed.
+     * Any polling of a previously shown booking is stopped
+     * @param booking - The booking just shown
+     */
+    private void startPolling(Booking booking){
+        if(!booking.getId().equals(polledBookingId)){
+            if(pollingSubscription != null){
+                subscriptions.remove(pollingSubscription);
+            }
+
+            polledBookingId = booking.getId();
+            pollingScheduler = bookingViewModel.getPollingScheduler(polledBookingId);
+            pollingScheduler.seed(Collections.singletonList(booking));
+            pollingSubscription = pollingScheduler.start()
+                    .subscribe(this::handleBookingLoad, this::handleBookingEventError);
+            subscriptions.add(pollingSubscription);
+            return;
+        }
+
+        // Only poll results that differ from what is now shown are passed on
+        pollingScheduler.seed(Collections.singletonList(booking));
+    }
+
+    /**
+     * Handle an error while following booking events, the booking shown is left as it is
+     * and can still be refreshed by hand
+     * @param error
+     */
+    private void handleBookingEventError(Throwable error){
+        Log.w(TAG, "Could not update booking from event", error);
+    }
 
     /**
      * Handle successful cancellation of booking
@@ -401,7 +538,8 @@ public class BookingOverviewFragment extends Fragment implements SwipeRefreshLay
         handleSuccess();
 
         // Show Toast
-        Toast toast = Toast.makeText(getActivity().getApplicationContext(), R.string.booking_cancelled, Toast.LENGTH_SHORT);
+        int message = response.isQueued() ? R.string.change_queued_offline : R.string.booking_cancelled;
+        Toast toast = Toast.makeText(getActivity().getApplicationContext(), message, Toast.LENGTH_SHORT);
         toast.setGravity(Gravity.BOTTOM | Gravity.CENTER_HORIZONTAL, 0, 150);
         toast.show();
     }
@@ -428,7 +566,8 @@ public class BookingOverviewFragment extends Fragment implements SwipeRefreshLay
         handleSuccess();
 
         // Show Toast
-        Toast toast = Toast.makeText(getActivity().getApplicationContext(), R.string.booking_status_updated, Toast.LENGTH_SHORT);
+        int message = response.isQueued() ? R.string.change_queued_offline : R.string.booking_status_updated;
+        Toast toast = Toast.makeText(getActivity().getApplicationContext(), message, Toast.LENGTH_SHORT);
         toast.setGravity(Gravity.BOTTOM | Gravity.CENTER_HORIZONTAL, 0, 150);
         toast.show();
     }
@@ -566,5 +705,6 @@ public class BookingOverviewFragment extends Fragment implements SwipeRefreshLay
     public void onDestroy(){
         super.onDestroy();
         subscriptions.unsubscribe();
+        sharedPreferencesManager.removeOnUserChangedListener(userChangedListener);
     }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.ui.booking;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import rx.Observable;
+import rx.subscriptions.SerialSubscription;
+import rx.subscriptions.Subscriptions;
+import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.viewmodel.BookingViewModel;
+
+/**
+ * BookingPrefetcher.java
+ *
+ * Prefetches the full details of the bookings visible in a booking list, plus the next few,
+ * whenever the list comes to rest, so tapping a row opens the booking from cache. The
+ * prefetches of one viewport are batched into a single request and are replaced by the next
+ * viewport's, or cancelled by a fast fling, as those rows will never be seen.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingPrefetcher extends RecyclerView.OnScrollListener {
+
+    /**
+     * Number of rows past the last visible one to prefetch
+     */
+    private static final int PREFETCH_AHEAD = 5;
+
+    private final BookingListAdapter adapter;
+    private final BookingViewModel bookingViewModel;
+    // Prefetches of the current viewport, replaced on each prefetch()
+    private final SerialSubscription viewport = new SerialSubscription();
+
+    // Fling velocity (pixels per second) above which prefetching is cancelled
+    private int fastFlingVelocity;
+
+    /**
+     * Constructor
+     * @param adapter - The adapter of the list the bookings are shown in
+     * @param bookingViewModel
+     */
+    public BookingPrefetcher(BookingListAdapter adapter, BookingViewModel bookingViewModel){
+        this.adapter = adapter;
+        this.bookingViewModel = bookingViewModel;
+    }
+
+    /**
+     * Start prefetching for a list
+     * @param recyclerView
+     */
+    public void attach(RecyclerView recyclerView){
+        fastFlingVelocity = ViewConfiguration.get(recyclerView.getContext()).getScaledMaximumFlingVelocity() / 2;
+
+        recyclerView.addOnScrollListener(this);
+        recyclerView.setOnFlingListener(new RecyclerView.OnFlingListener() {
+            @Override
+            public boolean onFling(int velocityX, int velocityY) {
+                if(Math.abs(velocityY) > fastFlingVelocity){
+                    cancel();
+                }
+                // Let the RecyclerView handle the fling
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Prefetch once the list comes to rest
+     * @param recyclerView
+     * @param newState
+     */
+    @Override
+    public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState){
+        if(newState == RecyclerView.SCROLL_STATE_IDLE){
+            prefetch(recyclerView);
+        }
+    }
+
+    /**
+     * Prefetch the visible bookings and the next few that aren't cached yet,
+     * e.g. once the list has been populated. Prefetches of the previous viewport that are
+     * still wanted carry on, the rest are cancelled
+     * @param recyclerView
+     */
+    public void prefetch(RecyclerView recyclerView){
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        if(layoutManager == null){
+            return;
+        }
+
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = Math.min(layoutManager.findLastVisibleItemPosition() + PREFETCH_AHEAD, adapter.getItemCount() - 1);
+        if(first == RecyclerView.NO_POSITION){
+            return;
+        }
+
+        List<Observable<Booking>> prefetches = new ArrayList<>();
+        for(int position = first; position <= last; position++){
+            String bookingId = adapter.getBooking(position).getId();
+            if(!bookingViewModel.isBookingCached(bookingId)){
+                // A failed prefetch just means the booking is fetched when opened
+                prefetches.add(bookingViewModel.prefetchBooking(bookingId)
+                        .onErrorResumeNext(Observable.empty()));
+            }
+        }
+
+        // Subscribed before the previous viewport is unsubscribed, so shared requests carry on
+        viewport.set(Observable.merge(prefetches).subscribe());
+    }
+
+    /**
+     * Cancel the prefetches that haven't been sent yet, so they are left out of the batch.
+     * They can be restarted by the next prefetch()
+     */
+    public void cancel(){
+        viewport.set(Subscriptions.empty());
+    }
+}
@@ -247,7 +247,7 @@ public class CreateBookingActivity extends AppCompatActivity implements NumberPi
             Booking booking = new Booking(pickupLocation, destination, time, noPassengers, notes);
 
             // Send HTTP request
-            subscriptions.add(bookingViewModel.createBooking(sharedPreferencesManager.getToken(), booking)
+            subscriptions.add(bookingViewModel.createBooking(booking)
                     .subscribe(this::handleSuccess, this::handleError));
         }
     }
@@ -328,7 +328,8 @@ public class CreateBookingActivity extends AppCompatActivity implements NumberPi
         notesInput.setText(null);
 
         // Show Toast
-        Toast toast = Toast.makeText(getApplicationContext(), getString(R.string.booking_created_successfully), Toast.LENGTH_LONG);
+        int message = response.isQueued() ? R.string.booking_queued_offline : R.string.booking_created_successfully;
+        Toast toast = Toast.makeText(getApplicationContext(), getString(message), Toast.LENGTH_LONG);
         toast.setGravity(Gravity.BOTTOM | Gravity.CENTER_HORIZONTAL, 0, 100);
         toast.show();
 
@@ -26,6 +26,7 @@ import rx.subscriptions.CompositeSubscription;
 import xyz.rhysevans.taxe.R;
 import xyz.rhysevans.taxe.databinding.FragmentHomeBinding;
 import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.model.Bootstrap;
 import xyz.rhysevans.taxe.model.Response;
 import xyz.rhysevans.taxe.model.User;
 import xyz.rhysevans.taxe.ui.TaxeMainActivity;
@@ -92,9 +93,8 @@ public class HomeFragment extends Fragment {
         // Initialize View Models
         userViewModel = new UserViewModel();
 
-        // Load the recent booking and current user
-        loadUser();
-        loadRecentBooking();
+        // Load the current user and their recent booking
+        loadBootstrap(false);
 
         // Initialize Views
         initViews(view);
@@ -122,9 +122,11 @@ public class HomeFragment extends Fragment {
     }
 
     /**
-     * Load all of the currently logged in user's information
+     * Load the currently logged in user's information and most recent booking,
+     * from the session's bootstrap unless a refresh is needed
+     * @param refresh
      */
-    private void loadUser(){
+    private void loadBootstrap(boolean refresh){
         // Lock Screen Orientation
         int currentOrientation = getResources().getConfiguration().orientation;
         if (currentOrientation == Configuration.ORIENTATION_LANDSCAPE) {
@@ -134,27 +136,9 @@ public class HomeFragment extends Fragment {
             getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER_PORTRAIT);
         }
 
-        // Load the current user
-        subscriptions.add(userViewModel.getUser(sharedPreferencesManager.getToken(),
-                sharedPreferencesManager.getUser().getId()).subscribe(this::handleUserLoad, this::handleError));
-    }
-
-    /**
-     * Load the current user's most recent booking
-     */
-    private void loadRecentBooking(){
-        // Lock Screen Orientation
-        int currentOrientation = getResources().getConfiguration().orientation;
-        if (currentOrientation == Configuration.ORIENTATION_LANDSCAPE) {
-            getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER_LANDSCAPE);
-        }
-        else {
-            getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER_PORTRAIT);
-        }
-
-        // Load the most recent booking
-        subscriptions.add(userViewModel.getMostRecentBooking(sharedPreferencesManager.getToken(),
-                sharedPreferencesManager.getUser().getId()).subscribe(this::handleBookingLoad, this::handleError));
+        String userId = sharedPreferencesManager.getUser().getId();
+        subscriptions.add((refresh ? userViewModel.refreshBootstrap(userId) : userViewModel.getBootstrap(userId))
+                .subscribe(this::handleBootstrapLoad, this::handleError));
     }
 
     /**
@@ -179,57 +163,40 @@ public class HomeFragment extends Fragment {
         updatedUser.setAvailable(availability);
 
         // Send API Request
-        subscriptions.add(userViewModel.editUser(sharedPreferencesManager.getToken(),
-                sharedPreferencesManager.getUser().getId(), updatedUser)
+        subscriptions.add(userViewModel.editUser(sharedPreferencesManager.getUser().getId(), updatedUser)
                 .subscribe(this::handleAvailabilityUpdate, this::handleError));
     }
 
     /**
-     * Handle successfully loading user information
-     * @param user
+     * Handle successfully loading the user's information and recent booking.
+     * The user's role is kept up to date by TaxeMainActivity
+     * @param bootstrap
      */
-    private void handleUserLoad(User user){
+    private void handleBootstrapLoad(Bootstrap bootstrap){
         // Unlock Screen Orientation
         getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER);
 
         // Beautify user's name
+        // (the user is shared with other screens, so bind a copy)
+        User user = new User(bootstrap.getUser());
         String beautyName = WordUtils.capitalizeFully(user.getName());
         user.setName(beautyName);
 
-        // If the loaded user's role differs from that saved in shared prefs, update
-        if(!user.getRole().equals(sharedPreferencesManager.getUser().getRole())){
-            // Update Shared Preferences
-            User updatedUser = sharedPreferencesManager.getUser();
-            updatedUser.setRole(user.getRole());
-
-            // Update user's company
-            if(user.getCompany() != null){
-                updatedUser.setCompany(user.getCompany());
-            }
-
-            sharedPreferencesManager.putUser(updatedUser);
-
-            // Update Nav Bar
-            ((TaxeMainActivity) getActivity()).initNavbar();
-        }
-
         dataBinding.setUser(user);
-    }
 
-    /**
-     * Handle successfully loading user's recent booking
-     * @param booking
-     */
-    private void handleBookingLoad(Booking booking){
-        // Unlock Screen Orientation
-        getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_USER);
+        // The user may have no bookings
+        Booking booking = bootstrap.getMostRecentBooking();
+        if(booking != null){
+            // If the most recent booking is inactive, don't bind its status
+            // (the booking is shared with other screens, so bind a copy)
+            if(booking.getStatus() == BookingStatus.Finished || booking.getStatus() == BookingStatus.Cancelled){
+                Booking inactiveBooking = new Booking();
+                inactiveBooking.setTime(booking.getTime());
+                booking = inactiveBooking;
+            }
 
-        // If the most recent booking is inactive, don't bind
-        if(booking.getStatus() == BookingStatus.Finished || booking.getStatus() == BookingStatus.Cancelled){
-            booking.setStatus(null);
+            dataBinding.setBooking(booking);
         }
-
-        dataBinding.setBooking(booking);
     }
 
     /**
@@ -244,7 +211,7 @@ public class HomeFragment extends Fragment {
         availabilityToggle.setEnabled(true);
 
         // Refresh View
-        loadUser();
+        loadBootstrap(true);
     }
 
     /**
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.util;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+
+import rx.Observable;
+import rx.subjects.BehaviorSubject;
+
+/**
+ * AppForegroundTracker.java
+ *
+ * Tracks whether any of the app's activities are started (visible), so background work such as
+ * polling can be paused while the app is in the background. Registered by TaxeApplication.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class AppForegroundTracker implements Application.ActivityLifecycleCallbacks {
+
+    private static final BehaviorSubject<Boolean> foreground = BehaviorSubject.create(false);
+
+    // Number of started activities, only touched on the main thread
+    private int startedActivities;
+
+    /**
+     * Get whether the app is in the foreground, emitting the current value then every change
+     * @return
+     */
+    public static Observable<Boolean> foreground(){
+        return foreground.distinctUntilChanged();
+    }
+
+    /**
+     * Check if the app is currently in the foreground
+     * @return
+     */
+    public static boolean isInForeground(){
+        return foreground.getValue();
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity){
+        if(startedActivities++ == 0){
+            foreground.onNext(true);
+        }
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity){
+        if(--startedActivities == 0){
+            foreground.onNext(false);
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState){}
+
+    @Override
+    public void onActivityResumed(Activity activity){}
+
+    @Override
+    public void onActivityPaused(Activity activity){}
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState){}
+
+    @Override
+    public void onActivityDestroyed(Activity activity){}
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.util;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+
+import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.model.User;
+
+/**
+ * BookingTypeAdapter.java
+ *
+ * Streaming type adapter to handle dynamic JSON response for bookings. Fields are read
+ * directly from the JsonReader, without building a JsonElement tree for each booking first,
+ * and written directly to the JsonWriter (null fields are skipped) without reflection.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingTypeAdapter extends TypeAdapter<Booking> {
+
+    /**
+     * Factory to register the adapter with a GsonBuilder
+     */
+    public static final TypeAdapterFactory FACTORY = new TypeAdapterFactory() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if(type.getRawType() != Booking.class){
+                return null;
+            }
+
+            return (TypeAdapter<T>) new BookingTypeAdapter(gson.getAdapter(User.class), gson.getAdapter(Date.class));
+        }
+    };
+
+    // JSON fields that correspond to Booking POJO
+    private static final String ID_KEY = "_id";
+    private static final String PICKUP_LOCATION_KEY = "pickup_location";
+    private static final String DESTINATION_KEY = "destination";
+    private static final String TIME_KEY = "time";
+    private static final String NO_PASSENGERS_KEY = "no_passengers";
+    private static final String NOTES_KEY = "notes";
+    private static final String NOTE_KEY = "note";
+    private static final String STATUS_KEY = "status";
+    private static final String CUSTOMER_KEY = "customer";
+    private static final String DRIVER_KEY = "driver";
+    private static final String COMPANY_KEY = "company";
+    private static final String CREATED_AT_KEY = "created_at";
+    private static final String UPDATED_AT_KEY = "updated_at";
+    private static final String DELETED_KEY = "deleted";
+
+    // Adapter used for populated customer and driver objects
+    private final TypeAdapter<User> userAdapter;
+    // Adapter used for the time, created_at and updated_at fields
+    private final TypeAdapter<Date> dateAdapter;
+
+    /**
+     * Default Constructor
+     * @param userAdapter
+     * @param dateAdapter
+     */
+    private BookingTypeAdapter(TypeAdapter<User> userAdapter, TypeAdapter<Date> dateAdapter){
+        this.userAdapter = userAdapter;
+        this.dateAdapter = dateAdapter;
+    }
+
+    /**
+     * Write a booking, skipping any null fields
+     * @param out
+     * @param booking
+     * @throws IOException
+     */
+    @Override
+    public void write(JsonWriter out, Booking booking) throws IOException {
+        if(booking == null){
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        writeString(out, ID_KEY, booking.getId());
+        writeString(out, PICKUP_LOCATION_KEY, booking.getPickupLocation());
+        writeString(out, DESTINATION_KEY, booking.getDestination());
+        if(booking.getTime() != null){
+            out.name(TIME_KEY);
+            dateAdapter.write(out, booking.getTime());
+        }
+        out.name(NO_PASSENGERS_KEY).value(booking.getNoPassengers());
+        if(booking.getNotes() != null){
+            out.name(NOTES_KEY).beginArray();
+            for(String note : booking.getNotes()){
+                out.value(note);
+            }
+            out.endArray();
+        }
+        writeString(out, NOTE_KEY, booking.getNote());
+        if(booking.getStatus() != null){
+            out.name(STATUS_KEY).value(booking.getStatus().name());
+        }
+        if(booking.getCustomer() != null){
+            out.name(CUSTOMER_KEY);
+            userAdapter.write(out, booking.getCustomer());
+        }
+        if(booking.getDriver() != null){
+            out.name(DRIVER_KEY);
+            userAdapter.write(out, booking.getDriver());
+        }
+        writeString(out, COMPANY_KEY, booking.getCompany());
+        if(booking.getCreatedAt() != null){
+            out.name(CREATED_AT_KEY);
+            dateAdapter.write(out, booking.getCreatedAt());
+        }
+        if(booking.getUpdatedAt() != null){
+            out.name(UPDATED_AT_KEY);
+            dateAdapter.write(out, booking.getUpdatedAt());
+        }
+        if(booking.isDeleted()){
+            out.name(DELETED_KEY).value(true);
+        }
+        out.endObject();
+    }
+
+    /**
+     * Read a booking field by field, handling the dynamic customer and driver fields
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public Booking read(JsonReader in) throws IOException {
+        if(in.peek() == JsonToken.NULL){
+            in.nextNull();
+            return null;
+        }
+
+        // Create a new Booking object with the optional fields defaulted
+        Booking booking = new Booking();
+        booking.setNotes(new ArrayList<>());
+        booking.setCompany("");
+
+        in.beginObject();
+        while(in.hasNext()){
+            String name = in.nextName();
+
+            // Leave any null fields as their default
+            if(in.peek() == JsonToken.NULL){
+                in.nextNull();
+                continue;
+            }
+
+            switch(name){
+                case ID_KEY:
+                    booking.setId(in.nextString());
+                    break;
+                case PICKUP_LOCATION_KEY:
+                    booking.setPickupLocation(in.nextString());
+                    break;
+                case DESTINATION_KEY:
+                    booking.setDestination(in.nextString());
+                    break;
+                case NO_PASSENGERS_KEY:
+                    booking.setNoPassengers(in.nextInt());
+                    break;
+                case STATUS_KEY:
+                    booking.setStatus(BookingStatus.valueOf(in.nextString()));
+                    break;
+                case NOTES_KEY:
+                    booking.setNotes(readNotes(in));
+                    break;
+                case COMPANY_KEY:
+                    booking.setCompany(in.nextString());
+                    break;
+                case CUSTOMER_KEY:
+                    booking.setCustomer(readUser(in));
+                    break;
+                case DRIVER_KEY:
+                    booking.setDriver(readUser(in));
+                    break;
+                case TIME_KEY:
+                    booking.setTime(dateAdapter.read(in));
+                    break;
+                case CREATED_AT_KEY:
+                    booking.setCreatedAt(dateAdapter.read(in));
+                    break;
+                case UPDATED_AT_KEY:
+                    booking.setUpdatedAt(dateAdapter.read(in));
+                    break;
+                case DELETED_KEY:
+                    booking.setDeleted(in.nextBoolean());
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        return booking;
+    }
+
+    /**
+     * Write a named string, skipping it if null
+     * @param out
+     * @param name
+     * @param value
+     * @throws IOException
+     */
+    private void writeString(JsonWriter out, String name, String value) throws IOException {
+        if(value != null){
+            out.name(name).value(value);
+        }
+    }
+
+    /**
+     * Read the array of notes
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    private ArrayList<String> readNotes(JsonReader in) throws IOException {
+        ArrayList<String> notes = new ArrayList<>();
+
+        in.beginArray();
+        while(in.hasNext()){
+            notes.add(in.nextString());
+        }
+        in.endArray();
+
+        return notes;
+    }
+
+    /**
+     * Read user fields that could either contain a string or JSON object
+     * e.g. Customer and Driver fields (could either be ID or a populated json object)
+     * @param in
+     * @return User object
+     * @throws IOException
+     */
+    private User readUser(JsonReader in) throws IOException {
+        // If the field is an object, read it with the user adapter
+        if(in.peek() == JsonToken.BEGIN_OBJECT){
+            return userAdapter.read(in);
+        }
+
+        // If it isn't read as string and create a new user object with just that info
+        User user = new User();
+        user.setId(in.nextString());
+        return user;
+    }
+}
@@ -22,12 +22,17 @@ public class Constants {
     //public static final String BASE_URL = "http://192.168.1.248:3000/api/v1/";
 
     /**
-     * The shared preferences key for access token
+     * The number of bookings loaded per page of booking history
+     */
+    public static final int BOOKING_PAGE_SIZE = 20;
+
+    /**
+     * The shared preferences key for access token (only read to migrate older sessions)
      */
     static final String TOKEN_KEY = "token";
 
     /**
-     * The shared preferences key for the user object
+     * The shared preferences key for the user object (only read to migrate older sessions)
      */
     static final String USER_KEY = "user";
 
@@ -14,7 +14,6 @@ import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
 import java.io.IOException;
@@ -35,6 +34,7 @@ import xyz.rhysevans.taxe.ui.authentication.AuthenticationActivity;
  */
 public class ErrorHandler {
 
+    private static final String TAG = ErrorHandler.class.getSimpleName();
 
     /**
      * Based on the error provided, perform the relevant actions
@@ -55,7 +55,7 @@ public class ErrorHandler {
             try {
                 // Get the body of the error thrown and convert to java object using gson
                 String errorBody = ((HttpException) error).response().errorBody().string();
-                JsonObject response = new Gson().fromJson(errorBody, JsonObject.class);
+                JsonObject response = GsonUtil.getGson().fromJson(errorBody, JsonObject.class);
 
                 // Use the json response to get the error code thrown
                 errorCode = response.get("code").getAsInt();
@@ -78,7 +78,7 @@ public class ErrorHandler {
             }
             // If the error wasn't a HTTP error, show network issues dialog
         } else {
-            Log.d("TEST", error.toString());
+            Log.w(TAG, "Request failed without a response", error);
             showNetworkErrorDialog(context);
         }
 
@@ -114,8 +114,8 @@ public class ErrorHandler {
      * @param context
      */
     private void handleExpiredToken(Context context) {
-        // Delete token from shared prefs
-        SharedPreferencesManager.getInstance(context).deleteAll();
+        // Delete the session and everything kept for the user
+        Session.logout(context);
 
         AlertDialog.Builder builder = new AlertDialog.Builder(context);
 
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.Date;
+
+import xyz.rhysevans.taxe.model.ModelTypeAdapterFactory;
+
+/**
+ * GsonUtil.java
+ *
+ * Holds the single Gson instance shared by the whole app (network converter, shared
+ * preferences and error handling). All model classes and dates are bound with hand-written
+ * adapters, so no reflection is needed to read or write them.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public final class GsonUtil {
+
+    /**
+     * The shared Gson instance (thread-safe)
+     */
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Date.class, new Iso8601DateAdapter())
+            .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+            .registerTypeAdapterFactory(BookingTypeAdapter.FACTORY)
+            .create();
+
+    /**
+     * Private constructor, static methods only
+     */
+    private GsonUtil(){}
+
+    /**
+     * Get the shared Gson instance
+     * @return
+     */
+    public static Gson getGson(){
+        return GSON;
+    }
+}
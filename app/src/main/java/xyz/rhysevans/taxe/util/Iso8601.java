@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.util;
+
+/**
+ * Iso8601.java
+ *
+ * Hand-written codec for ISO-8601 timestamps as sent by the API (e.g. 2019-04-22T10:15:30.000Z).
+ * Parsing reads the characters of the string directly and returns epoch milliseconds without
+ * creating any intermediate objects, unlike SimpleDateFormat which is also expensive to create
+ * and not thread-safe. Both methods are thread-safe.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public final class Iso8601 {
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    /**
+     * Private constructor, static methods only
+     */
+    private Iso8601(){}
+
+    /**
+     * Parse an ISO-8601 date-time of the form yyyy-MM-ddTHH:mm[:ss[.SSS]] followed by
+     * Z, +hh:mm, +hhmm or +hh (fractions beyond milliseconds are truncated)
+     * @param value
+     * @return The time in milliseconds since the epoch
+     * @throws IllegalArgumentException if the value is not a supported ISO-8601 date-time
+     */
+    public static long parse(String value){
+        int length = value.length();
+        if(length < 17 || value.charAt(4) != '-' || value.charAt(7) != '-' ||
+                (value.charAt(10) != 'T' && value.charAt(10) != 't') || value.charAt(13) != ':'){
+            throw invalid(value);
+        }
+
+        int year = readDigits(value, 0, 4);
+        int month = readDigits(value, 5, 2);
+        int day = readDigits(value, 8, 2);
+        int hour = readDigits(value, 11, 2);
+        int minute = readDigits(value, 14, 2);
+        int second = 0;
+        int millis = 0;
+        int pos = 16;
+
+        // Optional seconds
+        if(pos < length && value.charAt(pos) == ':'){
+            second = readDigits(value, pos + 1, 2);
+            pos += 3;
+
+            // Optional fraction, only the first three digits are significant
+            if(pos < length && (value.charAt(pos) == '.' || value.charAt(pos) == ',')){
+                pos++;
+                int digits = 0;
+                while(pos < length && isDigit(value.charAt(pos))){
+                    if(digits < 3){
+                        millis = millis * 10 + (value.charAt(pos) - '0');
+                    }
+                    digits++;
+                    pos++;
+                }
+                if(digits == 0){
+                    throw invalid(value);
+                }
+                for(; digits < 3; digits++){
+                    millis *= 10;
+                }
+            }
+        }
+
+        if(month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 60){
+            throw invalid(value);
+        }
+
+        // Time zone designator
+        if(pos >= length){
+            throw invalid(value);
+        }
+        long offsetMillis;
+        char designator = value.charAt(pos);
+        if(designator == 'Z' || designator == 'z'){
+            offsetMillis = 0;
+            pos++;
+        }else if(designator == '+' || designator == '-'){
+            int offsetHours = readDigits(value, pos + 1, 2);
+            int offsetMinutes = 0;
+            pos += 3;
+            if(pos < length && value.charAt(pos) == ':'){
+                pos++;
+            }
+            if(pos < length){
+                offsetMinutes = readDigits(value, pos, 2);
+                pos += 2;
+            }
+            offsetMillis = offsetHours * MILLIS_PER_HOUR + offsetMinutes * MILLIS_PER_MINUTE;
+            if(designator == '-'){
+                offsetMillis = -offsetMillis;
+            }
+        }else{
+            throw invalid(value);
+        }
+
+        if(pos != length){
+            throw invalid(value);
+        }
+
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + hour * MILLIS_PER_HOUR
+                + minute * MILLIS_PER_MINUTE
+                + second * MILLIS_PER_SECOND
+                + millis
+                - offsetMillis;
+    }
+
+    /**
+     * Format a time as an ISO-8601 UTC date-time, e.g. 2019-04-22T10:15:30.000Z
+     * @param epochMillis - The time in milliseconds since the epoch
+     * @return
+     */
+    public static String format(long epochMillis){
+        // Floor division, so times before the epoch fall on the previous day
+        long days = epochMillis / MILLIS_PER_DAY;
+        long millisOfDay = epochMillis % MILLIS_PER_DAY;
+        if(millisOfDay < 0){
+            days--;
+            millisOfDay += MILLIS_PER_DAY;
+        }
+
+        // Convert days since the epoch to a civil date
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        char[] out = new char[24];
+        writeDigits(out, 0, year, 4);
+        out[4] = '-';
+        writeDigits(out, 5, month, 2);
+        out[7] = '-';
+        writeDigits(out, 8, day, 2);
+        out[10] = 'T';
+        writeDigits(out, 11, (int) (millisOfDay / MILLIS_PER_HOUR), 2);
+        out[13] = ':';
+        writeDigits(out, 14, (int) (millisOfDay / MILLIS_PER_MINUTE % 60), 2);
+        out[16] = ':';
+        writeDigits(out, 17, (int) (millisOfDay / MILLIS_PER_SECOND % 60), 2);
+        out[19] = '.';
+        writeDigits(out, 20, (int) (millisOfDay % MILLIS_PER_SECOND), 3);
+        out[23] = 'Z';
+
+        return new String(out);
+    }
+
+    /**
+     * Number of days from 1970-01-01 to the given (proleptic Gregorian) date
+     * @param year
+     * @param month - 1 to 12
+     * @param day - 1 to 31
+     * @return
+     */
+    private static long daysFromCivil(int year, int month, int day){
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Read a fixed number of decimal digits
+     * @param value
+     * @param start
+     * @param count
+     * @return
+     */
+    private static int readDigits(String value, int start, int count){
+        if(start + count > value.length()){
+            throw invalid(value);
+        }
+
+        int result = 0;
+        for(int i = start; i < start + count; i++){
+            char c = value.charAt(i);
+            if(!isDigit(c)){
+                throw invalid(value);
+            }
+            result = result * 10 + (c - '0');
+        }
+
+        return result;
+    }
+
+    /**
+     * Write a number as a fixed number of zero-padded decimal digits
+     * @param out
+     * @param start
+     * @param number
+     * @param count
+     */
+    private static void writeDigits(char[] out, int start, int number, int count){
+        for(int i = start + count - 1; i >= start; i--){
+            out[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+    }
+
+    /**
+     * Check if a character is an ASCII digit
+     * @param c
+     * @return
+     */
+    private static boolean isDigit(char c){
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Create the exception thrown for an unsupported value
+     * @param value
+     * @return
+     */
+    private static IllegalArgumentException invalid(String value){
+        return new IllegalArgumentException("Not an ISO-8601 date-time: " + value);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.util;
+
+import android.util.Log;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Iso8601DateAdapter.java
+ *
+ * Gson type adapter that reads and writes dates as ISO-8601 strings using Iso8601.
+ * Dates written by Gson's default adapter (e.g. users saved in the shared preferences
+ * before this adapter existed) are still read, through a slower fallback. A date that can't be
+ * read at all is read as null rather than failing the whole response.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class Iso8601DateAdapter extends TypeAdapter<Date> {
+
+    private static final String TAG = Iso8601DateAdapter.class.getSimpleName();
+
+    /**
+     * Write a date as an ISO-8601 UTC string
+     * @param out
+     * @param date
+     * @throws IOException
+     */
+    @Override
+    public void write(JsonWriter out, Date date) throws IOException {
+        if(date == null){
+            out.nullValue();
+            return;
+        }
+
+        out.value(Iso8601.format(date.getTime()));
+    }
+
+    /**
+     * Read an ISO-8601 date string
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public Date read(JsonReader in) throws IOException {
+        if(in.peek() == JsonToken.NULL){
+            in.nextNull();
+            return null;
+        }
+
+        String value = in.nextString();
+        try{
+            return new Date(Iso8601.parse(value));
+        }catch(IllegalArgumentException e){
+            return readLegacyDate(value);
+        }
+    }
+
+    /**
+     * Read a date in the format written by Gson's default date adapter
+     * @param value
+     * @return The date, or null if the value isn't a date in either format
+     */
+    private Date readLegacyDate(String value){
+        try{
+            return DateFormat.getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT, Locale.US).parse(value);
+        }catch(ParseException e){
+            Log.w(TAG, "Ignoring unreadable date " + value);
+            return null;
+        }
+    }
+}
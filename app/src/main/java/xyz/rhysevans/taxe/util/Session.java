@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.util;
+
+import android.content.Context;
+
+import xyz.rhysevans.taxe.data.BookingStore;
+import xyz.rhysevans.taxe.network.NetworkUtil;
+import xyz.rhysevans.taxe.network.OfflineWriteQueue;
+import xyz.rhysevans.taxe.viewmodel.BookingCache;
+import xyz.rhysevans.taxe.viewmodel.BookingSyncEngine;
+import xyz.rhysevans.taxe.viewmodel.SessionBootstrap;
+
+/**
+ * Session.java
+ *
+ * Ends the logged in session, removing everything kept for the user so nothing is left
+ * behind for the next user to log in on the device.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public final class Session {
+
+    /**
+     * Private constructor, static methods only
+     */
+    private Session(){}
+
+    /**
+     * Log the user out: delete the saved session, cached responses, unsent writes, the position
+     * in the booking event stream and any bookings kept on the device or in memory. Blocks until
+     * the session is deleted from disk, so the user stays logged out even if the app is killed
+     * straight after
+     * @param context
+     */
+    public static void logout(Context context){
+        SharedPreferencesManager sharedPreferencesManager = SharedPreferencesManager.getInstance(context);
+        sharedPreferencesManager.deleteAll();
+
+        NetworkUtil.evictCache();
+        NetworkUtil.getBookingEventStream().reset();
+        OfflineWriteQueue.getInstance().clear();
+        // Cleared first, so responses still in flight are dropped rather than stored
+        BookingStore.getInstance().clear();
+        SessionBootstrap.getInstance().clear();
+        BookingSyncEngine.getInstance().clear();
+        BookingCache.clear();
+
+        sharedPreferencesManager.flush();
+    }
+}
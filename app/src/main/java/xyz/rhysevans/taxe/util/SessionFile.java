@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import xyz.rhysevans.taxe.model.User;
+
+/**
+ * SessionFile.java
+ *
+ * Small binary file holding the logged in session: the access token and the user's id, name,
+ * email, role, company, availability and creation date (the user's booking IDs are not kept,
+ * they can grow without bound and the session never needs them). It is read in full with a
+ * single small read when the app starts, instead of parsing a JSON user out of the shared
+ * preferences XML.
+ *
+ * Layout: a magic number and format version, then each field in order. Strings are written
+ * as a presence flag followed by modified UTF-8. A file with an unknown magic number or
+ * version is treated as no session.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+final class SessionFile {
+
+    private static final int MAGIC = 0x54584553;
+    private static final int VERSION = 1;
+
+    private final File file;
+
+    /**
+     * The contents of a session file
+     */
+    static final class Session {
+
+        final String token;
+        final User user;
+
+        /**
+         * Default Constructor
+         * @param token
+         * @param user
+         */
+        Session(String token, User user){
+            this.token = token;
+            this.user = user;
+        }
+    }
+
+    /**
+     * Default Constructor
+     * @param file
+     */
+    SessionFile(File file){
+        this.file = file;
+    }
+
+    /**
+     * Check if a session has been written
+     * @return
+     */
+    boolean exists(){
+        return file.exists();
+    }
+
+    /**
+     * Read the session
+     * @return the session, or null if the file is missing, unreadable or of an unknown version
+     */
+    Session read(){
+        if(!file.exists()){
+            return null;
+        }
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+            if(in.readInt() != MAGIC || in.readUnsignedByte() != VERSION){
+                return null;
+            }
+
+            String token = readString(in);
+            if(!in.readBoolean()){
+                return new Session(token, null);
+            }
+
+            String id = readString(in);
+            String name = readString(in);
+            String email = readString(in);
+            String role = readString(in);
+            String company = readString(in);
+            boolean available = in.readBoolean();
+            long createdAt = in.readLong();
+
+            User user = new User(id, name, email, role, createdAt != Long.MIN_VALUE ? new Date(createdAt) : null);
+            user.setCompany(company);
+            user.setAvailable(available);
+
+            return new Session(token, user);
+        }catch(IOException e){
+            return null;
+        }
+    }
+
+    /**
+     * Write the session, replacing the file. The session is written to a temporary file and
+     * renamed over the old one, so a crash leaves one or the other intact
+     * @param token
+     * @param user
+     * @throws IOException
+     */
+    void write(String token, User user) throws IOException {
+        File written = new File(file.getPath() + ".tmp");
+
+        try(FileOutputStream fileOut = new FileOutputStream(written)){
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            writeString(out, token);
+
+            out.writeBoolean(user != null);
+            if(user != null){
+                writeString(out, user.getId());
+                writeString(out, user.getName());
+                writeString(out, user.getEmail());
+                writeString(out, user.getRole());
+                writeString(out, user.getCompany());
+                out.writeBoolean(user.isAvailable());
+                out.writeLong(user.getCreatedAt() != null ? user.getCreatedAt().getTime() : Long.MIN_VALUE);
+            }
+
+            out.flush();
+            fileOut.getFD().sync();
+        }
+
+        if(!written.renameTo(file)){
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Delete the session
+     * @throws IOException if the file is still there afterwards
+     */
+    void delete() throws IOException {
+        if(!file.delete() && file.exists()){
+            throw new IOException("Could not delete " + file);
+        }
+    }
+
+    /**
+     * Write a string that may be null
+     * @param out
+     * @param value
+     * @throws IOException
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if(value != null){
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Read a string written by writeString()
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
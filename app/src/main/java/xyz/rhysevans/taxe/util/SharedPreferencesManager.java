@@ -9,42 +9,119 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import xyz.rhysevans.taxe.model.User;
 
 /**
  * SharedPreferencesManager.java
  *
- * A singleton utility class to manage all shared preferences, intended
- * purpose is to provide a layer of abstraction and allow for cleaner
- * handling of shared preferences
+ * A singleton utility class to manage the logged in session (access token and user), intended
+ * purpose is to provide a layer of abstraction and allow for cleaner handling of the session.
+ *
+ * The session is kept in a small binary SessionFile, read once when the manager is created.
+ * Sessions saved by earlier versions of the app as JSON in the shared preferences are moved
+ * into the file the first time the app starts, and then removed from the shared preferences.
+ *
+ * The session is read from memory. Changes are applied in memory straight away and written to
+ * disk on the "session-io" thread: changes made while a write is waiting are batched into it,
+ * and writes are made in the order the changes were. flush() waits for everything changed so
+ * far to be written. All methods are thread-safe.
  * @author Rhys Evans
  * @version 0.1
  */
 public class SharedPreferencesManager {
 
+    private static final String TAG = SharedPreferencesManager.class.getSimpleName();
+
+    /**
+     * Name of the session file, inside the app's files dir
+     */
+    private static final String SESSION_FILE = "session.bin";
+
     /**
      * Initialize instance of manager singleton
      */
     private static SharedPreferencesManager INSTANCE = null;
 
     /**
-     * The shared preferences object
+     * The file the session is kept in
+     */
+    private final SessionFile sessionFile;
+
+    /**
+     * Writes are made one at a time, in order, on their own thread
      */
-    private static SharedPreferences sharedPreferences;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "session-io"));
 
     /**
-     * The editor object of the shared preferences
+     * In-memory copy of the access token, so the network layer can read it
+     * on every request without touching the disk (null if logged out)
      */
-    private static SharedPreferences.Editor editor;
+    private volatile String cachedToken;
 
     /**
-     * Empty, private constructor to enforce singleton
+     * The saved user, never handed out directly (only copies of it) (guarded by this)
      */
-    private SharedPreferencesManager(){}
+    private User cachedUser;
+
+    // Set while a write of the session is waiting to run (guarded by this)
+    private boolean writeScheduled;
+
+    // Shared preferences holding a session from an earlier version, cleared once the
+    // session has been written to the session file (guarded by this)
+    private SharedPreferences legacyPreferences;
+
+    /**
+     * Listeners notified when the saved user changes
+     */
+    private final CopyOnWriteArrayList<OnUserChangedListener> userListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Listener for changes to the saved user, e.g. to update the nav bar when the user's role changes
+     */
+    public interface OnUserChangedListener {
+
+        /**
+         * Called after the saved user has changed, on the thread that changed it
+         * @param user - A copy of the new user, or null if it was deleted
+         */
+        void onUserChanged(@Nullable User user);
+    }
+
+    /**
+     * Private constructor to enforce singleton
+     * @param sessionFile
+     */
+    private SharedPreferencesManager(SessionFile sessionFile){
+        this.sessionFile = sessionFile;
+    }
+
+    /**
+     * Open a manager on a session file and read back its session, without moving a session
+     * from the shared preferences, e.g. in tests
+     * @param file
+     * @return
+     */
+    @VisibleForTesting
+    static SharedPreferencesManager open(File file){
+        SharedPreferencesManager manager = new SharedPreferencesManager(new SessionFile(file));
+        if(manager.sessionFile.exists()){
+            manager.load();
+        }
+
+        return manager;
+    }
 
     /**
      * Returns the instance of the Shared Preferences Manager
@@ -53,18 +130,21 @@ public class SharedPreferencesManager {
      */
     public static synchronized SharedPreferencesManager getInstance(Context context){
         if(INSTANCE == null){
-            sharedPreferences = context.getSharedPreferences(context.getPackageName(), Activity.MODE_PRIVATE);
-            editor = sharedPreferences.edit();
+            long start = System.nanoTime();
+
+            INSTANCE = open(new File(context.getFilesDir(), SESSION_FILE));
+            if(!INSTANCE.sessionFile.exists()){
+                INSTANCE.migrate(context.getSharedPreferences(context.getPackageName(), Activity.MODE_PRIVATE));
+            }
 
-            INSTANCE = new SharedPreferencesManager();
+            StartupTimer.onSessionLoaded(System.nanoTime() - start);
         }
 
         return INSTANCE;
     }
 
     /**
-     * Store a user in the shared preferences by converting to json using
-     * Gson
+     * Store a user in the session
      * @param user
      */
     public void putUser(User user){
@@ -73,45 +153,64 @@ public class SharedPreferencesManager {
             user.setPassword(null);
         }
 
-        // Convert object to JSON using Gson
-        Gson gson = new Gson();
-        String userJson = gson.toJson(user);
-        editor.putString(Constants.USER_KEY, userJson);
-        editor.commit();
+        synchronized(this){
+            cachedUser = new User(user);
+            scheduleWrite();
+        }
+
+        notifyUserChanged(user);
     }
 
     /**
-     * Retrieves a user from the shared preferences
+     * Retrieves a copy of the saved user
      * @returns User - The user
      */
     @Nullable
-    public User getUser(){
-        Gson gson = new Gson();
-        String userJson = sharedPreferences.getString(Constants.USER_KEY, "NO_USER_FOUND");
+    public synchronized User getUser(){
+        return cachedUser != null ? new User(cachedUser) : null;
+    }
 
-        // Attempt to serialize json, if userJson is invalid or malformed, return null
-        try{
-            return gson.fromJson(userJson, User.class);
-        }catch(JsonParseException e){
-            return null;
-        }
+    /**
+     * Register a listener to be notified when the saved user changes
+     * @param listener
+     */
+    public void addOnUserChangedListener(OnUserChangedListener listener){
+        userListeners.addIfAbsent(listener);
     }
 
     /**
-     * Save the access token to the shared preferences
+     * Unregister a listener added with addOnUserChangedListener()
+     * @param listener
+     */
+    public void removeOnUserChangedListener(OnUserChangedListener listener){
+        userListeners.remove(listener);
+    }
+
+    /**
+     * Save the access token in the session
      * @param token
      */
-    public void putToken(String token){
-        editor.putString(Constants.TOKEN_KEY, token);
-        editor.apply();
+    public synchronized void putToken(String token){
+        cachedToken = token;
+        scheduleWrite();
     }
 
     /**
-     * Retrieve the token from the shared preferences
+     * Retrieve the token from the session
      * @return
      */
     public String getToken(){
-        return sharedPreferences.getString(Constants.TOKEN_KEY, "NO_TOKEN_FOUND");
+        String token = cachedToken;
+        return token != null ? token : "NO_TOKEN_FOUND";
+    }
+
+    /**
+     * Retrieve the in-memory copy of the token
+     * @return The token, or null if no token is saved
+     */
+    @Nullable
+    public String getCachedToken(){
+        return cachedToken;
     }
 
     /**
@@ -119,30 +218,145 @@ public class SharedPreferencesManager {
      * @return
      */
     public boolean isTokenPresent(){
-        return sharedPreferences.contains(Constants.TOKEN_KEY);
+        return cachedToken != null;
     }
 
     /**
      * Check if user is saved.
      * @return
      */
-    public boolean isUserPresent(){
-        return sharedPreferences.contains(Constants.USER_KEY);
+    public synchronized boolean isUserPresent(){
+        return cachedUser != null;
     }
 
     /**
-     * Delete token from shared preferences
+     * Delete token from the session
      */
-    public void deleteToken(){
-        editor.remove(Constants.TOKEN_KEY);
-        editor.apply();
+    public synchronized void deleteToken(){
+        cachedToken = null;
+        scheduleWrite();
     }
 
     /**
-     * Delete all shared preferences
+     * Delete the whole session. Call flush() to wait until it is deleted from disk
      */
     public void deleteAll(){
-        editor.clear();
-        editor.apply();
+        synchronized(this){
+            cachedToken = null;
+            cachedUser = null;
+            scheduleWrite();
+        }
+
+        notifyUserChanged(null);
+    }
+
+    /**
+     * Block until every change made so far has been written to disk, e.g. before
+     * leaving the app on logout. Must not be called from the session-io thread
+     */
+    public void flush(){
+        try{
+            // Writes run in order, so once this has run every earlier write has too
+            ioExecutor.submit(() -> {}).get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException e){
+            Log.w(TAG, "Failed to flush the session", e);
+        }
+    }
+
+    /**
+     * Read the session from the session file
+     */
+    private void load(){
+        SessionFile.Session session = sessionFile.read();
+        if(session != null){
+            cachedToken = session.token;
+            cachedUser = session.user;
+        }
+    }
+
+    /**
+     * Read a session saved by an earlier version of the app in the shared preferences,
+     * and move it into the session file
+     * @param preferences
+     */
+    private synchronized void migrate(SharedPreferences preferences){
+        cachedToken = preferences.getString(Constants.TOKEN_KEY, null);
+
+        // Attempt to serialize json, if the user is invalid or malformed, ignore it
+        String userJson = preferences.getString(Constants.USER_KEY, null);
+        if(userJson != null){
+            try{
+                cachedUser = GsonUtil.getGson().fromJson(userJson, User.class);
+            }catch(JsonParseException e){
+                cachedUser = null;
+            }
+        }
+
+        if(cachedToken != null || cachedUser != null){
+            legacyPreferences = preferences;
+            scheduleWrite();
+        }
+    }
+
+    /**
+     * Schedule a write of the session, unless one is already waiting to run
+     * (it will write the latest session). Must be called while holding the lock
+     */
+    private void scheduleWrite(){
+        if(!writeScheduled){
+            writeScheduled = true;
+            ioExecutor.execute(this::writeSession);
+        }
+    }
+
+    /**
+     * Write the latest session to disk, on the session-io thread
+     */
+    private void writeSession(){
+        String token;
+        User user;
+        SharedPreferences legacy;
+        synchronized(this){
+            token = cachedToken;
+            user = cachedUser != null ? new User(cachedUser) : null;
+            legacy = legacyPreferences;
+            legacyPreferences = null;
+            writeScheduled = false;
+        }
+
+        try{
+            if(token == null && user == null){
+                sessionFile.delete();
+            }else{
+                sessionFile.write(token, user);
+            }
+
+            // Only forget the old copy of the session once the new one is on disk
+            // (other values may share the file, so only the session's keys are removed)
+            if(legacy != null){
+                legacy.edit().remove(Constants.TOKEN_KEY).remove(Constants.USER_KEY).commit();
+            }
+        }catch(IOException e){
+            Log.w(TAG, "Failed to write the session", e);
+
+            // Try moving the old copy again with the next write
+            synchronized(this){
+                if(legacyPreferences == null){
+                    legacyPreferences = legacy;
+                }
+            }
+        }
+    }
+
+    /**
+     * Notify the listeners of a change to the saved user, each gets its own copy
+     * @param user
+     */
+    private void notifyUserChanged(User user){
+        for(OnUserChangedListener listener : userListeners){
+            listener.onUserChanged(user != null ? new User(user) : null);
+        }
     }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.util;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StartupTimer.java
+ *
+ * Measures how long a cold start takes, from the app's process starting to the first frame of
+ * the first activity, and how much of it was spent loading the saved session.
+ * The results are logged once per process.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public final class StartupTimer {
+
+    private static final String TAG = StartupTimer.class.getSimpleName();
+
+    // When the process started (elapsedRealtime millis), 0 before onProcessStart()
+    private static long processStart;
+
+    private static volatile long coldStartMillis = -1;
+    private static volatile long sessionLoadMicros = -1;
+
+    /**
+     * Private constructor, static methods only
+     */
+    private StartupTimer(){}
+
+    /**
+     * Record the start of the process, must be called first thing in Application.onCreate()
+     */
+    public static void onProcessStart(){
+        // On N and above the time the process was forked is known, which includes the app's class loading
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N){
+            processStart = Process.getStartElapsedRealtime();
+        }else{
+            processStart = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Record how long the saved session took to load
+     * @param nanos
+     */
+    static void onSessionLoaded(long nanos){
+        sessionLoadMicros = TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * Record the cold start once the activity draws its first frame. Only the first
+     * activity of the process is measured
+     * @param activity
+     */
+    public static void onActivityCreated(Activity activity){
+        if(processStart == 0 || coldStartMillis != -1){
+            return;
+        }
+
+        View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+
+                if(coldStartMillis == -1){
+                    coldStartMillis = SystemClock.elapsedRealtime() - processStart;
+                    Log.i(TAG, "Cold start to first frame: " + coldStartMillis + "ms (session loaded in "
+                            + sessionLoadMicros + "us)");
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Get the time from the process starting to the first frame
+     * @return the time in milliseconds, or -1 if it hasn't been measured
+     */
+    public static long getColdStartMillis(){
+        return coldStartMillis;
+    }
+
+    /**
+     * Get the time taken to load the saved session
+     * @return the time in microseconds, or -1 if it hasn't been loaded
+     */
+    public static long getSessionLoadMicros(){
+        return sessionLoadMicros;
+    }
+}
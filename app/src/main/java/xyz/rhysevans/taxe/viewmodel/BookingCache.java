@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.viewmodel;
+
+import android.util.LruCache;
+
+import xyz.rhysevans.taxe.model.Booking;
+
+/**
+ * BookingCache.java
+ *
+ * In-memory cache of the most recently fetched bookings (fully populated, as returned by
+ * getBooking), so a booking's screen can be shown straight away while it is refreshed.
+ * Filled by BookingViewModel when bookings are fetched or prefetched, and cleared on logout.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingCache {
+
+    /**
+     * Maximum number of bookings kept
+     */
+    private static final int MAX_BOOKINGS = 100;
+
+    private static final LruCache<String, Booking> bookings = new LruCache<>(MAX_BOOKINGS);
+
+    /**
+     * Private constructor, static methods only
+     */
+    private BookingCache(){}
+
+    /**
+     * Get a cached booking
+     * @param bookingId
+     * @return the booking, or null if it isn't cached
+     */
+    static Booking get(String bookingId){
+        return bookings.get(bookingId);
+    }
+
+    /**
+     * Check if a booking is cached
+     * @param bookingId
+     * @return
+     */
+    static boolean contains(String bookingId){
+        return bookings.get(bookingId) != null;
+    }
+
+    /**
+     * Cache a booking
+     * @param booking
+     */
+    static void put(Booking booking){
+        if(booking != null && booking.getId() != null){
+            bookings.put(booking.getId(), booking);
+        }
+    }
+
+    /**
+     * Remove a booking, e.g. after it was edited
+     * @param bookingId
+     */
+    static void remove(String bookingId){
+        bookings.remove(bookingId);
+    }
+
+    /**
+     * Remove every booking, e.g. on logout
+     */
+    public static void clear(){
+        bookings.evictAll();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.viewmodel;
+
+import java.util.ArrayList;
+
+import rx.Observable;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import xyz.rhysevans.taxe.data.BookingStore;
+import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.network.NetworkUtil;
+import xyz.rhysevans.taxe.network.RetryPolicy;
+
+/**
+ * BookingPager.java
+ *
+ * Paged data source for a user's booking history. Pages are requested newest first, using the
+ * ID of the last booking received as the cursor for the next page, so only one page has to be
+ * downloaded before the first screen can be shown.
+ *
+ * Loaded pages are also written to the BookingStore and recorded by the BookingSyncEngine,
+ * so the history can later be refreshed with a delta sync.
+ *
+ * All methods must be called from the main thread.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingPager {
+
+    private final String userId;
+    private final int pageSize;
+
+    // The ID of the oldest booking loaded so far (null before the first page)
+    private String cursor;
+    private boolean hasMore = true;
+    private boolean loading;
+
+    // Incremented on every reset so that responses from before a reset are ignored
+    private int generation;
+
+    /**
+     * Default Constructor
+     * @param userId - The user whose bookings are paged
+     * @param pageSize - The number of bookings per page
+     */
+    public BookingPager(String userId, int pageSize){
+        this.userId = userId;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Start again from the newest booking and load the first page. The page stored on the
+     * device is emitted first, if there is one
+     * @param onOffline - Called if the API can't be reached and the stored page is kept
+     * @return
+     */
+    public Observable<ArrayList<Booking>> loadFirstPage(Action0 onOffline){
+        generation++;
+        cursor = null;
+        hasMore = true;
+        loading = false;
+
+        BookingStore store = BookingStore.getInstance();
+        return StoreFirst.of(() -> store.getUserBookings(userId, pageSize), loadNextPage(), onOffline)
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Load the page after the last one loaded. Completes without emitting if a page is
+     * already loading or the last page has been reached
+     * @return
+     */
+    public Observable<ArrayList<Booking>> loadNextPage(){
+        if(loading || !hasMore){
+            return Observable.empty();
+        }
+
+        loading = true;
+        final int requestGeneration = generation;
+        final boolean firstPage = cursor == null;
+        BookingStore.Writer writer = BookingStore.getInstance().writer();
+
+        return NetworkUtil.getRetrofit().getUserBookings(userId, pageSize, cursor)
+                .compose(RetryPolicy.getDefault().retry())
+                .doOnNext(writer::putAll)
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                // Drop pages that belong to a list from before the last reset
+                .filter(page -> requestGeneration == generation)
+                .doOnNext(page -> {
+                    BookingSyncEngine.getInstance().onPageLoaded(userId, page, firstPage);
+
+                    // A short page means there is nothing older left
+                    hasMore = page.size() >= pageSize;
+                    if(!page.isEmpty()){
+                        cursor = page.get(page.size() - 1).getId();
+                    }
+                })
+                .doOnTerminate(() -> onLoadFinished(requestGeneration))
+                .doOnUnsubscribe(() -> onLoadFinished(requestGeneration));
+    }
+
+    /**
+     * Check if there are more (older) pages to load
+     * @return
+     */
+    public boolean hasMore(){
+        return hasMore;
+    }
+
+    /**
+     * Check if a page is currently loading
+     * @return
+     */
+    public boolean isLoading(){
+        return loading;
+    }
+
+    /**
+     * Clear the loading flag once a request of the current generation has finished
+     * @param requestGeneration
+     */
+    private void onLoadFinished(int requestGeneration){
+        if(requestGeneration == generation){
+            loading = false;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.viewmodel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Func0;
+import rx.schedulers.Schedulers;
+import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.network.NetworkUtil;
+import xyz.rhysevans.taxe.util.AppForegroundTracker;
+import xyz.rhysevans.taxe.util.BookingStatus;
+
+/**
+ * BookingPollingScheduler.java
+ *
+ * Polls the API for changes to a booking, or to the user's active bookings, as a fallback for
+ * when the booking event stream is not connected. The interval depends on the bookings' state:
+ * - In progress / arrived: fast, the status is about to change
+ * - Pending: faster the closer the pickup time is
+ * - Finished / cancelled, or no bookings: slow
+ * Each poll that returns the same bookings doubles the interval (up to a limit), and any change
+ * resets it. Polling is paused while the app is in the background and skipped while the
+ * event stream is connected.
+ *
+ * The screen tells the scheduler which bookings it shows (see seed()), so the first poll waits
+ * an interval rather than repeating the screen's own request, and only changes are emitted.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingPollingScheduler {
+
+    /**
+     * Intervals (in milliseconds) for the different booking states
+     */
+    static final long FAST_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+    static final long PICKUP_SOON_INTERVAL = TimeUnit.SECONDS.toMillis(20);
+    static final long PICKUP_LATER_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    static final long SLOW_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * How close the pickup time has to be for a pending booking to be polled faster
+     */
+    private static final long PICKUP_SOON = TimeUnit.MINUTES.toMillis(15);
+    private static final long PICKUP_LATER = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Maximum number of times the interval is doubled while nothing changes
+     */
+    private static final int MAX_BACKOFF_STEPS = 4;
+
+    private final Func0<Observable<ArrayList<Booking>>> request;
+    private final Scheduler scheduler;
+    private final Observable<Boolean> foreground;
+    private final Func0<Boolean> pushConnected;
+
+    // All of the following are guarded by this
+    private String lastFingerprint;
+    private int unchangedPolls;
+    private long baseInterval = SLOW_INTERVAL;
+
+    /**
+     * Constructor
+     * @param request - Fetches the bookings being polled
+     * @param scheduler - Scheduler the intervals are timed on (e.g. a TestScheduler in tests)
+     * @param foreground - Emits whether polling is allowed (the app is in the foreground)
+     * @param pushConnected - Returns true if changes are being pushed, so a poll can be skipped
+     */
+    public BookingPollingScheduler(Func0<Observable<ArrayList<Booking>>> request, Scheduler scheduler,
+                                   Observable<Boolean> foreground, Func0<Boolean> pushConnected){
+        this.request = request;
+        this.scheduler = scheduler;
+        this.foreground = foreground;
+        this.pushConnected = pushConnected;
+    }
+
+    /**
+     * Create a scheduler polling a single booking
+     * @param bookingId
+     * @return
+     */
+    public static BookingPollingScheduler forBooking(String bookingId){
+        return create(() -> NetworkUtil.getBookingBatcher().get(bookingId)
+                .map(booking -> {
+                    ArrayList<Booking> bookings = new ArrayList<>();
+                    bookings.add(booking);
+                    return bookings;
+                }));
+    }
+
+    /**
+     * Create a scheduler polling a user's active bookings
+     * @param userId
+     * @return
+     */
+    public static BookingPollingScheduler forActiveBookings(String userId){
+        return create(() -> NetworkUtil.getRetrofit().getUserBookings(userId, true));
+    }
+
+    /**
+     * Create a scheduler paused in the background and skipped while the event stream is connected
+     * @param request
+     * @return
+     */
+    private static BookingPollingScheduler create(Func0<Observable<ArrayList<Booking>>> request){
+        return new BookingPollingScheduler(request, Schedulers.computation(), AppForegroundTracker.foreground(),
+                () -> NetworkUtil.getBookingEventStream().isConnected());
+    }
+
+    /**
+     * Start polling, the first poll is sent after one interval. The bookings are emitted (on the
+     * main thread) whenever they differ from the ones last seen. When the app comes back from the
+     * background a poll is sent straight away. Polling stops when unsubscribed
+     * @return
+     */
+    public Observable<ArrayList<Booking>> start(){
+        return Observable.defer(() -> {
+            AtomicBoolean wasInBackground = new AtomicBoolean();
+            return foreground.switchMap(inForeground -> {
+                if(!inForeground){
+                    wasInBackground.set(true);
+                    return Observable.<ArrayList<Booking>>empty();
+                }
+
+                return poll(wasInBackground.get());
+            });
+        }).observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Record the bookings the screen currently shows (e.g. just loaded), so polls returning the
+     * same bookings aren't emitted, and time the next polls for them
+     * @param bookings
+     */
+    public synchronized void seed(List<Booking> bookings){
+        baseInterval = getIntervalFor(bookings, scheduler.now());
+        lastFingerprint = fingerprintOf(bookings);
+        unchangedPolls = 0;
+    }
+
+    /**
+     * Get the current interval (in milliseconds) between two polls, including any backoff
+     * @return
+     */
+    public synchronized long getCurrentInterval(){
+        return Math.min(SLOW_INTERVAL, baseInterval << Math.min(unchangedPolls, MAX_BACKOFF_STEPS));
+    }
+
+    /**
+     * Poll after each interval until unsubscribed
+     * @param immediately - If true, the first poll is sent straight away
+     * @return
+     */
+    private Observable<ArrayList<Booking>> poll(boolean immediately){
+        Observable<ArrayList<Booking>> once = Observable.defer(() -> pushConnected.call() ? Observable.<ArrayList<Booking>>empty() : request.call())
+                .filter(this::onPollResult)
+                // Errors are treated like an unchanged poll, backing off
+                .onErrorResumeNext(error -> {
+                    onPollError();
+                    return Observable.empty();
+                });
+
+        // The interval is read again before each wait, as the last poll may have changed it
+        Observable<ArrayList<Booking>> repeated = Observable.defer(() -> Observable.timer(getCurrentInterval(), TimeUnit.MILLISECONDS, scheduler))
+                .concatMap(tick -> once)
+                .repeat();
+
+        return immediately ? once.concatWith(repeated) : repeated;
+    }
+
+    /**
+     * Record the result of a poll and update the interval
+     * @param bookings
+     * @return true if the bookings changed since the last poll
+     */
+    private synchronized boolean onPollResult(List<Booking> bookings){
+        baseInterval = getIntervalFor(bookings, scheduler.now());
+
+        String fingerprint = fingerprintOf(bookings);
+        if(fingerprint.equals(lastFingerprint)){
+            unchangedPolls++;
+            return false;
+        }
+
+        lastFingerprint = fingerprint;
+        unchangedPolls = 0;
+        return true;
+    }
+
+    /**
+     * Back off after a failed poll
+     */
+    private synchronized void onPollError(){
+        unchangedPolls++;
+    }
+
+    /**
+     * Get the base interval for a set of bookings, the fastest needed by any of them
+     * @param bookings
+     * @param now - Current time in epoch milliseconds
+     * @return
+     */
+    static long getIntervalFor(List<Booking> bookings, long now){
+        long interval = SLOW_INTERVAL;
+        for(Booking booking : bookings){
+            interval = Math.min(interval, getIntervalFor(booking, now));
+        }
+
+        return interval;
+    }
+
+    /**
+     * Get the base interval for a single booking
+     * @param booking
+     * @param now - Current time in epoch milliseconds
+     * @return
+     */
+    private static long getIntervalFor(Booking booking, long now){
+        BookingStatus status = booking.getStatus();
+
+        if(status == BookingStatus.In_Progress || status == BookingStatus.Arrived){
+            return FAST_INTERVAL;
+        }
+
+        if(status == BookingStatus.Pending && booking.getTime() != null){
+            long untilPickup = booking.getTime().getTime() - now;
+            if(untilPickup <= PICKUP_SOON){
+                return PICKUP_SOON_INTERVAL;
+            }
+            if(untilPickup <= PICKUP_LATER){
+                return PICKUP_LATER_INTERVAL;
+            }
+        }
+
+        return SLOW_INTERVAL;
+    }
+
+    /**
+     * Summarise the fields of the bookings the screens show, to tell if a poll changed anything
+     * @param bookings
+     * @return
+     */
+    private static String fingerprintOf(List<Booking> bookings){
+        StringBuilder fingerprint = new StringBuilder();
+        for(Booking booking : bookings){
+            fingerprint.append(booking.getId()).append(':')
+                    .append(booking.getStatus()).append(':')
+                    .append(booking.getDriver() != null ? booking.getDriver().getId() : null).append(':')
+                    .append(booking.getNotes() != null ? booking.getNotes().size() : 0).append(':')
+                    .append(booking.getUpdatedAt() != null ? booking.getUpdatedAt().getTime() : 0).append(';');
+        }
+
+        return fingerprint.toString();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.viewmodel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import rx.Observable;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.schedulers.Schedulers;
+import xyz.rhysevans.taxe.data.BookingStore;
+import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.network.NetworkUtil;
+import xyz.rhysevans.taxe.network.RetryPolicy;
+import xyz.rhysevans.taxe.util.Iso8601;
+
+/**
+ * BookingSyncEngine.java
+ *
+ * Keeps the BookingStore's copy of each user's booking history in step with the API by only
+ * downloading the bookings that changed since the last sync, so a refresh costs as much as the
+ * number of changes rather than the size of the history.
+ *
+ * The bookings themselves live in the store, the engine only keeps how far back each user's
+ * history has been loaded by their BookingPager and a watermark, the latest updated_at seen
+ * from the API (so the device's clock is never used). A sync asks for bookings updated at or
+ * after the watermark and writes them to the store:
+ * - Bookings already stored are replaced
+ * - Deleted bookings (tombstones) are removed
+ * - New bookings are added
+ * The history returned goes back to the oldest booking the pager has loaded, older bookings
+ * are left for the pager to load later.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingSyncEngine {
+
+    private static BookingSyncEngine INSTANCE = null;
+
+    /**
+     * The sync state of each user (guarded by this)
+     */
+    private final Map<String, SyncState> states = new HashMap<>();
+
+    // The number of bookings downloaded by the last sync
+    private volatile int lastChangeCount;
+
+    /**
+     * Private constructor to enforce singleton
+     */
+    private BookingSyncEngine(){}
+
+    /**
+     * Returns the instance of the sync engine
+     * @return
+     */
+    public static synchronized BookingSyncEngine getInstance(){
+        if(INSTANCE == null){
+            INSTANCE = new BookingSyncEngine();
+        }
+
+        return INSTANCE;
+    }
+
+    /**
+     * Check if a user's history has been loaded, so it can be synced rather than reloaded
+     * @param userId
+     * @return
+     */
+    public synchronized boolean canSync(String userId){
+        SyncState state = states.get(userId);
+        return state != null && state.watermark > 0 && state.oldestId != null;
+    }
+
+    /**
+     * Download the bookings changed since the last sync and write them to the store
+     * @param userId
+     * @return the user's stored bookings, newest first
+     */
+    public Observable<ArrayList<Booking>> sync(String userId){
+        String updatedSince;
+        synchronized(this){
+            updatedSince = Iso8601.format(getState(userId).watermark);
+        }
+
+        // Taken now, so changes arriving after logout aren't stored
+        BookingStore.Writer writer = BookingStore.getInstance().writer();
+
+        return NetworkUtil.coalesce("syncUserBookings/" + userId, () -> NetworkUtil.getRetrofit().getUserBookingsUpdatedSince(userId, updatedSince)
+                .compose(RetryPolicy.getDefault().retry()))
+                .map(changes -> {
+                    lastChangeCount = changes.size();
+                    return applyChanges(userId, changes, writer);
+                })
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Record a page of the user's history loaded by the pager (which writes it to the store)
+     * @param userId
+     * @param page
+     * @param firstPage - If true, the history is loaded again from the start
+     */
+    synchronized void onPageLoaded(String userId, List<Booking> page, boolean firstPage){
+        SyncState state = getState(userId);
+        if(firstPage){
+            state.oldestId = null;
+            state.watermark = 0;
+        }
+
+        for(Booking booking : page){
+            state.advanceWatermark(booking);
+            if(state.oldestId == null || booking.getId().compareTo(state.oldestId) < 0){
+                state.oldestId = booking.getId();
+            }
+        }
+    }
+
+    /**
+     * Get the number of bookings downloaded by the last sync
+     * @return
+     */
+    public int getLastChangeCount(){
+        return lastChangeCount;
+    }
+
+    /**
+     * Forget how far every user's history was loaded and synced
+     */
+    public synchronized void clear(){
+        states.clear();
+    }
+
+    /**
+     * Write a sync's changes to the store and read the history back
+     * @param userId
+     * @param changes
+     * @param writer - Taken when the sync was started
+     * @return the stored bookings after the changes
+     */
+    private ArrayList<Booking> applyChanges(String userId, List<Booking> changes, BookingStore.Writer writer){
+        String oldestId;
+        synchronized(this){
+            SyncState state = getState(userId);
+            for(Booking booking : changes){
+                state.advanceWatermark(booking);
+            }
+            oldestId = state.oldestId;
+        }
+
+        // Wait for the changes (and the pages written before them) to be applied before reading
+        BookingStore store = BookingStore.getInstance();
+        writer.putAll(changes);
+        store.flush();
+
+        return oldestId != null ? store.getUserBookingsSince(userId, oldestId) : new ArrayList<>();
+    }
+
+    /**
+     * Get (creating it if needed) the state of a user
+     * @param userId
+     * @return
+     */
+    private SyncState getState(String userId){
+        SyncState state = states.get(userId);
+        if(state == null){
+            state = new SyncState();
+            states.put(userId, state);
+        }
+
+        return state;
+    }
+
+    /**
+     * How far a single user's history has been loaded and synced
+     */
+    private static class SyncState {
+
+        // The ID of the oldest booking loaded by the pager, null before anything was loaded
+        String oldestId;
+
+        // Latest updated_at (epoch millis) seen from the API, 0 before anything was loaded
+        long watermark;
+
+        /**
+         * Move the watermark forward to a booking's last modification
+         * @param booking
+         */
+        void advanceWatermark(Booking booking){
+            if(booking.getUpdatedAt() != null){
+                watermark = Math.max(watermark, booking.getUpdatedAt().getTime());
+            }
+        }
+    }
+}
@@ -6,21 +6,27 @@
 package xyz.rhysevans.taxe.viewmodel;
 
 import android.arch.lifecycle.ViewModel;
-import android.net.Network;
 
-import java.util.ArrayList;
+import java.io.IOException;
 
 import rx.Observable;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.schedulers.Schedulers;
+import xyz.rhysevans.taxe.data.BookingStore;
 import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.model.BookingEvent;
 import xyz.rhysevans.taxe.model.Response;
 import xyz.rhysevans.taxe.network.NetworkUtil;
+import xyz.rhysevans.taxe.network.OfflineWriteQueue;
+import xyz.rhysevans.taxe.network.RetryPolicy;
 
 /**
  * BookingViewModel.java
  *
- * Acts as a mediator between booking model and booking views
+ * Acts as a mediator between booking model and booking views. Idempotent requests are
+ * retried on transient failures (see RetryPolicy), bookings are never created twice.
+ * Writes that can't reach the API are queued (see OfflineWriteQueue) and the returned
+ * response is marked as queued.
  *
  * @author Rhys Evans
  * @version 0.1
@@ -28,49 +34,155 @@ import xyz.rhysevans.taxe.network.NetworkUtil;
 public class BookingViewModel extends ViewModel {
 
     /**
-     * Create a new booking from a booking object
+     * Create a new booking from a booking object. Only queued if the request certainly
+     * never reached the API, so the booking can't be created twice
      * @param newBooking
      * @return
      */
-    public Observable<Response> createBooking(String token, Booking newBooking){
-        return NetworkUtil.getRetrofit(token, true).createBooking(newBooking)
+    public Observable<Response> createBooking(Booking newBooking){
+        // The new booking becomes the most recent one
+        SessionBootstrap.getInstance().clear();
+
+        return NetworkUtil.getRetrofit().createBooking(newBooking)
+                .onErrorResumeNext(error -> OfflineWriteQueue.isNeverSent(error)
+                        ? Observable.fromCallable(() -> OfflineWriteQueue.getInstance().enqueueCreate(newBooking))
+                        : Observable.error(error))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
     /**
-     * Update a booking from booking object
-     * @param token
+     * Update a booking from booking object. Edits that add a note are not retried, and only
+     * queued if they never reached the API, as sending them twice would add the note twice.
+     * Once the API accepts a status change, the stored booking is given the new status
      * @param bookingId
      * @param updatedBooking
      * @return
      */
-    public Observable<Response> editBooking(String token, String bookingId, Booking updatedBooking){
-        return NetworkUtil.getRetrofit(token, true).editBooking(bookingId, updatedBooking)
+    public Observable<Response> editBooking(String bookingId, Booking updatedBooking){
+        OfflineWriteQueue queue = OfflineWriteQueue.getInstance();
+        Observable<Response> queueEdit = Observable.fromCallable(() -> queue.enqueueEdit(bookingId, updatedBooking));
+
+        // The cached copies are out of date either way
+        BookingCache.remove(bookingId);
+        SessionBootstrap.getInstance().clear();
+
+        Observable<Response> request;
+        if(queue.hasPendingWrites(bookingId)){
+            // Keep the edit behind the ones already waiting for this booking
+            request = queueEdit;
+        }else{
+            // Status edits can be sent again safely, but a note edit that may have reached the
+            // API (e.g. a read timeout) must not be queued, or the note would be added twice
+            boolean addsNote = updatedBooking.getNote() != null;
+            request = NetworkUtil.getRetrofit().editBooking(bookingId, updatedBooking)
+                    .doOnNext(response -> BookingStore.getInstance().putStatus(bookingId, updatedBooking.getStatus()));
+            if(!addsNote){
+                request = request.compose(RetryPolicy.getDefault().retry());
+            }
+
+            request = request.onErrorResumeNext(error -> (addsNote ? OfflineWriteQueue.isNeverSent(error) : error instanceof IOException)
+                    ? queueEdit
+                    : Observable.error(error));
+        }
+
+        return request
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
     /**
-     * Retrieve a booking by its ID
-     * @param token
+     * Retrieve a booking by its ID, batched with any other bookings requested at the same time
      * @param bookingId
      * @return
      */
-    public Observable<Booking> getBooking(String token, String bookingId){
-        return NetworkUtil.getRetrofit(token, true).getBooking(bookingId)
+    public Observable<Booking> getBooking(String bookingId){
+        BookingStore.Writer writer = BookingStore.getInstance().writer();
+        return NetworkUtil.coalesce("getBooking/" + bookingId, () -> NetworkUtil.getBookingBatcher().get(bookingId)
+                .compose(RetryPolicy.getDefault().retry()))
+                .doOnNext(BookingCache::put)
+                .doOnNext(writer::put)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
     /**
-     * Release a booking back to the collective pool
-     * @param token
+     * Get a booking to open its screen: the copy stored on the device first (if there is one),
+     * then the API's
+     * @param bookingId
+     * @return
+     */
+    public Observable<Booking> openBooking(String bookingId){
+        BookingStore store = BookingStore.getInstance();
+        return StoreFirst.of(() -> store.getBooking(bookingId), getBooking(bookingId))
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Get a booking fetched (or prefetched) earlier, to show while it is refreshed
+     * @param bookingId
+     * @return the booking, or null if it isn't cached
+     */
+    public Booking getCachedBooking(String bookingId){
+        return BookingCache.get(bookingId);
+    }
+
+    /**
+     * Check if a booking has been fetched (or prefetched) recently
+     * @param bookingId
+     * @return
+     */
+    public boolean isBookingCached(String bookingId){
+        return BookingCache.contains(bookingId);
+    }
+
+    /**
+     * Fetch a booking ahead of time into the cache. It is batched with the other prefetches
+     * made at the same time and is not retried, as it is only speculative.
+     * The result is not observed on the main thread
+     * @param bookingId
+     * @return
+     */
+    public Observable<Booking> prefetchBooking(String bookingId){
+        BookingStore.Writer writer = BookingStore.getInstance().writer();
+        return NetworkUtil.coalesce("getBooking/" + bookingId, () -> NetworkUtil.getBookingBatcher().get(bookingId))
+                .doOnNext(BookingCache::put)
+                .doOnNext(writer::put)
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Get the events pushed by the API when any of the user's bookings change
+     * @return
+     */
+    public Observable<BookingEvent> getBookingEvents(){
+        return NetworkUtil.getBookingEventStream().events()
+                .onBackpressureBuffer()
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Get a polling scheduler for a booking, used when booking events aren't being pushed
+     * @param bookingId
+     * @return
+     */
+    public BookingPollingScheduler getPollingScheduler(String bookingId){
+        return BookingPollingScheduler.forBooking(bookingId);
+    }
+
+    /**
+     * Release a booking back to the collective pool. Once the API accepts it, the stored copy
+     * is removed, as the user no longer drives it
      * @param bookingId
      * @return
      */
-    public Observable<Response> releaseBooking(String token, String bookingId){
-        return NetworkUtil.getRetrofit(token, false).releaseBooking(bookingId)
+    public Observable<Response> releaseBooking(String bookingId){
+        BookingCache.remove(bookingId);
+        SessionBootstrap.getInstance().clear();
+
+        return NetworkUtil.getRetrofit().releaseBooking(bookingId)
+                .compose(RetryPolicy.getDefault().retry())
+                .doOnNext(response -> BookingStore.getInstance().delete(bookingId))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.viewmodel;
+
+import java.util.ArrayList;
+
+import retrofit2.adapter.rxjava.HttpException;
+import rx.Observable;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.schedulers.Schedulers;
+import xyz.rhysevans.taxe.data.BookingStore;
+import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.model.Bootstrap;
+import xyz.rhysevans.taxe.model.User;
+import xyz.rhysevans.taxe.network.NetworkUtil;
+import xyz.rhysevans.taxe.network.RetryPolicy;
+
+/**
+ * SessionBootstrap.java
+ *
+ * Loads what the app's first screens need (the user, their most recent booking and their
+ * active bookings) once per session and serves every screen from it, instead of each screen
+ * requesting its own piece on launch.
+ *
+ * The bootstrap is loaded with the API's single bootstrap request. If the API doesn't have it,
+ * the three pieces are requested in parallel instead. The result is kept until it is refreshed
+ * or cleared (on logout, or when one of the user's bookings is changed).
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class SessionBootstrap {
+
+    private static SessionBootstrap INSTANCE = null;
+
+    // The loaded bootstrap and the user it belongs to (guarded by this)
+    private Bootstrap bootstrap;
+    private String userId;
+
+    // Cleared if the API doesn't have the bootstrap request
+    private volatile boolean bootstrapSupported = true;
+
+    /**
+     * Private constructor to enforce singleton
+     */
+    private SessionBootstrap(){}
+
+    /**
+     * Returns the instance of the session bootstrap
+     * @return
+     */
+    public static synchronized SessionBootstrap getInstance(){
+        if(INSTANCE == null){
+            INSTANCE = new SessionBootstrap();
+        }
+
+        return INSTANCE;
+    }
+
+    /**
+     * Get a user's bootstrap, loading it if it isn't loaded yet. While it loads, the
+     * bootstrap stored on the device is emitted first, if there is one
+     * @param userId
+     * @return
+     */
+    public Observable<Bootstrap> get(String userId){
+        return Observable.defer(() -> {
+            Bootstrap loaded = getLoaded(userId);
+            return loaded != null ? Observable.just(loaded) : StoreFirst.of(() -> getStored(userId), refresh(userId));
+        }).observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Reload a user's bootstrap. Loads already in flight are shared
+     * @param userId
+     * @return
+     */
+    public Observable<Bootstrap> refresh(String userId){
+        BookingStore.Writer writer = BookingStore.getInstance().writer();
+        return NetworkUtil.coalesce("bootstrap/" + userId, () -> load(userId)
+                .compose(RetryPolicy.getDefault().retry()))
+                .doOnNext(loaded -> store(writer, userId, loaded))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Get a user's bootstrap if it is already loaded
+     * @param userId
+     * @return the bootstrap, or null if it isn't loaded
+     */
+    public synchronized Bootstrap getLoaded(String userId){
+        return userId != null && userId.equals(this.userId) ? bootstrap : null;
+    }
+
+    /**
+     * Forget the loaded bootstrap, so the next get() reloads it
+     */
+    public synchronized void clear(){
+        bootstrap = null;
+        userId = null;
+    }
+
+    /**
+     * Load a bootstrap from the API
+     * @param userId
+     * @return
+     */
+    private Observable<Bootstrap> load(String userId){
+        if(!bootstrapSupported){
+            return loadInParallel(userId);
+        }
+
+        return NetworkUtil.getRetrofit().getBootstrap(userId)
+                .onErrorResumeNext(error -> {
+                    if(error instanceof HttpException
+                            && (((HttpException) error).code() == 404 || ((HttpException) error).code() == 400)){
+                        bootstrapSupported = false;
+                        return loadInParallel(userId);
+                    }
+
+                    return Observable.error(error);
+                });
+    }
+
+    /**
+     * Load the pieces of a bootstrap with one request each, all at the same time
+     * @param userId
+     * @return
+     */
+    private Observable<Bootstrap> loadInParallel(String userId){
+        Observable<Booking> mostRecentBooking = UserViewModel.requestMostRecentBooking(userId)
+                .defaultIfEmpty(null) // The user has no bookings
+                .subscribeOn(Schedulers.io());
+        Observable<ArrayList<Booking>> activeBookings = NetworkUtil.getRetrofit().getUserBookings(userId, true)
+                .subscribeOn(Schedulers.io());
+
+        return Observable.zip(NetworkUtil.getRetrofit().getUser(userId).subscribeOn(Schedulers.io()),
+                mostRecentBooking, activeBookings, Bootstrap::new);
+    }
+
+    /**
+     * Read a user's bootstrap from the bookings stored on the device
+     * @param userId
+     * @return the bootstrap, or null if the user isn't stored
+     */
+    private Bootstrap getStored(String userId){
+        BookingStore store = BookingStore.getInstance();
+
+        User user = store.getUser(userId);
+        if(user == null){
+            return null;
+        }
+
+        return new Bootstrap(user, store.getMostRecentBooking(userId), store.getActiveBookings(userId));
+    }
+
+    /**
+     * Keep a loaded bootstrap, unless the session it was requested in has ended since
+     * (Session.logout() clears the BookingStore before this)
+     * @param writer - Taken when the bootstrap was requested
+     * @param userId
+     * @param loaded
+     */
+    private synchronized void store(BookingStore.Writer writer, String userId, Bootstrap loaded){
+        if(!writer.isCurrent()){
+            return;
+        }
+
+        this.userId = userId;
+        this.bootstrap = loaded;
+
+        // The booking screen opens on the most recent booking, have it ready
+        BookingCache.put(loaded.getMostRecentBooking());
+
+        writer.putUser(loaded.getUser());
+        writer.put(loaded.getMostRecentBooking());
+        writer.putActiveBookings(userId, loaded.getActiveBookings());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.viewmodel;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Actions;
+import rx.functions.Func0;
+import rx.schedulers.Schedulers;
+
+/**
+ * StoreFirst.java
+ *
+ * Combines a read from the local BookingStore with the matching API request, so a screen
+ * shows the stored copy straight away and is then updated with the API's. If the API can't
+ * be reached once a stored copy has been shown, the stored copy is kept on screen
+ * instead of reporting the error.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+class StoreFirst {
+
+    private static final String TAG = StoreFirst.class.getSimpleName();
+
+    /**
+     * Private constructor, static methods only
+     */
+    private StoreFirst(){}
+
+    /**
+     * Emit the stored value (if there is one) then the API's
+     * @param read - Reads the stored value, returning null or an empty collection if there is none
+     * @param request - The API request
+     * @param <T>
+     * @return
+     */
+    static <T> Observable<T> of(Func0<T> read, Observable<T> request){
+        return of(read, request, Actions.empty());
+    }
+
+    /**
+     * Emit the stored value (if there is one) then the API's
+     * @param read - Reads the stored value, returning null or an empty collection if there is none
+     * @param request - The API request
+     * @param onOffline - Called if the API can't be reached and the stored value is kept instead,
+     *                  before the returned observable completes
+     * @param <T>
+     * @return
+     */
+    static <T> Observable<T> of(Func0<T> read, Observable<T> request, Action0 onOffline){
+        return Observable.defer(() -> {
+            AtomicBoolean shown = new AtomicBoolean();
+
+            Observable<T> stored = Observable.fromCallable(read::call)
+                    .filter(value -> value != null && !(value instanceof Collection && ((Collection<?>) value).isEmpty()))
+                    .doOnNext(value -> shown.set(true))
+                    .onErrorResumeNext(error -> {
+                        // The store is only a copy, carry on with the API's
+                        Log.w(TAG, "Failed to read from the booking store", error);
+                        return Observable.empty();
+                    })
+                    .subscribeOn(Schedulers.io());
+
+            return stored.concatWith(request.onErrorResumeNext(error -> {
+                if(shown.get() && error instanceof IOException){
+                    onOffline.call();
+                    return Observable.<T>empty();
+                }
+
+                return Observable.<T>error(error);
+            }));
+        });
+    }
+}
@@ -12,17 +12,24 @@ import java.util.ArrayList;
 import rx.Observable;
 import rx.Scheduler;
 import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action0;
 import rx.schedulers.Schedulers;
+import xyz.rhysevans.taxe.data.BookingStore;
 import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.model.Bootstrap;
 import xyz.rhysevans.taxe.model.LoginResponse;
 import xyz.rhysevans.taxe.model.Response;
 import xyz.rhysevans.taxe.model.User;
 import xyz.rhysevans.taxe.network.NetworkUtil;
+import xyz.rhysevans.taxe.network.RetryPolicy;
+import xyz.rhysevans.taxe.util.Constants;
 
 /**
  * UserViewModel.java
  *
  * Serve as mediator between user views and user models, to follow MVVM design pattern.
+ * Identical GET requests that are already in flight are shared rather than re-sent, and
+ * retried on transient failures (see RetryPolicy).
  *
  * @author Rhys Evans
  * @version 0.1
@@ -54,77 +61,188 @@ public class UserViewModel extends ViewModel {
 
     /**
      * Retrieve a user from API request by user's ID
-     * @param token
      * @param userId
      * @return
      */
-    public Observable<User> getUser(String token, String userId){
-        return NetworkUtil.getRetrofit(token, false).getUser(userId)
+    public Observable<User> getUser(String userId){
+        return NetworkUtil.coalesce("getUser/" + userId, () -> NetworkUtil.getRetrofit().getUser(userId)
+                .compose(RetryPolicy.getDefault().retry()))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
     /**
      * Edits a user entry
-     * @param token
      * @param userId
      * @param updatedUser
      * @return
      */
-    public Observable<Response> editUser(String token, String userId, User updatedUser){
-        return NetworkUtil.getRetrofit(token, false).editUser(userId, updatedUser)
+    public Observable<Response> editUser(String userId, User updatedUser){
+        // The bootstrapped user is out of date
+        SessionBootstrap.getInstance().clear();
+
+        return NetworkUtil.getRetrofit().editUser(userId, updatedUser)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
     /**
      * Get a list of all of a user's bookings
-     * @param token
      * @param userId
      * @return
      */
-    public Observable<ArrayList<Booking>> getUserBookings(String token, String userId){
-        return NetworkUtil.getRetrofit(token, true).getUserBookings(userId)
+    public Observable<ArrayList<Booking>> getUserBookings(String userId){
+        BookingStore.Writer writer = BookingStore.getInstance().writer();
+        return NetworkUtil.coalesce("getUserBookings/" + userId, () -> NetworkUtil.getRetrofit().getUserBookings(userId)
+                .compose(RetryPolicy.getDefault().retry()))
+                .doOnNext(writer::putAll)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
     /**
-     * Get the user's most recent booking by chaining two API requests
-     * 1. Get a list of the user's booking
-     * 2. Take the most recent booking and get its info
-     * @param token
+     * Get a paged data source for a user's booking history
      * @param userId
      * @return
      */
-    public Observable<Booking> getMostRecentBooking(String token, String userId){
-        return NetworkUtil.getRetrofit(token, true).getUserBookings(userId, 1)
-                .flatMap(bookings -> NetworkUtil.getRetrofit(token, true).getBooking(bookings.get(0).getId()))
-                .subscribeOn(Schedulers.io())
+    public BookingPager getBookingPager(String userId){
+        return new BookingPager(userId, Constants.BOOKING_PAGE_SIZE);
+    }
+
+    /**
+     * Refresh the user's booking history by only downloading the bookings that changed since
+     * it was loaded. Check canSyncBookings() first, the history must have been loaded by a pager
+     * @param userId
+     * @return the user's loaded bookings, newest first
+     */
+    public Observable<ArrayList<Booking>> syncBookings(String userId){
+        return BookingSyncEngine.getInstance().sync(userId);
+    }
+
+    /**
+     * Check if the user's booking history can be refreshed with syncBookings()
+     * @param userId
+     * @return
+     */
+    public boolean canSyncBookings(String userId){
+        return BookingSyncEngine.getInstance().canSync(userId);
+    }
+
+    /**
+     * Get the user's most recent booking in a single request, by asking the API for the
+     * latest booking fully populated. If the API returns it unpopulated, fall back to
+     * fetching the booking's info with a second request.
+     * Completes without emitting if the user has no bookings.
+     * The booking stored on the device is emitted first, if there is one
+     * @param userId
+     * @return
+     */
+    public Observable<Booking> getMostRecentBooking(String userId){
+        BookingStore store = BookingStore.getInstance();
+        return StoreFirst.of(() -> store.getMostRecentBooking(userId), requestMostRecentBooking(userId)
+                .subscribeOn(Schedulers.io()))
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
     /**
-     * Get a list of the user's ACTIVE bookings
-     * @param token
+     * The request behind getMostRecentBooking(), without any schedulers applied
+     * (shared with SessionBootstrap)
      * @param userId
      * @return
      */
-    public Observable<ArrayList<Booking>> getActiveBookings(String token, String userId){
-        return NetworkUtil.getRetrofit(token, true).getUserBookings(userId, true)
-                .subscribeOn(Schedulers.io())
+    static Observable<Booking> requestMostRecentBooking(String userId){
+        BookingStore.Writer writer = BookingStore.getInstance().writer();
+        return NetworkUtil.coalesce("getMostRecentBooking/" + userId, () -> NetworkUtil.getRetrofit().getUserBookings(userId, 1, true)
+                .flatMap(bookings -> {
+                    // The user has no bookings yet
+                    if(bookings.isEmpty()){
+                        return Observable.<Booking>empty();
+                    }
+
+                    Booking mostRecent = bookings.get(0);
+                    if(isPopulated(mostRecent)){
+                        return Observable.just(mostRecent);
+                    }
+
+                    return NetworkUtil.getBookingBatcher().get(mostRecent.getId());
+                })
+                .compose(RetryPolicy.getDefault().retry()))
+                .doOnNext(writer::put);
+    }
+
+    /**
+     * Get a list of the user's ACTIVE bookings. The bookings stored on the device are emitted
+     * first, if there are any
+     * @param userId
+     * @param onOffline - Called if the API can't be reached and the stored bookings are kept
+     * @return
+     */
+    public Observable<ArrayList<Booking>> getActiveBookings(String userId, Action0 onOffline){
+        BookingStore store = BookingStore.getInstance();
+        BookingStore.Writer writer = store.writer();
+        return StoreFirst.of(() -> store.getActiveBookings(userId), NetworkUtil.coalesce("getActiveBookings/" + userId, () -> NetworkUtil.getRetrofit().getUserBookings(userId, true)
+                .compose(RetryPolicy.getDefault().retry()))
+                .doOnNext(active -> writer.putActiveBookings(userId, active))
+                .subscribeOn(Schedulers.io()), onOffline)
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
+    /**
+     * Get the user, their most recent booking and their active bookings, loaded once
+     * per session and shared by every screen (see SessionBootstrap)
+     * @param userId
+     * @return
+     */
+    public Observable<Bootstrap> getBootstrap(String userId){
+        return SessionBootstrap.getInstance().get(userId);
+    }
+
+    /**
+     * Get the session bootstrap if it has already been loaded
+     * @param userId
+     * @return the bootstrap, or null if it isn't loaded
+     */
+    public Bootstrap getLoadedBootstrap(String userId){
+        return SessionBootstrap.getInstance().getLoaded(userId);
+    }
+
+    /**
+     * Reload the session bootstrap, e.g. after the user changed something in it
+     * @param userId
+     * @return
+     */
+    public Observable<Bootstrap> refreshBootstrap(String userId){
+        return SessionBootstrap.getInstance().refresh(userId);
+    }
+
+    /**
+     * Get a polling scheduler for the user's active bookings, used when booking events
+     * aren't being pushed
+     * @param userId
+     * @return
+     */
+    public BookingPollingScheduler getActiveBookingsPollingScheduler(String userId){
+        return BookingPollingScheduler.forActiveBookings(userId);
+    }
+
+    /**
+     * Check if a booking returned in a list was populated by the API
+     * (the customer is returned as an object rather than just an ID)
+     * @param booking
+     * @return
+     */
+    private static boolean isPopulated(Booking booking){
+        return booking.getCustomer() != null && booking.getCustomer().getName() != null;
+    }
+
     /**
      * Remove the driver from the provided company
-     * @param token
      * @param companyId
      * @param userId
      * @return
      */
-    public Observable<Response> resign(String token, String companyId, String userId){
-        return NetworkUtil.getRetrofit(token, false).removeDriver(companyId, userId)
+    public Observable<Response> resign(String companyId, String userId){
+        return NetworkUtil.getRetrofit().removeDriver(companyId, userId)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe;
+
+import org.junit.rules.ExternalResource;
+
+import rx.Scheduler;
+import rx.android.plugins.RxAndroidPlugins;
+import rx.android.plugins.RxAndroidSchedulersHook;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.plugins.RxJavaHooks;
+import rx.schedulers.Schedulers;
+
+/**
+ * ImmediateSchedulersRule.java
+ *
+ * Runs work scheduled on the io and Android main thread schedulers on the test's own thread,
+ * so view model requests complete before subscribe() returns
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class ImmediateSchedulersRule extends ExternalResource {
+
+    @Override
+    protected void before(){
+        RxJavaHooks.setOnIOScheduler(scheduler -> Schedulers.immediate());
+
+        RxAndroidPlugins.getInstance().reset();
+        AndroidSchedulers.reset();
+        RxAndroidPlugins.getInstance().registerSchedulersHook(new RxAndroidSchedulersHook(){
+            @Override
+            public Scheduler getMainThreadScheduler(){
+                return Schedulers.immediate();
+            }
+        });
+    }
+
+    @Override
+    protected void after(){
+        RxJavaHooks.reset();
+        RxAndroidPlugins.getInstance().reset();
+        AndroidSchedulers.reset();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.model.User;
+import xyz.rhysevans.taxe.util.BookingStatus;
+
+/**
+ * InMemoryBookingStore.java
+ *
+ * Stand-in for the database backed BookingStore in local unit tests. Writes are applied
+ * straight away, with the same rules as the real store (including dropping the writes of a
+ * generation that has been cleared)
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class InMemoryBookingStore extends BookingStore {
+
+    // Bookings by ID, newest first (object IDs sort by creation time)
+    private final TreeMap<String, Booking> bookings = new TreeMap<>((a, b) -> b.compareTo(a));
+    private final Map<String, User> users = new HashMap<>();
+
+    @Override
+    protected synchronized void putAll(int writeGeneration, List<Booking> received){
+        if(received == null || !isGeneration(writeGeneration)){
+            return;
+        }
+
+        for(Booking booking : received){
+            if(booking.getId() == null){
+                continue;
+            }
+
+            if(booking.isDeleted()){
+                bookings.remove(booking.getId());
+                continue;
+            }
+
+            // An empty list never replaces the stored notes
+            Booking stored = bookings.get(booking.getId());
+            if(stored != null && (booking.getNotes() == null || booking.getNotes().isEmpty())){
+                booking.setNotes(stored.getNotes());
+            }
+
+            bookings.put(booking.getId(), booking);
+            putUser(writeGeneration, booking.getCustomer());
+            putUser(writeGeneration, booking.getDriver());
+        }
+    }
+
+    @Override
+    protected synchronized void putActiveBookings(int writeGeneration, String userId, List<Booking> active){
+        if(userId == null || active == null || !isGeneration(writeGeneration)){
+            return;
+        }
+
+        for(Booking stored : getActiveBookings(userId)){
+            if(active.stream().noneMatch(booking -> stored.getId().equals(booking.getId()))){
+                bookings.remove(stored.getId());
+            }
+        }
+        putAll(writeGeneration, active);
+    }
+
+    @Override
+    public synchronized void putStatus(String bookingId, BookingStatus status){
+        Booking stored = bookings.get(bookingId);
+        if(stored != null && status != null){
+            stored.setStatus(status);
+        }
+    }
+
+    @Override
+    protected synchronized void putUser(int writeGeneration, User user){
+        // Unpopulated users (only an ID) are left out, as by the real store
+        if(user != null && user.getId() != null && user.getName() != null && isGeneration(writeGeneration)){
+            users.put(user.getId(), user);
+        }
+    }
+
+    @Override
+    public synchronized void delete(String bookingId){
+        bookings.remove(bookingId);
+    }
+
+    @Override
+    public synchronized void clear(){
+        nextGeneration();
+        bookings.clear();
+        users.clear();
+    }
+
+    @Override
+    public void flush(){
+        // Writes are applied straight away
+    }
+
+    @Override
+    public synchronized Booking getBooking(String bookingId){
+        return bookings.get(bookingId);
+    }
+
+    @Override
+    public synchronized User getUser(String userId){
+        return users.get(userId);
+    }
+
+    @Override
+    public synchronized ArrayList<Booking> getUserBookings(String userId, int limit){
+        ArrayList<Booking> found = new ArrayList<>();
+        for(Booking booking : bookings.values()){
+            if(found.size() < limit && belongsTo(booking, userId)){
+                found.add(booking);
+            }
+        }
+
+        return found;
+    }
+
+    @Override
+    public synchronized ArrayList<Booking> getUserBookingsSince(String userId, String oldestId){
+        ArrayList<Booking> found = new ArrayList<>();
+        for(Booking booking : bookings.headMap(oldestId, true).values()){
+            if(belongsTo(booking, userId)){
+                found.add(booking);
+            }
+        }
+
+        return found;
+    }
+
+    @Override
+    public synchronized ArrayList<Booking> getActiveBookings(String userId){
+        ArrayList<Booking> found = new ArrayList<>();
+        for(Booking booking : bookings.values()){
+            BookingStatus status = booking.getStatus();
+            boolean active = status == BookingStatus.Pending || status == BookingStatus.In_Progress
+                    || status == BookingStatus.Arrived;
+            if(active && belongsTo(booking, userId)){
+                found.add(booking);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Check if a user is a booking's customer or driver
+     * @param booking
+     * @param userId
+     * @return
+     */
+    private static boolean belongsTo(Booking booking, String userId){
+        return (booking.getCustomer() != null && userId.equals(booking.getCustomer().getId()))
+                || (booking.getDriver() != null && userId.equals(booking.getDriver().getId()));
+    }
+}
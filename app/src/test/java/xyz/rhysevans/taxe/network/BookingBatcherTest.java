@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import xyz.rhysevans.taxe.model.Booking;
+
+import static org.junit.Assert.*;
+
+/**
+ * BookingBatcherTest.java
+ *
+ * Tests batching of booking requests into multi-gets, and leaving out cancelled requests
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingBatcherTest {
+
+    private static final long WINDOW = 20;
+
+    private final TestScheduler scheduler = new TestScheduler();
+    private final BookingBatcher batcher = new BookingBatcher(WINDOW, 50, scheduler);
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        NetworkUtil.setRetrofit(TestRetrofit.create(server));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void requestsInOneWindowShareOneRequest() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody("[{\"_id\":\"a\"},{\"_id\":\"b\"}]"));
+
+        TestSubscriber<Booking> a = new TestSubscriber<>();
+        TestSubscriber<Booking> b = new TestSubscriber<>();
+        batcher.get("a").subscribe(a);
+        batcher.get("b").subscribe(b);
+        scheduler.advanceTimeBy(WINDOW, TimeUnit.MILLISECONDS);
+
+        assertEquals("a,b", server.takeRequest().getRequestUrl().queryParameter("ids"));
+        assertEquals("a", a.getOnNextEvents().get(0).getId());
+        assertEquals("b", b.getOnNextEvents().get(0).getId());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void cancelledBookingsAreLeftOut() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody("[{\"_id\":\"a\"},{\"_id\":\"c\"}]"));
+
+        batcher.get("a").subscribe(new TestSubscriber<>());
+        Subscription b = batcher.get("b").subscribe(new TestSubscriber<>());
+        batcher.get("c").subscribe(new TestSubscriber<>());
+
+        b.unsubscribe();
+        scheduler.advanceTimeBy(WINDOW, TimeUnit.MILLISECONDS);
+
+        assertEquals("a,c", server.takeRequest().getRequestUrl().queryParameter("ids"));
+    }
+
+    @Test
+    public void sharedBookingIsSentWhileAnyCallerRemains() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody("{\"_id\":\"a\"}"));
+
+        Subscription first = batcher.get("a").subscribe(new TestSubscriber<>());
+        TestSubscriber<Booking> second = new TestSubscriber<>();
+        batcher.get("a").subscribe(second);
+
+        first.unsubscribe();
+        scheduler.advanceTimeBy(WINDOW, TimeUnit.MILLISECONDS);
+
+        assertEquals("/api/v1/bookings/a", server.takeRequest().getPath());
+        second.assertValueCount(1);
+    }
+
+    @Test
+    public void nothingIsSentOnceEveryCallerHasGone(){
+        Subscription a = batcher.get("a").subscribe(new TestSubscriber<>());
+        Subscription b = batcher.get("b").subscribe(new TestSubscriber<>());
+
+        a.unsubscribe();
+        b.unsubscribe();
+        scheduler.advanceTimeBy(WINDOW, TimeUnit.MILLISECONDS);
+
+        assertEquals(0, server.getRequestCount());
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import xyz.rhysevans.taxe.model.BookingEvent;
+
+import static org.junit.Assert.*;
+
+/**
+ * BookingEventStreamTest.java
+ *
+ * Tests connecting to, resuming and closing the booking event stream against a local server.
+ * Reconnections are timed on a TestScheduler with the jitter pinned to its maximum
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingEventStreamTest {
+
+    private static final long TIMEOUT = 5;
+
+    private final TestScheduler scheduler = new TestScheduler();
+
+    // Sockets opened by the stream, as seen by the server
+    private final BlockingQueue<WebSocket> serverSockets = new LinkedBlockingQueue<>();
+    // Close codes received by the server
+    private final BlockingQueue<Integer> serverCloseCodes = new LinkedBlockingQueue<>();
+
+    private MockWebServer server;
+    private BookingEventStream stream;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        Random maxJitter = new Random(){
+            @Override
+            public double nextDouble(){
+                return Math.nextDown(1.0);
+            }
+        };
+
+        stream = new BookingEventStream(new OkHttpClient(), server.url("/api/v1/"), scheduler, maxJitter);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void connectsOnFirstSubscribeAndDeliversEvents() throws Exception {
+        server.enqueue(upgrade());
+        TestSubscriber<BookingEvent> subscriber = new TestSubscriber<>();
+        stream.events().subscribe(subscriber);
+
+        RecordedRequest request = server.takeRequest(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals("/api/v1/events", request.getPath());
+
+        WebSocket socket = serverSockets.poll(TIMEOUT, TimeUnit.SECONDS);
+        socket.send(event("e1", "b1"));
+
+        subscriber.awaitValueCount(1, TIMEOUT, TimeUnit.SECONDS);
+        assertEquals("e1", subscriber.getOnNextEvents().get(0).getId());
+        assertEquals("b1", subscriber.getOnNextEvents().get(0).getBooking().getId());
+        awaitConnected(true);
+    }
+
+    @Test
+    public void resumesAfterTheLastEventWhenTheSocketDrops() throws Exception {
+        server.enqueue(upgrade());
+        TestSubscriber<BookingEvent> subscriber = new TestSubscriber<>();
+        stream.events().subscribe(subscriber);
+        server.takeRequest(TIMEOUT, TimeUnit.SECONDS);
+
+        WebSocket socket = serverSockets.poll(TIMEOUT, TimeUnit.SECONDS);
+        socket.send(event("e7", "b1"));
+        subscriber.awaitValueCount(1, TIMEOUT, TimeUnit.SECONDS);
+        awaitConnected(true);
+
+        // The server drops the socket
+        server.enqueue(upgrade());
+        socket.close(1001, "Going away");
+        awaitReconnectPending();
+        assertFalse(stream.isConnected());
+
+        // First reconnection after 1s
+        scheduler.advanceTimeBy(999, TimeUnit.MILLISECONDS);
+        assertNull(server.takeRequest(100, TimeUnit.MILLISECONDS));
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+        RecordedRequest resumed = server.takeRequest(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals("/api/v1/events?since=e7", resumed.getPath());
+        awaitConnected(true);
+    }
+
+    @Test
+    public void backsOffWhileTheServerIsUnavailable() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(upgrade());
+        stream.events().subscribe(new TestSubscriber<>());
+        server.takeRequest(TIMEOUT, TimeUnit.SECONDS);
+
+        // 1s, then 2s before the next attempts
+        awaitReconnectAfter(1000);
+        awaitReconnectAfter(2000);
+        awaitConnected(true);
+    }
+
+    @Test
+    public void closesAfterTheLastUnsubscribe() throws Exception {
+        server.enqueue(upgrade());
+        Subscription first = stream.events().subscribe(new TestSubscriber<>());
+        Subscription second = stream.events().subscribe(new TestSubscriber<>());
+        serverSockets.poll(TIMEOUT, TimeUnit.SECONDS);
+        awaitConnected(true);
+
+        // Only one socket is shared by both subscribers
+        first.unsubscribe();
+        assertTrue(stream.isConnected());
+        assertNull(serverCloseCodes.poll(100, TimeUnit.MILLISECONDS));
+
+        second.unsubscribe();
+        assertEquals(Integer.valueOf(1000), serverCloseCodes.poll(TIMEOUT, TimeUnit.SECONDS));
+        assertFalse(stream.isConnected());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void resetStartsTheNextSocketFromTheBeginning() throws Exception {
+        server.enqueue(upgrade());
+        TestSubscriber<BookingEvent> subscriber = new TestSubscriber<>();
+        Subscription subscription = stream.events().subscribe(subscriber);
+        server.takeRequest(TIMEOUT, TimeUnit.SECONDS);
+
+        serverSockets.poll(TIMEOUT, TimeUnit.SECONDS).send(event("e3", "b1"));
+        subscriber.awaitValueCount(1, TIMEOUT, TimeUnit.SECONDS);
+
+        // Logged out, then the next user's screen subscribes
+        stream.reset();
+        assertEquals(Integer.valueOf(1000), serverCloseCodes.poll(TIMEOUT, TimeUnit.SECONDS));
+        assertFalse(stream.isConnected());
+        subscription.unsubscribe();
+
+        server.enqueue(upgrade());
+        stream.events().subscribe(new TestSubscriber<>());
+        assertEquals("/api/v1/events", server.takeRequest(TIMEOUT, TimeUnit.SECONDS).getPath());
+        awaitConnected(true);
+    }
+
+    @Test
+    public void stopsWhenTheApiClosesTheStreamOnPurpose() throws Exception {
+        server.enqueue(upgrade());
+        stream.events().subscribe(new TestSubscriber<>());
+        server.takeRequest(TIMEOUT, TimeUnit.SECONDS);
+        WebSocket socket = serverSockets.poll(TIMEOUT, TimeUnit.SECONDS);
+        awaitConnected(true);
+
+        socket.close(4001, "Token expired");
+        awaitConnected(false);
+
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS);
+        assertFalse(stream.isReconnectPending());
+        assertNull(server.takeRequest(100, TimeUnit.MILLISECONDS));
+
+        // A later subscriber opens a new socket
+        server.enqueue(upgrade());
+        stream.events().subscribe(new TestSubscriber<>());
+        assertNotNull(server.takeRequest(TIMEOUT, TimeUnit.SECONDS));
+        awaitConnected(true);
+    }
+
+    @Test
+    public void stopsWhenTheTokenIsRefused() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(401));
+        stream.events().subscribe(new TestSubscriber<>());
+        server.takeRequest(TIMEOUT, TimeUnit.SECONDS);
+
+        // Give the failure time to be handled, then check nothing was scheduled
+        Thread.sleep(200);
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS);
+        assertFalse(stream.isReconnectPending());
+        assertNull(server.takeRequest(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    /**
+     * Wait for the failed attempt to be noticed, then check the next attempt is made after
+     * exactly the given delay
+     * @param delay - in milliseconds
+     * @throws Exception
+     */
+    private void awaitReconnectAfter(long delay) throws Exception {
+        awaitReconnectPending();
+
+        scheduler.advanceTimeBy(delay - 1, TimeUnit.MILLISECONDS);
+        assertNull(server.takeRequest(100, TimeUnit.MILLISECONDS));
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertNotNull(server.takeRequest(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Wait for the stream to schedule a reconnection
+     * @throws InterruptedException
+     */
+    private void awaitReconnectPending() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        while(!stream.isReconnectPending()){
+            assertTrue("Timed out waiting for a reconnection", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Wait for the stream to report the given connection state
+     * @param connected
+     * @throws InterruptedException
+     */
+    private void awaitConnected(boolean connected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        while(stream.isConnected() != connected){
+            assertTrue("Timed out waiting for connected=" + connected, System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * A response that accepts the socket, recording it on the server side
+     * @return
+     */
+    private MockResponse upgrade(){
+        return new MockResponse().withWebSocketUpgrade(new WebSocketListener(){
+            @Override
+            public void onOpen(WebSocket webSocket, Response response){
+                serverSockets.add(webSocket);
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason){
+                serverCloseCodes.add(code);
+                webSocket.close(code, null);
+            }
+        });
+    }
+
+    /**
+     * An update event for a booking
+     * @param id
+     * @param bookingId
+     * @return
+     */
+    private static String event(String id, String bookingId){
+        return "{\"id\":\"" + id + "\",\"type\":\"" + BookingEvent.TYPE_UPDATED + "\",\"booking\":{\"_id\":\"" + bookingId + "\"}}";
+    }
+}
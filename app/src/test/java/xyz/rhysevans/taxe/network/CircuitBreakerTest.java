@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * CircuitBreakerTest.java
+ *
+ * Tests that a half-open circuit always finishes its trial request
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class CircuitBreakerTest {
+
+    // Opens after one failure and goes half-open straight away
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(1, 0);
+
+    // Thrown by the next request instead of sending it, if set
+    private final AtomicReference<Exception> nextError = new AtomicReference<>();
+
+    private MockWebServer server;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        client = new OkHttpClient.Builder()
+                .addInterceptor(circuitBreaker)
+                .addInterceptor(chain -> {
+                    Exception error = nextError.getAndSet(null);
+                    if(error instanceof IOException){
+                        throw (IOException) error;
+                    }else if(error != null){
+                        throw (RuntimeException) error;
+                    }
+
+                    return chain.proceed(chain.request());
+                })
+                .build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void runtimeExceptionEndsTheHalfOpenTrial() throws IOException {
+        // Open the circuit
+        nextError.set(new SocketTimeoutException());
+        assertThrows(IOException.class);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState("bookings"));
+
+        // The trial request fails without an answer from the server
+        nextError.set(new IllegalStateException());
+        assertThrows(IllegalStateException.class);
+
+        // So the next request is let through as a new trial, and closes the circuit
+        server.enqueue(new MockResponse().setBody("[]"));
+        try(Response response = execute()){
+            assertEquals(200, response.code());
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState("bookings"));
+    }
+
+    @Test
+    public void serverErrorDuringTrialReopens() throws IOException {
+        nextError.set(new SocketTimeoutException());
+        assertThrows(IOException.class);
+
+        server.enqueue(new MockResponse().setResponseCode(503));
+        execute().close();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState("bookings"));
+        assertEquals(2, circuitBreaker.getTripCount());
+    }
+
+    /**
+     * Request the bookings endpoint group
+     * @return
+     * @throws IOException
+     */
+    private Response execute() throws IOException {
+        return client.newCall(new Request.Builder().url(server.url("/api/v1/bookings")).build()).execute();
+    }
+
+    /**
+     * Request the bookings endpoint group, expecting it to fail
+     * @param type - The expected error
+     */
+    private void assertThrows(Class<? extends Exception> type){
+        try{
+            execute().close();
+            fail("Expected " + type.getSimpleName());
+        }catch(Exception e){
+            assertTrue(e.toString(), type.isInstance(e));
+        }
+    }
+}
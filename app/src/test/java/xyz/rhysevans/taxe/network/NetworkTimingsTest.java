@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+import static xyz.rhysevans.taxe.network.NetworkTimings.Phase.*;
+
+/**
+ * NetworkTimingsTest.java
+ *
+ * Tests which phases of a call are recorded, and under which endpoint
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class NetworkTimingsTest {
+
+    private static final String USER_ID = "5c8a1d5b0190b214360dc031";
+
+    private final CachingDns dns = new CachingDns();
+    private final NetworkTimings timings = new NetworkTimings(dns);
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .dns(dns)
+            .eventListenerFactory(timings)
+            .build();
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void recordsEveryPhaseOfACallUnderItsEndpoint() throws IOException {
+        get("/api/v1/users/" + USER_ID + "/bookings");
+
+        NetworkTimings.EndpointTimings endpoint = timings.getTimings("GET users/{id}/bookings");
+        for(NetworkTimings.Phase phase : new NetworkTimings.Phase[]{DNS, CONNECT, REQUEST_WRITE, TIME_TO_FIRST_BYTE, BODY_READ, CALL}){
+            assertEquals(phase.name(), 1, endpoint.get(phase).getCount());
+        }
+
+        // The stand-in API isn't served over TLS
+        assertEquals(0, endpoint.get(TLS).getCount());
+
+        // Nothing is recorded under other endpoints
+        assertEquals(1, timings.getAllTimings().size());
+    }
+
+    @Test
+    public void reusedConnectionOnlyRecordsTheExchange() throws IOException {
+        get("/api/v1/users/" + USER_ID);
+        get("/api/v1/bookings");
+
+        NetworkTimings.EndpointTimings bookings = timings.getTimings("GET bookings");
+        assertEquals(0, bookings.get(DNS).getCount());
+        assertEquals(0, bookings.get(CONNECT).getCount());
+        assertEquals(1, bookings.get(TIME_TO_FIRST_BYTE).getCount());
+        assertEquals(1, bookings.get(CALL).getCount());
+    }
+
+    @Test
+    public void cachedLookupsAreNotRecorded() throws IOException {
+        get("/api/v1/bookings");
+
+        // A new connection resolves the host again, from the cache
+        client.connectionPool().evictAll();
+        get("/api/v1/bookings");
+
+        NetworkTimings.EndpointTimings bookings = timings.getTimings("GET bookings");
+        assertEquals(2, bookings.get(CONNECT).getCount());
+        assertEquals(1, bookings.get(DNS).getCount());
+
+        // Once the cache is cleared the lookup is recorded again
+        dns.clear();
+        client.connectionPool().evictAll();
+        get("/api/v1/bookings");
+        assertEquals(2, bookings.get(DNS).getCount());
+    }
+
+    /**
+     * Send a GET request to the stand-in API and read the whole response
+     * @param path
+     * @throws IOException
+     */
+    private void get(String path) throws IOException {
+        server.enqueue(new MockResponse().setBody("[]"));
+        try(Response response = client.newCall(new Request.Builder().url(server.url(path)).build()).execute()){
+            response.body().string();
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.util.BookingStatus;
+
+import static org.junit.Assert.*;
+
+/**
+ * OfflineWriteQueueTest.java
+ *
+ * Tests replaying queued writes against a stand-in API, and reading the journal back
+ * after a restart or a crash
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class OfflineWriteQueueTest {
+
+    private static final String OK = "{\"message\":\"ok\"}";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private File journal;
+    private OfflineWriteQueue queue;
+
+    // Each dropped write, as its booking ID and whether it may have been applied
+    private final List<String> dropped = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        journal = new File(folder.getRoot(), "offline_writes.journal");
+        queue = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void replaysQueuedWritesInOrderOnceOnline() throws IOException, InterruptedException {
+        goOffline();
+        queue.enqueueCreate(new Booking("Aberystwyth", "Borth", null, 2));
+        queue.enqueueEdit("b1", status(BookingStatus.Cancelled));
+        queue.awaitReplay();
+        assertEquals(2, queue.getDepth());
+
+        goOnline();
+        server.enqueue(new MockResponse().setBody(OK));
+        server.enqueue(new MockResponse().setBody(OK));
+        replay();
+
+        assertEquals("POST /api/v1/bookings", describe(server.takeRequest()));
+        assertEquals("PATCH /api/v1/bookings/b1", describe(server.takeRequest()));
+        assertEquals(0, queue.getDepth());
+        assertEquals(2, queue.getReplayedCount());
+    }
+
+    @Test
+    public void mergesConsecutiveEditsButNotNotes() throws IOException, InterruptedException {
+        goOffline();
+        queue.enqueueEdit("b1", status(BookingStatus.In_Progress));
+        queue.enqueueEdit("b1", status(BookingStatus.Arrived));
+        queue.enqueueEdit("b1", note("Running late"));
+        queue.awaitReplay();
+
+        goOnline();
+        server.enqueue(new MockResponse().setBody(OK));
+        server.enqueue(new MockResponse().setBody(OK));
+        replay();
+
+        String merged = server.takeRequest().getBody().readUtf8();
+        assertTrue(merged, merged.contains("\"status\":\"Arrived\""));
+        assertFalse(merged, merged.contains("note"));
+        assertTrue(server.takeRequest().getBody().readUtf8().contains("Running late"));
+        assertEquals(2, server.getRequestCount());
+        assertEquals(3, queue.getReplayedCount());
+    }
+
+    @Test
+    public void writesThatNeverReachedTheApiAreKept() throws IOException {
+        goOffline();
+        queue.enqueueCreate(new Booking("Aberystwyth", "Borth", null, 2));
+        queue.enqueueEdit("b1", note("Running late"));
+        queue.enqueueEdit("b2", status(BookingStatus.Cancelled));
+        replay();
+
+        assertEquals(3, queue.getDepth());
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    public void createIsDroppedIfItMayHaveBeenApplied() throws IOException {
+        goOnline();
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        queue.enqueueCreate(new Booking("Aberystwyth", "Borth", null, 2));
+        queue.awaitReplay();
+
+        assertEquals(0, queue.getDepth());
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals("[null maybe applied]", dropped.toString());
+    }
+
+    @Test
+    public void noteIsDroppedOnServerError() throws IOException {
+        goOnline();
+        server.enqueue(new MockResponse().setResponseCode(500));
+        queue.enqueueEdit("b1", note("Running late"));
+        queue.awaitReplay();
+
+        assertEquals(0, queue.getDepth());
+        assertEquals("[b1 maybe applied]", dropped.toString());
+    }
+
+    @Test
+    public void repeatableEditIsKeptOnLostResponseOrServerError() throws IOException {
+        goOnline();
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        queue.enqueueEdit("b1", status(BookingStatus.Cancelled));
+        queue.awaitReplay();
+        assertEquals(1, queue.getDepth());
+
+        server.enqueue(new MockResponse().setResponseCode(503));
+        replay();
+        assertEquals(1, queue.getDepth());
+
+        server.enqueue(new MockResponse().setBody(OK));
+        replay();
+        assertEquals(0, queue.getDepth());
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    public void writesAreKeptUntilTheSessionIsRenewed() throws IOException {
+        goOnline();
+        server.enqueue(new MockResponse().setResponseCode(401));
+        queue.enqueueCreate(new Booking("Aberystwyth", "Borth", null, 2));
+        queue.awaitReplay();
+
+        assertEquals(1, queue.getDepth());
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    public void rejectedWriteIsDroppedAndTheNextOneSent() throws IOException {
+        goOnline();
+        server.enqueue(new MockResponse().setResponseCode(400));
+        server.enqueue(new MockResponse().setBody(OK));
+        goOffline();
+        queue.enqueueEdit("b1", status(BookingStatus.Cancelled));
+        queue.enqueueEdit("b2", status(BookingStatus.Cancelled));
+
+        goOnline();
+        replay();
+
+        assertEquals(0, queue.getDepth());
+        assertEquals(1, queue.getReplayedCount());
+        assertEquals("[b1 rejected]", dropped.toString());
+    }
+
+    @Test
+    public void pendingWritesSurviveARestart() throws IOException {
+        goOffline();
+        queue.enqueueCreate(new Booking("Aberystwyth", "Borth", null, 2));
+        queue.enqueueEdit("b1", status(BookingStatus.Cancelled));
+        queue.awaitReplay();
+
+        OfflineWriteQueue reopened = open();
+
+        assertEquals(2, reopened.getDepth());
+        assertTrue(reopened.hasPendingWrites("b1"));
+    }
+
+    @Test
+    public void tornRecordIsSkippedAndTheJournalRepaired() throws IOException {
+        goOffline();
+        queue.enqueueEdit("b1", status(BookingStatus.Cancelled));
+        queue.awaitReplay();
+
+        // A crash part way through appending the next record
+        try(FileOutputStream out = new FileOutputStream(journal, true)){
+            out.write("{\"seq\":2,\"type\":\"editBo".getBytes(Charset.forName("UTF-8")));
+        }
+
+        OfflineWriteQueue reopened = open();
+        assertEquals(1, reopened.getDepth());
+        assertTrue(endsWithNewline(journal));
+
+        // The next record is read back whole, rather than running on from the torn one
+        reopened.enqueueEdit("b2", status(BookingStatus.Cancelled));
+        reopened.awaitReplay();
+        assertEquals(2, open().getDepth());
+    }
+
+    @Test
+    public void journalIsCompactedOnceEverythingIsSent() throws IOException {
+        goOffline();
+        queue.enqueueEdit("b1", status(BookingStatus.Cancelled));
+        queue.enqueueEdit("b2", status(BookingStatus.Cancelled));
+        queue.awaitReplay();
+        assertTrue(journal.length() > 0);
+
+        goOnline();
+        server.enqueue(new MockResponse().setBody(OK));
+        server.enqueue(new MockResponse().setBody(OK));
+        replay();
+
+        assertEquals(0, journal.length());
+        assertEquals(0, open().getDepth());
+    }
+
+    @Test
+    public void clearEmptiesTheJournal() throws IOException {
+        goOffline();
+        queue.enqueueCreate(new Booking("Aberystwyth", "Borth", null, 2));
+        queue.awaitReplay();
+
+        queue.clear();
+
+        assertEquals(0, queue.getDepth());
+        assertEquals(0, open().getDepth());
+    }
+
+    /**
+     * Open a queue on the test's journal, recording the writes it drops
+     * @return
+     */
+    private OfflineWriteQueue open(){
+        OfflineWriteQueue opened = OfflineWriteQueue.open(journal);
+        opened.addOnWriteDroppedListener((bookingId, maybeApplied) ->
+                dropped.add(bookingId + (maybeApplied ? " maybe applied" : " rejected")));
+        return opened;
+    }
+
+    /**
+     * Replay the queue and wait for it to finish
+     */
+    private void replay(){
+        queue.replay();
+        queue.awaitReplay();
+    }
+
+    /**
+     * Send requests to the stand-in API
+     */
+    private void goOnline(){
+        NetworkUtil.setRetrofit(TestRetrofit.create(server));
+    }
+
+    /**
+     * Send requests to a port nothing is listening on, so they never reach an API
+     * @throws IOException
+     */
+    private void goOffline() throws IOException {
+        MockWebServer closed = new MockWebServer();
+        closed.start();
+        closed.shutdown();
+        NetworkUtil.setRetrofit(TestRetrofit.create(closed));
+    }
+
+    /**
+     * Describe a request as its method and path
+     * @param request
+     * @return
+     */
+    private static String describe(RecordedRequest request){
+        return request.getMethod() + " " + request.getPath();
+    }
+
+    /**
+     * An edit changing a booking's status
+     * @param status
+     * @return
+     */
+    private static Booking status(BookingStatus status){
+        Booking changes = new Booking();
+        changes.setStatus(status);
+        return changes;
+    }
+
+    /**
+     * An edit adding a note to a booking
+     * @param note
+     * @return
+     */
+    private static Booking note(String note){
+        Booking changes = new Booking();
+        changes.setNote(note);
+        return changes;
+    }
+
+    /**
+     * Check if a file's last byte is a line end
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    private static boolean endsWithNewline(File file) throws IOException {
+        try(RandomAccessFile in = new RandomAccessFile(file, "r")){
+            in.seek(in.length() - 1);
+            return in.read() == '\n';
+        }
+    }
+}
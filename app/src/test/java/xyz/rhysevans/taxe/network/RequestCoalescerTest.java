@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+import static org.junit.Assert.*;
+
+/**
+ * RequestCoalescerTest.java
+ *
+ * Tests sharing of identical in-flight requests and releasing them afterwards
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class RequestCoalescerTest {
+
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger unsubscribed = new AtomicInteger();
+
+    private PublishSubject<String> response;
+
+    @Test
+    public void identicalRequestsShareOneRequest(){
+        TestSubscriber<String> first = new TestSubscriber<>();
+        TestSubscriber<String> second = new TestSubscriber<>();
+        request("user").subscribe(first);
+        request("user").subscribe(second);
+
+        assertEquals(1, requests.get());
+        assertEquals(1, coalescer.getInFlightCount());
+
+        respond("value");
+
+        first.assertValues("value");
+        first.assertCompleted();
+        second.assertValues("value");
+        second.assertCompleted();
+    }
+
+    @Test
+    public void differentKeysAreNotShared(){
+        request("user").subscribe(new TestSubscriber<>());
+        request("booking").subscribe(new TestSubscriber<>());
+
+        assertEquals(2, requests.get());
+        assertEquals(2, coalescer.getInFlightCount());
+    }
+
+    @Test
+    public void keyIsReleasedOnceTheRequestTerminates(){
+        request("user").subscribe(new TestSubscriber<>());
+        respond("value");
+
+        assertEquals(0, coalescer.getInFlightCount());
+
+        // The next caller sends a fresh request
+        request("user").subscribe(new TestSubscriber<>());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void callerJoiningAfterTheValueStillReceivesAValue(){
+        Observable<String> shared = request("user");
+        shared.subscribe(new TestSubscriber<>());
+
+        // The value has been emitted but the request hasn't completed yet
+        response.onNext("value");
+        assertEquals(0, coalescer.getInFlightCount());
+
+        TestSubscriber<String> late = new TestSubscriber<>();
+        request("user").subscribe(late);
+        respond("fresh");
+
+        late.assertValues("fresh");
+        late.assertCompleted();
+    }
+
+    @Test
+    public void lastCallerUnsubscribingCancelsTheRequest(){
+        Subscription first = request("user").subscribe(new TestSubscriber<>());
+        Subscription second = request("user").subscribe(new TestSubscriber<>());
+
+        first.unsubscribe();
+        assertEquals(0, unsubscribed.get());
+        assertEquals(1, coalescer.getInFlightCount());
+
+        second.unsubscribe();
+        assertEquals(1, unsubscribed.get());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    /**
+     * A coalesced request answered by the current response subject
+     * @param key
+     * @return
+     */
+    private Observable<String> request(String key){
+        return coalescer.coalesce(key, () -> {
+            requests.incrementAndGet();
+            response = PublishSubject.create();
+            return response.doOnUnsubscribe(unsubscribed::incrementAndGet);
+        });
+    }
+
+    /**
+     * Answer the latest request with a single value
+     * @param value
+     */
+    private void respond(String value){
+        response.onNext(value);
+        response.onCompleted();
+    }
+}
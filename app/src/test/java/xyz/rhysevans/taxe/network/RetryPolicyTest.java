@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Response;
+import retrofit2.adapter.rxjava.HttpException;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import xyz.rhysevans.taxe.ImmediateSchedulersRule;
+import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.viewmodel.BookingViewModel;
+
+import static org.junit.Assert.*;
+
+/**
+ * RetryPolicyTest.java
+ *
+ * Tests the backoff timings and retry cap of RetryPolicy on a TestScheduler, and that
+ * creating a booking is never retried
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class RetryPolicyTest {
+
+    @Rule
+    public final ImmediateSchedulersRule schedulers = new ImmediateSchedulersRule();
+
+    private final TestScheduler scheduler = new TestScheduler();
+
+    // Always picks the top of the jitter range, so each delay is the full backoff
+    private final Random maxJitter = new Random(){
+        @Override
+        public double nextDouble(){
+            return Math.nextDown(1.0);
+        }
+    };
+
+    private final RetryPolicy policy = new RetryPolicy(3, 500, 1500, scheduler, maxJitter);
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        NetworkUtil.setRetrofit(TestRetrofit.create(server));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void backsOffExponentiallyUpToTheMaxDelay(){
+        AtomicInteger attempts = new AtomicInteger();
+        TestSubscriber<Object> subscriber = subscribe(failing(attempts, new IOException()));
+
+        assertEquals(1, attempts.get());
+
+        // 500ms before the first retry
+        scheduler.advanceTimeBy(499, TimeUnit.MILLISECONDS);
+        assertEquals(1, attempts.get());
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertEquals(2, attempts.get());
+
+        // Then 1000ms
+        scheduler.advanceTimeBy(999, TimeUnit.MILLISECONDS);
+        assertEquals(2, attempts.get());
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertEquals(3, attempts.get());
+
+        // Then capped at 1500ms rather than 2000ms
+        scheduler.advanceTimeBy(1499, TimeUnit.MILLISECONDS);
+        assertEquals(3, attempts.get());
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertEquals(4, attempts.get());
+
+        subscriber.assertError(IOException.class);
+    }
+
+    @Test
+    public void jitterIsBetweenZeroAndTheBackoff(){
+        RetryPolicy noJitter = new RetryPolicy(3, 500, 1500, scheduler, new Random(){
+            @Override
+            public double nextDouble(){
+                return 0;
+            }
+        });
+
+        assertEquals(0, noJitter.getDelay(0));
+        assertEquals(500, policy.getDelay(0));
+        assertEquals(1500, policy.getDelay(40));
+    }
+
+    @Test
+    public void stopsAfterMaxRetries(){
+        AtomicInteger attempts = new AtomicInteger();
+        TestSubscriber<Object> subscriber = subscribe(failing(attempts, new IOException()));
+
+        scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+
+        assertEquals(4, attempts.get());
+        subscriber.assertError(IOException.class);
+    }
+
+    @Test
+    public void doesNotRetryPermanentErrors(){
+        AtomicInteger attempts = new AtomicInteger();
+        TestSubscriber<Object> subscriber = subscribe(failing(attempts, httpError(400)));
+
+        scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+
+        assertEquals(1, attempts.get());
+        subscriber.assertError(HttpException.class);
+    }
+
+    @Test
+    public void doesNotRetryWhileTheCircuitIsOpen(){
+        AtomicInteger attempts = new AtomicInteger();
+        subscribe(failing(attempts, new CircuitOpenException("bookings")));
+
+        scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void retriesServiceUnavailable(){
+        AtomicInteger attempts = new AtomicInteger();
+        subscribe(failing(attempts, httpError(503)));
+
+        scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+
+        assertEquals(4, attempts.get());
+    }
+
+    @Test
+    public void createBookingIsNeverRetried(){
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(503));
+
+        TestSubscriber<xyz.rhysevans.taxe.model.Response> subscriber = new TestSubscriber<>();
+        new BookingViewModel().createBooking(new Booking()).subscribe(subscriber);
+
+        // Had it been retried the error would still be waiting on the backoff
+        subscriber.assertError(HttpException.class);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    /**
+     * Subscribe to a request with the policy under test applied
+     * @param request
+     * @return
+     */
+    private TestSubscriber<Object> subscribe(Observable<Object> request){
+        TestSubscriber<Object> subscriber = new TestSubscriber<>();
+        request.compose(policy.retry()).subscribe(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * A request that fails with the given error every time it is subscribed to
+     * @param attempts - Counts the subscriptions
+     * @param error
+     * @return
+     */
+    private static Observable<Object> failing(AtomicInteger attempts, Throwable error){
+        return Observable.defer(() -> {
+            attempts.incrementAndGet();
+            return Observable.error(error);
+        });
+    }
+
+    /**
+     * An HTTP error response with the given status code
+     * @param code
+     * @return
+     */
+    private static HttpException httpError(int code){
+        okhttp3.Response raw = new okhttp3.Response.Builder()
+                .request(new Request.Builder().url("http://localhost/").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("Error")
+                .build();
+
+        return new HttpException(Response.error(ResponseBody.create(MediaType.parse("application/json"), "{}"), raw));
+    }
+}
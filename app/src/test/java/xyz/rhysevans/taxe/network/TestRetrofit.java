@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.network;
+
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
+import retrofit2.converter.gson.GsonConverterFactory;
+import xyz.rhysevans.taxe.util.GsonUtil;
+
+/**
+ * TestRetrofit.java
+ *
+ * Builds the API interface against a local MockWebServer, with the same converter and call
+ * adapter and base path as the app's own interfaces
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public final class TestRetrofit {
+
+    /**
+     * Private constructor, static methods only
+     */
+    private TestRetrofit(){}
+
+    /**
+     * Create an interface that sends every request to the given server
+     * @param server
+     * @return
+     */
+    public static RetrofitInterface create(MockWebServer server){
+        return new Retrofit.Builder()
+                .baseUrl(server.url("/api/v1/"))
+                .addConverterFactory(GsonConverterFactory.create(GsonUtil.getGson()))
+                .addCallAdapterFactory(RxJavaCallAdapterFactory.create())
+                .build()
+                .create(RetrofitInterface.class);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Locale;
+
+import xyz.rhysevans.taxe.model.Booking;
+
+import static org.junit.Assert.*;
+
+/**
+ * BookingTypeAdapterBenchmark.java
+ *
+ * Compares the throughput and allocation of BookingTypeAdapter against the old
+ * LegacyBookingDeserializer when reading a list of 10k bookings. The figures are printed,
+ * only the allocation is asserted on as the timings depend on the machine.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingTypeAdapterBenchmark {
+
+    private static final int BOOKINGS = 10000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    private static final Type BOOKING_LIST_TYPE = new TypeToken<ArrayList<Booking>>(){}.getType();
+
+    private static String json;
+
+    @BeforeClass
+    public static void buildResponse(){
+        StringBuilder builder = new StringBuilder("[");
+        for(int i = 0; i < BOOKINGS; i++){
+            if(i > 0){
+                builder.append(',');
+            }
+
+            // Half the bookings have populated users, the rest only their IDs
+            String customer = i % 2 == 0
+                    ? "{\"_id\":\"c" + i + "\",\"name\":\"Customer " + i + "\",\"email\":\"c" + i + "@taxe.xyz\",\"role\":\"Customer\"}"
+                    : "\"c" + i + "\"";
+
+            builder.append("{\"_id\":\"b").append(i)
+                    .append("\",\"pickup_location\":\"").append(i).append(" High Street")
+                    .append("\",\"destination\":\"Railway Station")
+                    .append("\",\"time\":\"2019-03-01T10:00:00.000Z")
+                    .append("\",\"created_at\":\"2019-02-28T09:30:00.000Z")
+                    .append("\",\"no_passengers\":").append(1 + i % 4)
+                    .append(",\"notes\":[\"Note one\",\"Note two\"]")
+                    .append(",\"status\":\"Pending")
+                    .append("\",\"company\":\"Taxe Cabs")
+                    .append("\",\"customer\":").append(customer)
+                    .append(",\"driver\":\"d").append(i % 20).append("\"}");
+        }
+        json = builder.append(']').toString();
+    }
+
+    @Test
+    public void typeAdapterAllocatesLessThanDeserializer(){
+        Gson legacy = new GsonBuilder()
+                .registerTypeAdapter(Booking.class, new LegacyBookingDeserializer())
+                .create();
+        Gson streaming = GsonUtil.getGson();
+
+        // Both must read the same bookings for the comparison to mean anything
+        ArrayList<Booking> expected = legacy.fromJson(json, BOOKING_LIST_TYPE);
+        ArrayList<Booking> actual = streaming.fromJson(json, BOOKING_LIST_TYPE);
+        assertEquals(BOOKINGS, actual.size());
+        for(int i = 0; i < BOOKINGS; i += 997){
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getCustomer().getId(), actual.get(i).getCustomer().getId());
+            assertEquals(expected.get(i).getNotes(), actual.get(i).getNotes());
+            assertEquals(expected.get(i).getTime(), actual.get(i).getTime());
+        }
+
+        Result legacyResult = measure(legacy);
+        Result streamingResult = measure(streaming);
+
+        assertTrue("BookingTypeAdapter (" + streamingResult + ") should allocate less than BookingDeserializer ("
+                + legacyResult + ")", streamingResult.bytes < legacyResult.bytes);
+    }
+
+    /**
+     * Read the response ROUNDS times after warming up
+     * @param gson
+     * @return The average time and allocation of one read of 10k bookings
+     */
+    private static Result measure(Gson gson){
+        for(int i = 0; i < WARMUP_ROUNDS; i++){
+            gson.fromJson(json, BOOKING_LIST_TYPE);
+        }
+
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime();
+        for(int i = 0; i < ROUNDS; i++){
+            gson.fromJson(json, BOOKING_LIST_TYPE);
+        }
+
+        return new Result((System.nanoTime() - startTime) / ROUNDS, (allocatedBytes() - startBytes) / ROUNDS);
+    }
+
+    /**
+     * Get the number of bytes allocated by the current thread so far
+     * @return
+     */
+    private static long allocatedBytes(){
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Average cost of reading 10k bookings
+     */
+    private static class Result {
+        final long nanos;
+        final long bytes;
+
+        Result(long nanos, long bytes){
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String toString(){
+            return String.format(Locale.UK, "%.1f ms, %.1f MB allocated per %d bookings",
+                    nanos / 1e6, bytes / 1e6, BOOKINGS);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.util;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Iso8601Benchmark.java
+ *
+ * Compares parsing and formatting timestamps with Iso8601 against SimpleDateFormat. The
+ * figures are printed, only the allocation is asserted on as the timings depend on the machine.
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class Iso8601Benchmark {
+
+    private static final String PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+    private static final int TIMESTAMPS = 100000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    private static String[] timestamps;
+    private static long[] millis;
+
+    @BeforeClass
+    public static void buildTimestamps(){
+        SimpleDateFormat format = newFormat();
+        timestamps = new String[TIMESTAMPS];
+        millis = new long[TIMESTAMPS];
+
+        // Spread over several years, at millisecond precision
+        long time = 1546300800123L;
+        for(int i = 0; i < TIMESTAMPS; i++){
+            time += 1237L * 1000 + 7;
+            millis[i] = time;
+            timestamps[i] = format.format(new Date(time));
+        }
+    }
+
+    @Test
+    public void parseAllocatesLessThanSimpleDateFormat() throws ParseException {
+        // Both must read the same times for the comparison to mean anything
+        SimpleDateFormat format = newFormat();
+        for(int i = 0; i < TIMESTAMPS; i += 101){
+            assertEquals(millis[i], Iso8601.parse(timestamps[i]));
+            assertEquals(millis[i], format.parse(timestamps[i]).getTime());
+        }
+
+        Result simpleDateFormat = measure(() -> {
+            // A new format per call, as the old deserializer did
+            SimpleDateFormat perCall = newFormat();
+            for(String timestamp : timestamps){
+                perCall.parse(timestamp);
+            }
+        });
+        Result iso8601 = measure(() -> {
+            for(String timestamp : timestamps){
+                Iso8601.parse(timestamp);
+            }
+        });
+
+        assertTrue("Iso8601 parse (" + iso8601 + ") should allocate less than SimpleDateFormat ("
+                + simpleDateFormat + ")", iso8601.bytes < simpleDateFormat.bytes);
+    }
+
+    @Test
+    public void formatAllocatesLessThanSimpleDateFormat() throws ParseException {
+        SimpleDateFormat format = newFormat();
+        for(int i = 0; i < TIMESTAMPS; i += 101){
+            assertEquals(timestamps[i], Iso8601.format(millis[i]));
+        }
+
+        Result simpleDateFormat = measure(() -> {
+            for(long time : millis){
+                format.format(new Date(time));
+            }
+        });
+        Result iso8601 = measure(() -> {
+            for(long time : millis){
+                Iso8601.format(time);
+            }
+        });
+
+        assertTrue("Iso8601 format (" + iso8601 + ") should allocate less than SimpleDateFormat ("
+                + simpleDateFormat + ")", iso8601.bytes < simpleDateFormat.bytes);
+    }
+
+    /**
+     * Create a format for the timestamps the API sends
+     * @return
+     */
+    private static SimpleDateFormat newFormat(){
+        SimpleDateFormat format = new SimpleDateFormat(PATTERN, Locale.UK);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+
+    /**
+     * Run the task ROUNDS times after warming up
+     * @param task
+     * @return The average time and allocation of one run over all timestamps
+     */
+    private static Result measure(Task task) throws ParseException {
+        for(int i = 0; i < WARMUP_ROUNDS; i++){
+            task.run();
+        }
+
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime();
+        for(int i = 0; i < ROUNDS; i++){
+            task.run();
+        }
+
+        return new Result((System.nanoTime() - startTime) / ROUNDS, (allocatedBytes() - startBytes) / ROUNDS);
+    }
+
+    /**
+     * Get the number of bytes allocated by the current thread so far
+     * @return
+     */
+    private static long allocatedBytes(){
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * A benchmarked operation over all timestamps
+     */
+    private interface Task {
+        void run() throws ParseException;
+    }
+
+    /**
+     * Average cost of one run over all timestamps
+     */
+    private static class Result {
+        final long nanos;
+        final long bytes;
+
+        Result(long nanos, long bytes){
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String toString(){
+            return String.format(Locale.UK, "%.1f ms, %.1f MB allocated per %d timestamps",
+                    nanos / 1e6, bytes / 1e6, TIMESTAMPS);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * Iso8601DateAdapterTest.java
+ *
+ * Tests for reading dates with Iso8601DateAdapter
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class Iso8601DateAdapterTest {
+
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(Date.class, new Iso8601DateAdapter())
+            .create();
+
+    @Test
+    public void readsIso8601(){
+        assertEquals(1551434400000L, gson.fromJson("\"2019-03-01T10:00:00.000Z\"", Date.class).getTime());
+    }
+
+    @Test
+    public void readsGsonDefaultFormat(){
+        String legacy = new Gson().toJson(new Date(1551434400000L));
+        assertEquals(1551434400000L, gson.fromJson(legacy, Date.class).getTime());
+    }
+
+    @Test
+    public void readsUnreadableDateAsNull(){
+        assertNull(gson.fromJson("\"yesterday\"", Date.class));
+    }
+}
@@ -14,8 +14,6 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 
-import org.json.JSONArray;
-
 import java.lang.reflect.Type;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -23,21 +21,22 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.TimeZone;
 
 import xyz.rhysevans.taxe.model.Booking;
 import xyz.rhysevans.taxe.model.User;
 
 /**
- * BookingDeserializer.java
+ * LegacyBookingDeserializer.java
  *
- * Custom deserializer class to handle dynamic JSON response for bookings
- * Adapted from:
- * http://www.veskoiliev.com/how-to-handle-dynamic-json-response-with-retrofit/?fbclid=IwAR26EEtwq0hUbqxUr1UzyGPyORFfYWaE3gzAmDCZW1y2AH6Mj8cpZO8BP9g
+ * The JsonElement tree based BookingDeserializer that BookingTypeAdapter replaced, kept as the
+ * baseline for BookingTypeAdapterBenchmark. The only change is that dates are read as UTC, so
+ * both read the same dates in any time zone
  *
  * @author Rhys Evans
  * @version 0.1
  */
-public class BookingDeserializer implements JsonDeserializer<Booking> {
+class LegacyBookingDeserializer implements JsonDeserializer<Booking> {
 
     // JSON fields that correspond to Booking POJO
     private final String ID_KEY = "_id";
@@ -92,6 +91,8 @@ public class BookingDeserializer implements JsonDeserializer<Booking> {
         Date time = null;
         Date createdAt = null;
         SimpleDateFormat format = new SimpleDateFormat("yy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.UK);
+        // The 'Z' is matched as a literal, so the zone has to be set for the dates to be read as UTC
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
 
         try{
             time = format.parse(jsonObject.get(TIME_KEY).getAsString());
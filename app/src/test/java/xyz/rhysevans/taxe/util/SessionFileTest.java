@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import xyz.rhysevans.taxe.model.User;
+
+import static org.junit.Assert.*;
+
+/**
+ * SessionFileTest.java
+ *
+ * Tests writing, reading and deleting the session file
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class SessionFileTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackTheWrittenSession() throws IOException {
+        SessionFile sessionFile = new SessionFile(new File(folder.getRoot(), "session"));
+        User user = new User("u1", "Rhys", "rhys@example.com", "Customer", null);
+
+        sessionFile.write("token", user);
+        SessionFile.Session session = sessionFile.read();
+
+        assertEquals("token", session.token);
+        assertEquals("u1", session.user.getId());
+        assertEquals("Rhys", session.user.getName());
+    }
+
+    @Test
+    public void deletesTheSession() throws IOException {
+        SessionFile sessionFile = new SessionFile(new File(folder.getRoot(), "session"));
+        sessionFile.write("token", null);
+
+        sessionFile.delete();
+
+        assertFalse(sessionFile.exists());
+        assertNull(sessionFile.read());
+
+        // Deleting a session that isn't there is fine
+        sessionFile.delete();
+    }
+
+    @Test(expected = IOException.class)
+    public void reportsASessionThatCannotBeDeleted() throws IOException {
+        // A directory that isn't empty can't be deleted
+        File stuck = folder.newFolder("session");
+        assertTrue(new File(stuck, "child").createNewFile());
+
+        new SessionFile(stuck).delete();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.util;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import xyz.rhysevans.taxe.model.User;
+
+import static org.junit.Assert.*;
+
+/**
+ * SharedPreferencesManagerTest.java
+ *
+ * Tests that the session kept in memory is written to the session file in order, even when
+ * it is changed from several threads, and that the saved user is only ever handed out as a copy
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class SharedPreferencesManagerTest {
+
+    private static final int THREADS = 4;
+    private static final int CHANGES = 500;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private SharedPreferencesManager manager;
+
+    @Before
+    public void setUp(){
+        file = new File(folder.getRoot(), "session.bin");
+        manager = SharedPreferencesManager.open(file);
+    }
+
+    @Test
+    public void fileHoldsTheLastSessionAfterConcurrentChanges() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> done = new ArrayList<>();
+
+        for(int t = 0; t < THREADS; t++){
+            int thread = t;
+            done.add(threads.submit(() -> {
+                start.await();
+                for(int i = 0; i < CHANGES; i++){
+                    switch(i % 3){
+                        case 0:
+                            manager.putUser(user("u" + thread + "-" + i));
+                            break;
+                        case 1:
+                            manager.putToken("t" + thread + "-" + i);
+                            break;
+                        default:
+                            manager.deleteAll();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for(Future<?> future : done){
+            future.get(10, TimeUnit.SECONDS);
+        }
+        threads.shutdown();
+
+        // Whichever change came last, the file must match the session in memory
+        manager.flush();
+        assertMatchesFile();
+
+        // And once the changes stop, the last one made is the one on disk
+        manager.putUser(user("last"));
+        manager.putToken("last-token");
+        manager.flush();
+        assertMatchesFile();
+        assertEquals("last-token", SharedPreferencesManager.open(file).getCachedToken());
+
+        manager.deleteAll();
+        manager.flush();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void sessionIsReadBackWhenOpened(){
+        manager.putUser(user("u1"));
+        manager.putToken("token");
+        manager.flush();
+
+        SharedPreferencesManager reopened = SharedPreferencesManager.open(file);
+        assertEquals("token", reopened.getToken());
+        assertEquals("u1", reopened.getUser().getId());
+    }
+
+    @Test
+    public void savedUserIsOnlyHandedOutAsACopy(){
+        User saved = user("u1");
+        saved.setPassword("secret");
+        manager.putUser(saved);
+
+        // Changes made by the caller afterwards aren't saved
+        saved.setName("Changed");
+        assertEquals("Rhys", manager.getUser().getName());
+
+        // Nor are changes to a copy read back
+        User copy = manager.getUser();
+        copy.setName("Changed");
+        assertNotSame(copy, manager.getUser());
+        assertEquals("Rhys", manager.getUser().getName());
+
+        // The password is never saved
+        assertNull(manager.getUser().getPassword());
+    }
+
+    @Test
+    public void listenersGetACopyOfEachChange(){
+        List<User> changes = new ArrayList<>();
+        SharedPreferencesManager.OnUserChangedListener listener = changes::add;
+        manager.addOnUserChangedListener(listener);
+        // Adding the same listener twice only notifies it once
+        manager.addOnUserChangedListener(listener);
+
+        User saved = user("u1");
+        manager.putUser(saved);
+        manager.deleteAll();
+
+        assertEquals(2, changes.size());
+        assertEquals("u1", changes.get(0).getId());
+        assertNotSame(saved, changes.get(0));
+        assertNull(changes.get(1));
+
+        manager.removeOnUserChangedListener(listener);
+        manager.putUser(user("u2"));
+        assertEquals(2, changes.size());
+    }
+
+    /**
+     * Check the session file holds the session kept in memory
+     */
+    private void assertMatchesFile(){
+        SessionFile.Session session = new SessionFile(file).read();
+        User user = manager.getUser();
+        String token = manager.getCachedToken();
+
+        if(token == null && user == null){
+            assertNull(session);
+            return;
+        }
+
+        assertNotNull(session);
+        assertEquals(token, session.token);
+        assertEquals(user != null ? user.getId() : null, session.user != null ? session.user.getId() : null);
+    }
+
+    /**
+     * A populated user
+     * @param id
+     * @return
+     */
+    private static User user(String id){
+        return new User(id, "Rhys", "rhys@example.com", "Customer", null);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.viewmodel;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.BehaviorSubject;
+import xyz.rhysevans.taxe.ImmediateSchedulersRule;
+import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.util.BookingStatus;
+
+import static org.junit.Assert.*;
+
+/**
+ * BookingPollingSchedulerTest.java
+ *
+ * Tests when BookingPollingScheduler polls and which results it passes on
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingPollingSchedulerTest {
+
+    @Rule
+    public final ImmediateSchedulersRule schedulers = new ImmediateSchedulersRule();
+
+    private final TestScheduler scheduler = new TestScheduler();
+    private final BehaviorSubject<Boolean> foreground = BehaviorSubject.create(true);
+    private final AtomicBoolean pushConnected = new AtomicBoolean();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    // What the API currently returns
+    private ArrayList<Booking> current = bookings(BookingStatus.In_Progress);
+
+    private final BookingPollingScheduler pollingScheduler = new BookingPollingScheduler(() -> {
+        requests.incrementAndGet();
+        return Observable.just(current);
+    }, scheduler, foreground, pushConnected::get);
+
+    @Test
+    public void firstPollWaitsForTheSeededInterval(){
+        pollingScheduler.seed(current);
+        TestSubscriber<ArrayList<Booking>> subscriber = start();
+
+        assertEquals(0, requests.get());
+        scheduler.advanceTimeBy(BookingPollingScheduler.FAST_INTERVAL, TimeUnit.MILLISECONDS);
+        assertEquals(1, requests.get());
+
+        // Same bookings as shown, nothing to pass on
+        subscriber.assertNoValues();
+    }
+
+    @Test
+    public void changesAreEmitted(){
+        pollingScheduler.seed(current);
+        TestSubscriber<ArrayList<Booking>> subscriber = start();
+
+        current = bookings(BookingStatus.Arrived);
+        scheduler.advanceTimeBy(BookingPollingScheduler.FAST_INTERVAL, TimeUnit.MILLISECONDS);
+
+        subscriber.assertValue(current);
+    }
+
+    @Test
+    public void firstChangeAfterPushDisconnectsIsEmitted(){
+        pushConnected.set(true);
+        pollingScheduler.seed(current);
+        TestSubscriber<ArrayList<Booking>> subscriber = start();
+
+        // Skipped while changes are pushed
+        scheduler.advanceTimeBy(BookingPollingScheduler.FAST_INTERVAL, TimeUnit.MILLISECONDS);
+        assertEquals(0, requests.get());
+
+        pushConnected.set(false);
+        current = bookings(BookingStatus.Finished);
+        scheduler.advanceTimeBy(BookingPollingScheduler.FAST_INTERVAL, TimeUnit.MILLISECONDS);
+
+        subscriber.assertValue(current);
+    }
+
+    @Test
+    public void pollsStraightAwayWhenBackInTheForeground(){
+        pollingScheduler.seed(current);
+        start();
+
+        foreground.onNext(false);
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS);
+        assertEquals(0, requests.get());
+
+        foreground.onNext(true);
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void unchangedPollsBackOff(){
+        pollingScheduler.seed(current);
+        start();
+
+        scheduler.advanceTimeBy(BookingPollingScheduler.FAST_INTERVAL, TimeUnit.MILLISECONDS);
+        assertEquals(2 * BookingPollingScheduler.FAST_INTERVAL, pollingScheduler.getCurrentInterval());
+
+        scheduler.advanceTimeBy(2 * BookingPollingScheduler.FAST_INTERVAL - 1, TimeUnit.MILLISECONDS);
+        assertEquals(1, requests.get());
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertEquals(2, requests.get());
+    }
+
+    /**
+     * Start polling
+     * @return
+     */
+    private TestSubscriber<ArrayList<Booking>> start(){
+        TestSubscriber<ArrayList<Booking>> subscriber = new TestSubscriber<>();
+        pollingScheduler.start().subscribe(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * A list of a single booking with the given status
+     * @param status
+     * @return
+     */
+    private static ArrayList<Booking> bookings(BookingStatus status){
+        Booking booking = new Booking();
+        booking.setId("b1");
+        booking.setStatus(status);
+        return new ArrayList<>(Collections.singletonList(booking));
+    }
+}
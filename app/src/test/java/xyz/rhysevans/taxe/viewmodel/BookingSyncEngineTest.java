@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.viewmodel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import rx.observers.TestSubscriber;
+import xyz.rhysevans.taxe.ImmediateSchedulersRule;
+import xyz.rhysevans.taxe.data.BookingStore;
+import xyz.rhysevans.taxe.data.InMemoryBookingStore;
+import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.model.User;
+import xyz.rhysevans.taxe.network.NetworkUtil;
+import xyz.rhysevans.taxe.network.TestRetrofit;
+import xyz.rhysevans.taxe.util.BookingStatus;
+import xyz.rhysevans.taxe.util.GsonUtil;
+import xyz.rhysevans.taxe.util.Iso8601;
+
+import static org.junit.Assert.*;
+
+/**
+ * BookingSyncEngineTest.java
+ *
+ * Tests delta syncs of a user's booking history against a stand-in API
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class BookingSyncEngineTest {
+
+    private static final String USER_ID = "u1";
+
+    @Rule
+    public final ImmediateSchedulersRule schedulers = new ImmediateSchedulersRule();
+
+    private final BookingSyncEngine engine = BookingSyncEngine.getInstance();
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        NetworkUtil.setRetrofit(TestRetrofit.create(server));
+        BookingStore.setInstance(new InMemoryBookingStore());
+        engine.clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        engine.clear();
+        BookingStore.setInstance(null);
+    }
+
+    @Test
+    public void cannotSyncBeforeTheFirstPage(){
+        assertFalse(engine.canSync(USER_ID));
+
+        loadFirstPage(booking("b3", 3000), booking("b2", 2000), booking("b1", 1000));
+
+        assertTrue(engine.canSync(USER_ID));
+    }
+
+    @Test
+    public void asksForChangesSinceTheLatestUpdate() throws InterruptedException {
+        loadFirstPage(booking("b3", 3000), booking("b2", 2000), booking("b1", 1000));
+
+        server.enqueue(changes(booking("b2", 5000)));
+        sync();
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("/api/v1/users/" + USER_ID + "/bookings", request.getRequestUrl().encodedPath());
+        assertEquals(Iso8601.format(3000), request.getRequestUrl().queryParameter("updated_since"));
+
+        // The next sync starts from the newest change
+        server.enqueue(changes());
+        sync();
+        assertEquals(Iso8601.format(5000), server.takeRequest().getRequestUrl().queryParameter("updated_since"));
+    }
+
+    @Test
+    public void mergesChangesIntoTheLoadedHistory(){
+        loadFirstPage(booking("b3", 3000), booking("b2", 2000), booking("b1", 1000));
+
+        Booking edited = booking("b2", 4000);
+        edited.setStatus(BookingStatus.Cancelled);
+        Booking deleted = booking("b1", 4000);
+        deleted.setDeleted(true);
+
+        // b0 is older than anything loaded, so it is left for the pager
+        server.enqueue(changes(edited, deleted, booking("b4", 4000), booking("b0", 4000)));
+        List<Booking> synced = sync();
+
+        assertEquals(Arrays.asList("b4", "b3", "b2"), ids(synced));
+        assertEquals(BookingStatus.Cancelled, synced.get(2).getStatus());
+        assertEquals(4, engine.getLastChangeCount());
+
+        // Every change is kept in the store, including the older booking
+        BookingStore store = BookingStore.getInstance();
+        assertEquals(BookingStatus.Cancelled, store.getBooking("b2").getStatus());
+        assertNull(store.getBooking("b1"));
+        assertNotNull(store.getBooking("b0"));
+    }
+
+    @Test
+    public void laterPagesExtendTheSyncedHistory(){
+        loadFirstPage(booking("b4", 4000), booking("b3", 3000));
+        loadPage(booking("b2", 2000), booking("b1", 1000));
+
+        server.enqueue(changes());
+
+        assertEquals(Arrays.asList("b4", "b3", "b2", "b1"), ids(sync()));
+    }
+
+    @Test
+    public void readsTheHistoryFromTheStore(){
+        loadFirstPage(booking("b3", 3000), booking("b1", 1000));
+
+        // Stored by another screen, e.g. the user's active bookings
+        BookingStore.getInstance().put(booking("b2", 2000));
+
+        server.enqueue(changes());
+
+        assertEquals(Arrays.asList("b3", "b2", "b1"), ids(sync()));
+    }
+
+    @Test
+    public void clearForgetsTheHistory(){
+        loadFirstPage(booking("b1", 1000));
+
+        engine.clear();
+
+        assertFalse(engine.canSync(USER_ID));
+    }
+
+    /**
+     * Load the first page of the user's history, as the pager does
+     * @param page
+     */
+    private void loadFirstPage(Booking... page){
+        ArrayList<Booking> bookings = new ArrayList<>(Arrays.asList(page));
+        BookingStore.getInstance().putAll(bookings);
+        engine.onPageLoaded(USER_ID, bookings, true);
+    }
+
+    /**
+     * Load a further page of the user's history, as the pager does
+     * @param page
+     */
+    private void loadPage(Booking... page){
+        ArrayList<Booking> bookings = new ArrayList<>(Arrays.asList(page));
+        BookingStore.getInstance().putAll(bookings);
+        engine.onPageLoaded(USER_ID, bookings, false);
+    }
+
+    /**
+     * Sync the user's history, expecting it to succeed
+     * @return the synced history
+     */
+    private List<Booking> sync(){
+        TestSubscriber<ArrayList<Booking>> subscriber = new TestSubscriber<>();
+        engine.sync(USER_ID).subscribe(subscriber);
+
+        subscriber.assertNoErrors();
+        subscriber.assertValueCount(1);
+        return subscriber.getOnNextEvents().get(0);
+    }
+
+    /**
+     * A sync response containing the given bookings
+     * @param bookings
+     * @return
+     */
+    private static MockResponse changes(Booking... bookings){
+        return new MockResponse().setBody(GsonUtil.getGson().toJson(new ArrayList<>(Arrays.asList(bookings))));
+    }
+
+    /**
+     * A pending booking of the user's
+     * @param id
+     * @param updatedAt - Last modification (epoch millis)
+     * @return
+     */
+    private static Booking booking(String id, long updatedAt){
+        User customer = new User();
+        customer.setId(USER_ID);
+
+        Booking booking = new Booking();
+        booking.setId(id);
+        booking.setCustomer(customer);
+        booking.setStatus(BookingStatus.Pending);
+        booking.setUpdatedAt(new Date(updatedAt));
+        return booking;
+    }
+
+    /**
+     * Get the IDs of a list of bookings
+     * @param bookings
+     * @return
+     */
+    private static List<String> ids(List<Booking> bookings){
+        List<String> ids = new ArrayList<>();
+        for(Booking booking : bookings){
+            ids.add(booking.getId());
+        }
+
+        return ids;
+    }
+}
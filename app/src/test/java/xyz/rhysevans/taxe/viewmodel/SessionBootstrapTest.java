@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.viewmodel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import rx.observers.TestSubscriber;
+import xyz.rhysevans.taxe.ImmediateSchedulersRule;
+import xyz.rhysevans.taxe.data.BookingStore;
+import xyz.rhysevans.taxe.data.InMemoryBookingStore;
+import xyz.rhysevans.taxe.model.Bootstrap;
+import xyz.rhysevans.taxe.network.NetworkUtil;
+import xyz.rhysevans.taxe.network.TestRetrofit;
+
+import static org.junit.Assert.*;
+
+/**
+ * SessionBootstrapTest.java
+ *
+ * Tests loading the session's bootstrap against a stand-in API
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class SessionBootstrapTest {
+
+    private static final String USER_ID = "u1";
+
+    private static final String BOOTSTRAP = "{\"user\":{\"_id\":\"u1\",\"name\":\"Rhys\"},"
+            + "\"most_recent_booking\":{\"_id\":\"b2\",\"status\":\"Finished\",\"customer\":\"u1\"},"
+            + "\"active_bookings\":[{\"_id\":\"b1\",\"status\":\"Pending\",\"customer\":\"u1\"}]}";
+
+    @Rule
+    public final ImmediateSchedulersRule schedulers = new ImmediateSchedulersRule();
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        NetworkUtil.setRetrofit(TestRetrofit.create(server));
+        BookingStore.setInstance(new InMemoryBookingStore());
+        SessionBootstrap.getInstance().clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        SessionBootstrap.getInstance().clear();
+        BookingStore.setInstance(null);
+    }
+
+    @Test
+    public void loadedBootstrapIsKeptAndStored(){
+        server.enqueue(new MockResponse().setBody(BOOTSTRAP));
+
+        refresh();
+
+        assertNotNull(SessionBootstrap.getInstance().getLoaded(USER_ID));
+        BookingStore store = BookingStore.getInstance();
+        assertEquals("Rhys", store.getUser(USER_ID).getName());
+        assertNotNull(store.getBooking("b1"));
+        assertNotNull(store.getBooking("b2"));
+    }
+
+    @Test
+    public void bootstrapArrivingAfterLogoutIsDropped(){
+        // The user logs out (in Session.logout()'s order) while the request is in flight
+        server.setDispatcher(new Dispatcher(){
+            @Override
+            public MockResponse dispatch(RecordedRequest request){
+                BookingStore.getInstance().clear();
+                SessionBootstrap.getInstance().clear();
+                return new MockResponse().setBody(BOOTSTRAP);
+            }
+        });
+
+        refresh();
+
+        assertNull(SessionBootstrap.getInstance().getLoaded(USER_ID));
+        BookingStore store = BookingStore.getInstance();
+        assertNull(store.getUser(USER_ID));
+        assertNull(store.getBooking("b1"));
+        assertNull(store.getBooking("b2"));
+    }
+
+    /**
+     * Refresh the user's bootstrap and wait for it to finish
+     */
+    private void refresh(){
+        TestSubscriber<Bootstrap> subscriber = new TestSubscriber<>();
+        SessionBootstrap.getInstance().refresh(USER_ID).subscribe(subscriber);
+        subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        subscriber.assertNoErrors();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.viewmodel;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import xyz.rhysevans.taxe.ImmediateSchedulersRule;
+
+import static org.junit.Assert.*;
+
+/**
+ * StoreFirstTest.java
+ *
+ * Tests showing a stored value before the API's, and keeping it when the API can't be reached
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class StoreFirstTest {
+
+    @Rule
+    public final ImmediateSchedulersRule schedulers = new ImmediateSchedulersRule();
+
+    private final AtomicBoolean offline = new AtomicBoolean();
+
+    @Test
+    public void emitsTheStoredValueThenTheApis(){
+        TestSubscriber<String> subscriber = load("stored", Observable.just("api"));
+
+        subscriber.assertValues("stored", "api");
+        subscriber.assertCompleted();
+        assertFalse(offline.get());
+    }
+
+    @Test
+    public void keepsTheStoredValueWhenOffline(){
+        TestSubscriber<String> subscriber = load("stored", Observable.error(new IOException()));
+
+        subscriber.assertValues("stored");
+        subscriber.assertCompleted();
+        assertTrue(offline.get());
+    }
+
+    @Test
+    public void reportsOtherErrors(){
+        TestSubscriber<String> subscriber = load("stored", Observable.error(new IllegalStateException()));
+
+        subscriber.assertValues("stored");
+        subscriber.assertError(IllegalStateException.class);
+        assertFalse(offline.get());
+    }
+
+    @Test
+    public void reportsBeingOfflineWithNothingStored(){
+        TestSubscriber<String> subscriber = load(null, Observable.error(new IOException()));
+
+        subscriber.assertNoValues();
+        subscriber.assertError(IOException.class);
+        assertFalse(offline.get());
+    }
+
+    /**
+     * Load a value, store first
+     * @param stored - The stored value, or null if there is none
+     * @param request - The API request
+     * @return
+     */
+    private TestSubscriber<String> load(String stored, Observable<String> request){
+        TestSubscriber<String> subscriber = new TestSubscriber<>();
+        StoreFirst.of(() -> stored, request, () -> offline.set(true)).subscribe(subscriber);
+        return subscriber;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) Rhys Evans
+ * All Rights Reserved
+ */
+
+package xyz.rhysevans.taxe.viewmodel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import rx.observers.TestSubscriber;
+import xyz.rhysevans.taxe.ImmediateSchedulersRule;
+import xyz.rhysevans.taxe.data.BookingStore;
+import xyz.rhysevans.taxe.data.InMemoryBookingStore;
+import xyz.rhysevans.taxe.model.Booking;
+import xyz.rhysevans.taxe.model.User;
+import xyz.rhysevans.taxe.network.NetworkUtil;
+import xyz.rhysevans.taxe.network.TestRetrofit;
+import xyz.rhysevans.taxe.util.BookingStatus;
+
+import static org.junit.Assert.*;
+
+/**
+ * UserViewModelTest.java
+ *
+ * Tests loading a user's most recent and active bookings against a stand-in API
+ *
+ * @author Rhys Evans
+ * @version 0.1
+ */
+public class UserViewModelTest {
+
+    private static final String USER_ID = "u1";
+
+    private static final String POPULATED = "{\"_id\":\"b1\",\"customer\":{\"_id\":\"u1\",\"name\":\"Rhys\"}}";
+    private static final String UNPOPULATED = "{\"_id\":\"b1\",\"customer\":\"u1\"}";
+
+    @Rule
+    public final ImmediateSchedulersRule schedulers = new ImmediateSchedulersRule();
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        NetworkUtil.setRetrofit(TestRetrofit.create(server));
+        BookingStore.setInstance(new InMemoryBookingStore());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        BookingStore.setInstance(null);
+    }
+
+    @Test
+    public void populatedBookingCostsOneRequest() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody("[" + POPULATED + "]"));
+
+        TestSubscriber<Booking> subscriber = requestMostRecentBooking();
+
+        subscriber.assertValueCount(1);
+        assertEquals("Rhys", subscriber.getOnNextEvents().get(0).getCustomer().getName());
+        assertEquals(1, server.getRequestCount());
+
+        HttpUrl url = server.takeRequest().getRequestUrl();
+        assertEquals("/api/v1/users/" + USER_ID + "/bookings", url.encodedPath());
+        assertEquals("1", url.queryParameter("limit"));
+        assertEquals("true", url.queryParameter("populate"));
+
+        // The booking is kept on the device for the next launch
+        assertNotNull(BookingStore.getInstance().getBooking("b1"));
+    }
+
+    @Test
+    public void unpopulatedBookingIsFetchedWithASecondRequest() throws InterruptedException {
+        server.enqueue(new MockResponse().setBody("[" + UNPOPULATED + "]"));
+        server.enqueue(new MockResponse().setBody(POPULATED));
+
+        TestSubscriber<Booking> subscriber = requestMostRecentBooking();
+
+        subscriber.assertValueCount(1);
+        assertEquals("Rhys", subscriber.getOnNextEvents().get(0).getCustomer().getName());
+        assertEquals(2, server.getRequestCount());
+
+        server.takeRequest();
+        assertEquals("/api/v1/bookings/b1", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void userWithoutBookingsCompletesEmpty(){
+        server.enqueue(new MockResponse().setBody("[]"));
+
+        TestSubscriber<Booking> subscriber = requestMostRecentBooking();
+
+        subscriber.assertNoValues();
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void activeBookingsReplaceTheStoredOnes(){
+        BookingStore store = BookingStore.getInstance();
+        store.put(active("b1"));
+        store.put(active("b2"));
+
+        // b1 was cancelled on another device
+        server.enqueue(new MockResponse().setBody("[{\"_id\":\"b2\",\"status\":\"Pending\",\"customer\":\"u1\"}]"));
+
+        TestSubscriber<ArrayList<Booking>> subscriber = new TestSubscriber<>();
+        new UserViewModel().getActiveBookings(USER_ID, () -> {}).subscribe(subscriber);
+        subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        subscriber.assertNoErrors();
+
+        ArrayList<Booking> stored = store.getActiveBookings(USER_ID);
+        assertEquals(1, stored.size());
+        assertEquals("b2", stored.get(0).getId());
+        assertNull(store.getBooking("b1"));
+    }
+
+    @Test
+    public void activeBookingsArrivingAfterLogoutAreDropped(){
+        // The user logs out while the request is in flight
+        server.setDispatcher(new Dispatcher(){
+            @Override
+            public MockResponse dispatch(RecordedRequest request){
+                BookingStore.getInstance().clear();
+                return new MockResponse().setBody("[{\"_id\":\"b1\",\"status\":\"Pending\",\"customer\":\"u1\"}]");
+            }
+        });
+
+        TestSubscriber<ArrayList<Booking>> subscriber = new TestSubscriber<>();
+        new UserViewModel().getActiveBookings(USER_ID, () -> {}).subscribe(subscriber);
+        subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        subscriber.assertNoErrors();
+
+        assertNull(BookingStore.getInstance().getBooking("b1"));
+    }
+
+    @Test
+    public void releasedBookingIsRemovedFromTheStore(){
+        BookingStore.getInstance().put(active("b1"));
+        server.enqueue(new MockResponse().setBody("{\"message\":\"Booking released\"}"));
+
+        TestSubscriber<Object> subscriber = new TestSubscriber<>();
+        new BookingViewModel().releaseBooking("b1").subscribe(subscriber);
+        subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        subscriber.assertNoErrors();
+
+        assertNull(BookingStore.getInstance().getBooking("b1"));
+    }
+
+    /**
+     * A pending booking of the user's
+     * @param bookingId
+     * @return
+     */
+    private static Booking active(String bookingId){
+        Booking booking = new Booking();
+        booking.setId(bookingId);
+        booking.setStatus(BookingStatus.Pending);
+        booking.setCustomer(new User(USER_ID, "Rhys", null, null, null));
+        return booking;
+    }
+
+    /**
+     * Request the user's most recent booking and wait for it to finish
+     * @return
+     */
+    private TestSubscriber<Booking> requestMostRecentBooking(){
+        TestSubscriber<Booking> subscriber = new TestSubscriber<>();
+        UserViewModel.requestMostRecentBooking(USER_ID).subscribe(subscriber);
+
+        // The fallback fetch waits for the booking batcher's window
+        subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        subscriber.assertNoErrors();
+        subscriber.assertCompleted();
+        return subscriber;
+    }
+}